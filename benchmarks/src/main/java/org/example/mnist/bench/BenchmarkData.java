@@ -0,0 +1,26 @@
+package org.example.mnist.bench;
+
+import org.example.mnist.Dataset;
+import org.example.mnist.DatasetCache;
+
+import java.io.IOException;
+
+/**
+ * 基准测试统一使用的数据: 主工程资源中的 MNIST 测试集 (10000 个样本)。
+ */
+final class BenchmarkData {
+
+    static final String IMAGE_FILE = "data/t10k-images-idx3-ubyte.gz";
+    static final String LABEL_FILE = "data/t10k-labels-idx1-ubyte.gz";
+
+    private BenchmarkData() {
+    }
+
+    static Dataset load() throws IOException {
+        return DatasetCache.open(IMAGE_FILE, LABEL_FILE);
+    }
+
+    static int[] topology(int hiddenUnits) {
+        return new int[]{28 * 28, hiddenUnits, 10};
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.mnist.bench;
+
+import org.example.mnist.Batch;
+import org.example.mnist.DatasetCache;
+import org.example.mnist.IdxStreamSource;
+import org.example.mnist.MappedDataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据加载耗时: 解压 IDX 资源生成缓存文件 (即原来 initTrainData 的解码开销), 打开已有的映射缓存,
+ * 以及流式读取一轮。
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DataLoadBenchmark {
+
+    private Path cacheDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("mnist-bench");
+        DatasetCache.open(BenchmarkData.IMAGE_FILE, BenchmarkData.LABEL_FILE, cacheDir);
+    }
+
+    @Benchmark
+    public Path decodeIdx() throws IOException {
+        Path target = cacheDir.resolve("decode.bin");
+        Files.deleteIfExists(target);
+        DatasetCache.convert(BenchmarkData.IMAGE_FILE, BenchmarkData.LABEL_FILE, target);
+        return target;
+    }
+
+    @Benchmark
+    public MappedDataset openMapped() throws IOException {
+        return DatasetCache.open(BenchmarkData.IMAGE_FILE, BenchmarkData.LABEL_FILE, cacheDir);
+    }
+
+    @Benchmark
+    public int streamEpoch() throws IOException {
+        int samples = 0;
+        try (IdxStreamSource source = new IdxStreamSource(BenchmarkData.IMAGE_FILE, BenchmarkData.LABEL_FILE, 16 << 20, null)) {
+            Batch batch = new Batch(100, source.imageSize());
+            while (source.next(batch)) {
+                samples += batch.size();
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.mnist.bench;
+
+import org.example.mnist.MatrixKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一组矩阵乘法在不同内核上的耗时, 形状取自第一层: batch x 784 乘 784 x hidden 的转置。
+ * 运行时加 --add-modules jdk.incubator.vector 并用 -Pvector 构建时 default 为 SIMD 内核。
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class KernelBenchmark {
+
+    @Param({"scalar", "blocked", "default"})
+    public String kernel;
+
+    @Param({"10", "100"})
+    public int batchSize;
+
+    @Param({"30", "300"})
+    public int hiddenUnits;
+
+    private MatrixKernel matrixKernel;
+    private double[] inputs;
+    private double[] weights;
+    private double[] errors;
+    private double[] outputs;
+    private double[] gradient;
+
+    @Setup
+    public void setUp() {
+        matrixKernel = TrainingBenchmark.kernel(kernel);
+        Random random = new Random(42);
+        inputs = gaussian(random, batchSize * 784);
+        weights = gaussian(random, hiddenUnits * 784);
+        errors = gaussian(random, batchSize * hiddenUnits);
+        outputs = new double[batchSize * hiddenUnits];
+        gradient = new double[hiddenUnits * 784];
+    }
+
+    @Benchmark
+    public double[] forward() {
+        matrixKernel.gemm(false, true, batchSize, hiddenUnits, 784, 1, inputs, 784, weights, 784, 0, outputs, hiddenUnits);
+        return outputs;
+    }
+
+    @Benchmark
+    public double[] weightGradient() {
+        matrixKernel.gemm(true, false, hiddenUnits, 784, batchSize, 1, errors, hiddenUnits, inputs, 784, 1, gradient, 784);
+        return gradient;
+    }
+
+    private static double[] gaussian(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; ++i) {
+            values[i] = random.nextGaussian();
+        }
+        return values;
+    }
+}
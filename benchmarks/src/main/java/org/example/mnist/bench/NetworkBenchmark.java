@@ -0,0 +1,76 @@
+package org.example.mnist.bench;
+
+import org.example.mnist.Batch;
+import org.example.mnist.Dataset;
+import org.example.mnist.DatasetSource;
+import org.example.mnist.Gradient;
+import org.example.mnist.Network;
+import org.example.mnist.Workspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个样本的前向传播吞吐量和反向传播延迟。
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NetworkBenchmark {
+
+    @Param({"30", "100", "300"})
+    public int hiddenUnits;
+
+    private Network network;
+    private Workspace workspace;
+    private Gradient gradient;
+    private Batch batch;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        Dataset dataset = BenchmarkData.load();
+        network = new Network(BenchmarkData.topology(hiddenUnits), new Random(42));
+        workspace = network.newWorkspace();
+        gradient = network.newGradient();
+        batch = new Batch(256, dataset.imageSize());
+        new DatasetSource(dataset, new Random(42)).next(batch);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int feedForward() {
+        int sample = nextIndex();
+        System.arraycopy(batch.inputs(), sample * batch.imageSize(), workspace.input(), 0, batch.imageSize());
+        network.feedForward(workspace);
+        return workspace.output().length;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Gradient backForward() {
+        network.backPropagate(batch, nextIndex(), workspace, gradient);
+        return gradient;
+    }
+
+    private int nextIndex() {
+        int sample = index;
+        index = sample + 1 == batch.size() ? 0 : sample + 1;
+        return sample;
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.mnist.bench;
+
+import org.example.mnist.Batch;
+import org.example.mnist.BlockedKernel;
+import org.example.mnist.Dataset;
+import org.example.mnist.DatasetSource;
+import org.example.mnist.Kernels;
+import org.example.mnist.MatrixKernel;
+import org.example.mnist.Network;
+import org.example.mnist.ParallelTrainer;
+import org.example.mnist.ScalarKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一轮 gradientDescent 的耗时 (10000 个样本), 可按内核、mini-batch 大小和线程数组合比较。
+ * kernel=none 表示逐个样本计算, 其余为批量矩阵乘法路径。
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TrainingBenchmark {
+
+    @Param({"30", "100"})
+    public int hiddenUnits;
+
+    @Param({"10", "100"})
+    public int miniBatchSize;
+
+    @Param({"none", "scalar", "blocked", "default"})
+    public String kernel;
+
+    @Param({"1"})
+    public int threads;
+
+    private Dataset dataset;
+    private ParallelTrainer trainer;
+    private ForkJoinPool pool;
+    private Batch batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataset = BenchmarkData.load();
+        Network network = new Network(BenchmarkData.topology(hiddenUnits), new Random(42));
+        pool = new ForkJoinPool(threads);
+        trainer = new ParallelTrainer(network, pool, threads, kernel(kernel));
+        batch = new Batch(miniBatchSize, dataset.imageSize());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ParallelTrainer epoch() {
+        DatasetSource source = new DatasetSource(dataset, null);
+        while (source.next(batch)) {
+            trainer.trainBatch(batch, 0.3);
+        }
+        return trainer;
+    }
+
+    static MatrixKernel kernel(String name) {
+        switch (name) {
+            case "none":
+                return null;
+            case "scalar":
+                return new ScalarKernel();
+            case "blocked":
+                return new BlockedKernel();
+            case "default":
+                return Kernels.matrixKernel();
+            default:
+                throw new IllegalArgumentException("unknown kernel: " + name);
+        }
+    }
+}
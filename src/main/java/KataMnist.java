@@ -1,16 +1,56 @@
-import com.google.common.collect.Lists;
+import org.example.mnist.Activation;
+import org.example.mnist.AdamOptimizer;
+import org.example.mnist.AsyncCheckpointer;
+import org.example.mnist.Batch;
+import org.example.mnist.BatchWorkspace;
+import org.example.mnist.Checkpoint;
+import org.example.mnist.ConvNetwork;
+import org.example.mnist.ConvolutionLayer;
+import org.example.mnist.DataSource;
+import org.example.mnist.Dataset;
+import org.example.mnist.DatasetCache;
+import org.example.mnist.DatasetSource;
+import org.example.mnist.DenseLayer;
+import org.example.mnist.DistributedLauncher;
+import org.example.mnist.FloatBatchWorkspace;
+import org.example.mnist.FloatNetwork;
+import org.example.mnist.FloatWorkspace;
+import org.example.mnist.Gradient;
+import org.example.mnist.InferenceEngine;
+import org.example.mnist.InferenceServer;
+import org.example.mnist.Kernels;
+import org.example.mnist.LearningRateSchedule;
+import org.example.mnist.MatrixKernel;
+import org.example.mnist.MaxPoolingLayer;
+import org.example.mnist.MetricsExporter;
+import org.example.mnist.MetricsReporter;
+import org.example.mnist.MomentumOptimizer;
+import org.example.mnist.ModelSnapshot;
+import org.example.mnist.Network;
+import org.example.mnist.Optimizer;
+import org.example.mnist.ParallelTrainer;
+import org.example.mnist.PrefetchingDataSource;
+import org.example.mnist.Precision;
+import org.example.mnist.QuantizationReport;
+import org.example.mnist.QuantizedModel;
+import org.example.mnist.SampledDataset;
+import org.example.mnist.Seeds;
+import org.example.mnist.SgdOptimizer;
+import org.example.mnist.TrainingMetrics;
+import org.example.mnist.Workspace;
 
 
-import java.io.DataInputStream;
-
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-import java.util.List;
+import java.util.Locale;
 import java.util.Random;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
-public class KataMnist {
+public class KataMnist implements AutoCloseable {
 
     public static final String TRAIN_IMAGE_FILE = "data/train-images-idx3-ubyte.gz";
     public static final String TRAIN_LABEL_FILE = "data/train-labels-idx1-ubyte.gz";
@@ -22,239 +62,317 @@ public class KataMnist {
 
     private final int outputLayerSize = 10;
     private final int perTrainDataSize = 28 * 28;
+    private final int evaluationSampleSize = 1000;
 
-    private final double learningRate;
-    private final List<byte[]> trainDataList = Lists.newArrayList();
-    private final List<Integer> trainResultList = Lists.newArrayList();
-
-    private final List<byte[]> testDataList = Lists.newArrayList();
-    private final List<Integer> testResultList = Lists.newArrayList();
+    private static final int PREFETCH_DEPTH = 2;
 
-    private final List<double[][]> weights = Lists.newArrayList();
+    private final Seeds seeds;
+    /**
+     * 训练集的批次来源, 各轮共用一个洗牌随机数流, 每轮的顺序都不同。
+     */
+    private final DatasetSource trainingSource;
+    private final Optimizer optimizer;
+    private final Dataset trainData;
+
+    private final Dataset testData;
+
+    private final Network network;
+    private final Precision precision;
+    private final FloatNetwork floatNetwork;
+    private final FloatWorkspace floatWorkspace;
+    private final FloatBatchWorkspace floatBatchWorkspace;
+    private final Workspace trainingWorkspace;
+    private final Workspace evaluationWorkspace;
+    private final Gradient trainingGradient;
+    private final BatchWorkspace trainingBatchWorkspace;
+    private final ForkJoinPool trainingPool;
+    private final ParallelTrainer parallelTrainer;
 
     private final int[] layerUnitNums;
 
+    private final TrainingMetrics metrics = new TrainingMetrics();
+    private final Dataset sampledTrainData;
+    private final Dataset sampledTestData;
+    private MetricsReporter metricsReporter;
+
     public KataMnist(int[] hiddenLayerUnitNums, double learningRate) throws IOException {
+        this(hiddenLayerUnitNums, learningRate, 1);
+    }
+
+    public KataMnist(int[] hiddenLayerUnitNums, double learningRate, int parallelism) throws IOException {
+        this(hiddenLayerUnitNums, learningRate, parallelism, null);
+    }
+
+    public KataMnist(int[] hiddenLayerUnitNums, double learningRate, Precision precision) throws IOException {
+        this(hiddenLayerUnitNums, learningRate, 1, null, precision);
+    }
+
+    public KataMnist(int[] hiddenLayerUnitNums, double learningRate, int parallelism, MatrixKernel kernel) throws IOException {
+        this(hiddenLayerUnitNums, learningRate, parallelism, kernel, Precision.DOUBLE);
+    }
+
+    /**
+     * @param parallelism 大于 1 时每个 mini-batch 在一个该并行度的 ForkJoinPool 上分段计算梯度
+     * @param kernel      不为 null 时把 mini-batch 拼成矩阵, 用该内核做批量的前向/反向传播
+     * @param precision   {@link Precision#FLOAT} 时训练和评估的权重和激活值都用 float 存储
+     */
+    public KataMnist(int[] hiddenLayerUnitNums, double learningRate, int parallelism, MatrixKernel kernel,
+                     Precision precision) throws IOException {
+        this(hiddenLayerUnitNums, new SgdOptimizer(learningRate), parallelism, kernel, precision);
+    }
+
+    /**
+     * @param optimizer 每个 mini-batch 结束后更新权重和偏置, 状态随检查点保存
+     */
+    public KataMnist(int[] hiddenLayerUnitNums, Optimizer optimizer, int parallelism, MatrixKernel kernel,
+                     Precision precision) throws IOException {
+        this(hiddenLayerUnitNums, null, optimizer, parallelism, kernel, precision);
+    }
 
-        this.initTrainData(TRAIN_IMAGE_FILE, TRAIN_LABEL_FILE, trainDataList, trainResultList);
-        this.initTrainData(TEST_IMAGE_FILE, TEST_LABEL_FILE, testDataList, testResultList);
+    /**
+     * @param activations 各隐藏层和输出层的激活函数, null 表示全部用 sigmoid
+     */
+    public KataMnist(int[] hiddenLayerUnitNums, Activation[] activations, Optimizer optimizer, int parallelism,
+                     MatrixKernel kernel, Precision precision) throws IOException {
+        this(hiddenLayerUnitNums, activations, optimizer, parallelism, kernel, precision, Seeds.random());
+    }
+
+    /**
+     * @param seeds 权重初始化、训练集洗牌和评估抽样的随机数来源; 并行训练的分段数固定为
+     *              {@link ParallelTrainer#DEFAULT_CHUNK_COUNT}, 同一个种子在任意并行度下结果都相同
+     */
+    public KataMnist(int[] hiddenLayerUnitNums, Activation[] activations, Optimizer optimizer, int parallelism,
+                     MatrixKernel kernel, Precision precision, Seeds seeds) throws IOException {
+        this.trainData = this.initTrainData(TRAIN_IMAGE_FILE, TRAIN_LABEL_FILE);
+        this.testData = this.initTrainData(TEST_IMAGE_FILE, TEST_LABEL_FILE);
+        this.seeds = seeds;
+        this.trainingSource = new DatasetSource(trainData, seeds.shuffling());
+        Random sampleRandom = seeds.sampling();
+        this.sampledTrainData = new SampledDataset(trainData, evaluationSampleSize, sampleRandom);
+        this.sampledTestData = new SampledDataset(testData, evaluationSampleSize, sampleRandom);
         layerUnitNums = new int[hiddenLayerUnitNums.length + 2];
         layerUnitNums[0] = 28 * 28;
         for (int i = 0; i < hiddenLayerUnitNums.length; ++i) {
             layerUnitNums[i + 1] = hiddenLayerUnitNums[i];
         }
         layerUnitNums[hiddenLayerUnitNums.length + 1] = 10;
-        this.learningRate = learningRate;
-        initWeights();
+        this.optimizer = optimizer;
+        this.network = new Network(layerUnitNums, activations, seeds.initialization());
+        this.precision = precision;
+        this.floatNetwork = precision == Precision.FLOAT ? new FloatNetwork(network) : null;
+        this.floatWorkspace = floatNetwork == null ? null : floatNetwork.newWorkspace();
+        this.trainingWorkspace = network.newWorkspace();
+        this.evaluationWorkspace = network.newWorkspace();
+        this.trainingGradient = floatNetwork == null ? network.newGradient() : floatNetwork.newGradient();
+        this.trainingBatchWorkspace = kernel == null || floatNetwork != null ? null : network.newBatchWorkspace(kernel, 0);
+        this.floatBatchWorkspace = kernel == null || floatNetwork == null ? null : floatNetwork.newBatchWorkspace(kernel, 0);
+        this.trainingPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        if (trainingPool == null) {
+            this.parallelTrainer = null;
+        } else if (floatNetwork != null) {
+            this.parallelTrainer = new ParallelTrainer(floatNetwork, trainingPool, kernel, metrics);
+        } else {
+            this.parallelTrainer = new ParallelTrainer(network, trainingPool, kernel, metrics);
+        }
     }
 
 
     public int feedForward(byte[] x) {
-        double[] lastLayerActivation = new double[x.length + 1];
-        lastLayerActivation[0] = 1;
-        for (int i = 1; i < x.length; i++) {
-            lastLayerActivation[i] = x[i] & 0xff;
+        if (floatNetwork != null) {
+            return floatNetwork.classify(x, floatWorkspace);
         }
+        return network.classify(x, evaluationWorkspace);
+    }
 
-        for (int layerIndex = 1; layerIndex < layerUnitNums.length; ++layerIndex) {
-            int layerUnitNum = layerUnitNums[layerIndex];
-            int previewLayerUnitNum = layerUnitNums[layerIndex - 1];
-            double[][] layerWeight = weights.get(layerIndex);
-            double[] layerActivation = new double[layerUnitNum + 1];
-            layerActivation[0] = 1;
-
-            for (int j = 1; j <= layerUnitNum; ++j) {
-                double cellOutput = 0;
-                for (int i = 0; i <= previewLayerUnitNum; ++i) {
-                    cellOutput += layerWeight[j][i] * lastLayerActivation[i];
-                }
-                cellOutput = sigmoid(cellOutput);
-                layerActivation[j] = cellOutput;
-            }
-            lastLayerActivation = layerActivation;
-        }
+    public Seeds seeds() {
+        return seeds;
+    }
 
-        int activationUnitIndex = -1;
-        double maxActivation = -1;
-        for (int i = 1; i < lastLayerActivation.length; ++i) {
-            if (lastLayerActivation[i] > maxActivation) {
-                activationUnitIndex = i;
-                maxActivation = lastLayerActivation[i];
-            }
+    /**
+     * 关闭并行训练使用的线程池, 之后不能再训练。
+     */
+    @Override
+    public void close() {
+        if (trainingPool != null) {
+            trainingPool.shutdown();
         }
-        return activationUnitIndex - 1;
     }
 
-    public void gradientDescent(int miniBatchSize) {
-
-        for (int trainDataIndex = 0; trainDataIndex < trainDataList.size(); trainDataIndex += miniBatchSize) {
-
-            List<List<double[][]>> deltaWeightsList = Lists.newArrayList();
-            for (int batchIndex = 0; batchIndex < miniBatchSize; ++batchIndex) {
-                byte[] trainData = trainDataList.get(trainDataIndex + batchIndex);
-                Integer trainResult = trainResultList.get(trainDataIndex + batchIndex);
-                deltaWeightsList.add(backForward(trainData, trainResult));
-            }
-
-            for (int batchIndex = 0; batchIndex < miniBatchSize; ++batchIndex) {
-                List<double[][]> deltaWeights = deltaWeightsList.get(batchIndex);
-                for (int layerIndex = layerUnitNums.length - 1; layerIndex >= 1; --layerIndex) {
-                    int layerUnitNum = layerUnitNums[layerIndex];
-                    int previousLayerUnitNum = layerUnitNums[layerIndex - 1];
-                    double[][] layerWeight = weights.get(layerIndex);
-                    double[][] layerDeltaWeight = deltaWeights.get(layerIndex);
-                    for (int j = 1; j <= layerUnitNum; ++j) {
-                        for (int i = 1; i <= previousLayerUnitNum; ++i) {
-                            layerWeight[j][i] += layerDeltaWeight[j][i] / miniBatchSize;
-                        }
-                    }
-                }
-            }
+    /**
+     * 用训练集训练一轮。每轮开始前重新打乱顺序, 训练当前批时后台线程提前取好后面的
+     * {@link #PREFETCH_DEPTH} 批。
+     */
+    public void gradientDescent(int miniBatchSize) throws IOException {
+        trainingSource.reset();
+        try (DataSource source = new PrefetchingDataSource(trainingSource, miniBatchSize, PREFETCH_DEPTH)) {
+            gradientDescent(source, miniBatchSize);
         }
     }
 
-
-    private List<double[][]> backForward(byte[] trainData, Integer trainResult) {
-
-        List<double[]> activations = Lists.newArrayList();
-        double[] inputLayerActivation = new double[trainData.length + 1];
-        inputLayerActivation[0] = 1;
-        for (int i = 0; i < trainData.length; i++) {
-            inputLayerActivation[i + 1] = trainData[i] & 0xff;
+    /**
+     * 用 source 中的一轮数据训练, 最后一批不满 miniBatchSize 时按实际样本数求平均。
+     */
+    public void gradientDescent(DataSource source, int miniBatchSize) throws IOException {
+        Batch batch = new Batch(miniBatchSize, source.imageSize());
+        long time = System.nanoTime();
+        while (source.next(batch)) {
+            metrics.record(TrainingMetrics.Phase.DATA, time);
+            trainBatch(batch);
+            time = System.nanoTime();
         }
-//        System.out.println(Arrays.toString(inputLayerActivation));
-//        System.exit(0);
-        activations.add(inputLayerActivation);
-        for (int layerIndex = 1; layerIndex < layerUnitNums.length; ++layerIndex) {
-            int layerUnitNum = layerUnitNums[layerIndex];
-            int previousLayerUnitNum = layerUnitNums[layerIndex - 1];
-            double[][] layerWeight = weights.get(layerIndex);
-            double[] lastLayerActivation = activations.get(layerIndex - 1);
-            double[] layerActivation = new double[layerUnitNum + 1];
-            layerActivation[0] = 1;
-            for (int j = 1; j <= layerUnitNum; ++j) {
-                double netj = 0;
-                for (int i = 0; i <= previousLayerUnitNum; ++i) {
-                    netj += layerWeight[j][i] * lastLayerActivation[i];
+    }
+
+    private void trainBatch(Batch batch) {
+        if (parallelTrainer != null) {
+            // 各线程上的分配由 ParallelTrainer 分别统计
+            parallelTrainer.trainBatch(batch, optimizer);
+        } else {
+            long allocated = metrics.currentThreadAllocatedBytes();
+            Gradient gradient = trainingGradient;
+            gradient.clear();
+            double loss = 0;
+            long time = System.nanoTime();
+            if (floatBatchWorkspace != null) {
+                floatBatchWorkspace.loadBatch(batch, 0, batch.size());
+                floatNetwork.feedForward(floatBatchWorkspace, batch.size());
+                time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+                loss = floatNetwork.backward(floatBatchWorkspace, batch.size(), gradient);
+                metrics.record(TrainingMetrics.Phase.BACKWARD, time);
+            } else if (floatNetwork != null) {
+                for (int batchIndex = 0; batchIndex < batch.size(); ++batchIndex) {
+                    floatNetwork.feedForward(batch, batchIndex, floatWorkspace);
+                    time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+                    loss += floatNetwork.backward(batch.label(batchIndex), floatWorkspace);
+                    time = metrics.record(TrainingMetrics.Phase.BACKWARD, time);
                 }
-                layerActivation[j] = sigmoid(netj);
+                // 这一批在 float 中累加的梯度一次性加到 double 梯度
+                floatNetwork.flushGradient(floatWorkspace, gradient);
+            } else if (trainingBatchWorkspace != null) {
+                trainingBatchWorkspace.loadBatch(batch, 0, batch.size());
+                network.feedForward(trainingBatchWorkspace, batch.size());
+                time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+                loss = network.backward(trainingBatchWorkspace, batch.size(), gradient);
+                metrics.record(TrainingMetrics.Phase.BACKWARD, time);
+            } else {
+                for (int batchIndex = 0; batchIndex < batch.size(); ++batchIndex) {
+                    loss += backForward(batch, batchIndex, gradient);
+                }
+            }
+            double scale = 1.0 / batch.size();
+            double gradientNorm = gradient.norm() * scale;
+            time = System.nanoTime();
+            if (floatNetwork != null) {
+                floatNetwork.applyGradient(gradient, scale, optimizer);
+            } else {
+                network.applyGradient(gradient, scale, optimizer);
+            }
+            metrics.record(TrainingMetrics.Phase.UPDATE, time);
+            metrics.recordStep(batch.size(), loss, gradientNorm);
+            if (allocated >= 0) {
+                metrics.recordAllocation(metrics.currentThreadAllocatedBytes() - allocated);
             }
-            activations.add(layerActivation);
         }
-
-        List<double[]> layerErrorRatesList = Lists.newArrayList();
-        for (int i = 0; i < layerUnitNums.length; ++i) {
-            layerErrorRatesList.add(new double[0]);
+        if (metricsReporter != null) {
+            metricsReporter.tick();
         }
+    }
 
-        // 计算输出层错误率
-        int outputLayerUnitNums = layerUnitNums[layerUnitNums.length - 1];
-        double[] outputLayerErrorRates = new double[outputLayerUnitNums + 1];
-        double[] outputLayerActivation = activations.get(layerUnitNums.length - 1);
-        for (int i = 1; i <= outputLayerUnitNums; ++i) {
-            double targetResult = 0;
-            if (i - 1 == trainResult) {
-                targetResult = 1;
-            }
-            double cellActivation = outputLayerActivation[i];
-            outputLayerErrorRates[i] = cellActivation * (1 - cellActivation) * (targetResult - cellActivation);
-        }
-        layerErrorRatesList.set(layerUnitNums.length - 1, outputLayerErrorRates);
 
-        // 计算隐藏层错误率
-        for (int layerIndex = layerUnitNums.length - 2; layerIndex >= 1; --layerIndex) {
-            int layerUnitNum = layerUnitNums[layerIndex];
-            int nextLayerUnitNum = layerUnitNums[layerIndex + 1];
+    private double backForward(Batch batch, int batchIndex, Gradient gradient) {
+        long time = System.nanoTime();
+        network.feedForward(batch, batchIndex, trainingWorkspace);
+        time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+        double loss = network.backward(batch.label(batchIndex), trainingWorkspace, gradient);
+        metrics.record(TrainingMetrics.Phase.BACKWARD, time);
+        return loss;
+    }
 
-            double[][] layerWeight = weights.get(layerIndex);
-            double[] layerActivations = activations.get(layerIndex);
 
-            double[] nextLayerErrorRate = layerErrorRatesList.get(layerIndex + 1);
+    public double runTest() {
+        return evaluate(testData);
+    }
 
-            double[] layerErrorRate = new double[layerUnitNum + 1];
-            for (int j = 1; j <= layerUnitNum; ++j) {
-                double outputErrorRate = 0;
-                for (int k = 1; k <= nextLayerUnitNum; ++k) {
-                    outputErrorRate += layerWeight[k][j] * nextLayerErrorRate[k];
-                }
-                layerErrorRate[j] = layerActivations[j] * (1 - layerActivations[j]) * outputErrorRate;
-            }
-            layerErrorRatesList.set(layerIndex, layerErrorRate);
-        }
+    public double runTrainData() {
+        return evaluate(trainData);
+    }
 
+    /**
+     * 只在测试集中固定的 evaluationSampleSize 个样本上评估, 用于每轮训练后的快速检查。
+     */
+    public double runSampledTest() {
+        return evaluate(sampledTestData);
+    }
 
-        List<double[][]> deltaWeightsList = Lists.newArrayList();
-        for (int i = 0; i < layerUnitNums.length; ++i) {
-            deltaWeightsList.add(null);
-        }
+    public double runSampledTrainData() {
+        return evaluate(sampledTrainData);
+    }
 
-        // 计算变化的权
-        for (int layerIndex = layerUnitNums.length - 1; layerIndex >= 1; --layerIndex) {
-            double[] layerErrorRate = layerErrorRatesList.get(layerIndex);
-            double[] previousLayerActivations = activations.get(layerIndex - 1);
+    private double evaluate(Dataset dataset) {
+        long time = System.nanoTime();
+        double accuracy = new InferenceEngine(snapshot(), ForkJoinPool.commonPool(), Kernels.matrixKernel(), 64,
+                precision).accuracy(dataset);
+        metrics.record(TrainingMetrics.Phase.EVALUATION, time);
+        return accuracy;
+    }
 
-            int layerUnitNum = layerUnitNums[layerIndex];
-            int previousLayerUnitNum = layerUnitNums[layerIndex - 1];
+    public TrainingMetrics metrics() {
+        return metrics;
+    }
 
-            double[][] deltaWeights = new double[layerUnitNum + 1][previousLayerUnitNum + 1];
+    /**
+     * 训练时每隔 interval 把指标的增量交给 exporters。
+     */
+    public MetricsReporter reportMetrics(long interval, TimeUnit unit, MetricsExporter... exporters) {
+        metricsReporter = new MetricsReporter(metrics, interval, unit, exporters);
+        return metricsReporter;
+    }
 
-            for (int j = 1; j <= layerUnitNum; ++j) {
-                for (int i = 1; i <= previousLayerUnitNum; ++i) {
-                    deltaWeights[j][i] = learningRate * layerErrorRate[j] * previousLayerActivations[i];
-                }
-            }
-            deltaWeightsList.set(layerIndex, deltaWeights);
+    /**
+     * 当前权重的只读拷贝, 可交给 {@link InferenceEngine} 多线程推理。
+     */
+    public ModelSnapshot snapshot() {
+        if (floatNetwork != null) {
+            return ModelSnapshot.of(floatNetwork.toNetwork());
         }
-
-        return deltaWeightsList;
+        return ModelSnapshot.of(network);
     }
 
+    /**
+     * 把当前权重量化成 int8, 在测试集上与 double 模型比较准确率。
+     */
+    public QuantizationReport runQuantizedTest() {
+        return QuantizedModel.evaluate(snapshot(), testData);
+    }
 
-    public double runTest() {
-        int correctResultNum = 0;
-        for (int i = 0; i < testDataList.size(); ++i) {
-            int actualResult = feedForward(testDataList.get(i));
-            int testResult = testResultList.get(i);
-            if (actualResult == testResult) {
-                correctResultNum++;
-            }
-        }
-        return 1.0 * correctResultNum / testResultList.size();
+    /**
+     * 当前权重和优化器状态的检查点。
+     */
+    public Checkpoint checkpoint() {
+        return new Checkpoint(snapshot(), optimizer);
     }
 
-    public double runTrainData() {
-        int correctResultNum = 0;
-        for (int i = 0; i < trainDataList.size(); ++i) {
-            int actualResult = feedForward(trainDataList.get(i));
-            int testResult = trainResultList.get(i);
-            if (actualResult == testResult) {
-                correctResultNum++;
-            }
+    /**
+     * 用检查点中的参数覆盖当前权重, 网络结构必须相同; 参数恢复成功后, 优化器相同时再恢复优化器状态,
+     * 结构不符时优化器保持原样。
+     * 返回优化器当前的步数: 恢复了优化器状态时是检查点记录的步数, 否则是恢复前的步数。
+     */
+    public long loadCheckpoint(Path path) throws IOException {
+        Checkpoint checkpoint = Checkpoint.load(path);
+        Network loaded = checkpoint.model().toNetwork();
+        if (floatNetwork != null) {
+            floatNetwork.copyParametersFrom(loaded);
+        } else {
+            network.copyParametersFrom(loaded);
         }
-        return 1.0 * correctResultNum / trainDataList.size();
+        checkpoint.restoreOptimizer(optimizer);
+        return optimizer.step();
     }
 
-
-    private void initWeights() {
-
-
-        Random random = new Random();
-        // input层没有weight
-        weights.add(new double[0][0]);
-        // 初始化weight
-        for (int layerIndex = 1; layerIndex < layerUnitNums.length; ++layerIndex) {
-            int previousLayerCellNum = layerUnitNums[layerIndex - 1];
-            int layerCellNum = layerUnitNums[layerIndex];
-            double[][] layerWeights = new double[layerCellNum + 1][previousLayerCellNum + 1];
-            for (int j = 0; j < layerCellNum + 1; ++j) {
-                for (int i = 0; i < previousLayerCellNum + 1; ++i) {
-                    layerWeights[j][i] = random.nextGaussian();
-//                                        layerWeights[j][i] = Math.random() - 0.5;
-
-                }
-            }
-            weights.add(layerWeights);
-        }
+    /**
+     * 以 miniBatchSize 训练一轮的步数。
+     */
+    public int stepsPerEpoch(int miniBatchSize) {
+        return (trainData.size() + miniBatchSize - 1) / miniBatchSize;
     }
 
 
@@ -264,43 +382,136 @@ public class KataMnist {
 
 
     public double derivativeSigmoid(double x) {
-        return sigmoid(x) * (1 - sigmoid(x));
+        double s = sigmoid(x);
+        return s * (1 - s);
     }
 
-    public void initTrainData(String inputFileName, String resultFileName, List<byte[]> inputDataList, List<Integer> resultList) throws IOException {
-
-        InputStream in = KataMnist.class.getClassLoader().getResourceAsStream(inputFileName);
-        DataInputStream dsIn = new DataInputStream(new GZIPInputStream(in));
-        InputStream resultIn = KataMnist.class.getClassLoader().getResourceAsStream(resultFileName);
-        DataInputStream dsResultIn = new DataInputStream(new GZIPInputStream(resultIn));
-        int dataMagic = dsIn.readInt();
-        int dataNums = dsIn.readInt();
-        int trainDataDimX = dsIn.readInt();
-        int trainDataDimY = dsIn.readInt();
+    /**
+     * 第一次调用时把 gz 格式的 IDX 资源解码成缓存文件, 之后直接内存映射缓存文件, 见 {@link DatasetCache}。
+     */
+    public Dataset initTrainData(String inputFileName, String resultFileName) throws IOException {
+        return DatasetCache.open(inputFileName, resultFileName);
+    }
 
-        int trainResultMagic = dsResultIn.readInt();
-        int trainResultNums = dsResultIn.readInt();
+    /**
+     * 训练一个小卷积网络: 8 个 5x5 卷积核 (ReLU) → 2x2 最大池化 → softmax 全连接输出,
+     * 参数个数约为 784-30-10 全连接网络的一半。每轮结束后在测试集上评估一次。
+     */
+    public static void trainConvNetwork(int epochs, int miniBatchSize, Optimizer optimizer, Seeds seeds) throws IOException {
+        Dataset trainData = DatasetCache.open(TRAIN_IMAGE_FILE, TRAIN_LABEL_FILE);
+        Dataset testData = DatasetCache.open(TEST_IMAGE_FILE, TEST_LABEL_FILE);
+        ConvNetwork network = new ConvNetwork(seeds.initialization(),
+                new ConvolutionLayer(28, 28, 1, 8, 5, Activation.RELU),
+                new MaxPoolingLayer(24, 24, 8, 2),
+                new DenseLayer(12 * 12 * 8, 10, Activation.SOFTMAX));
+        MatrixKernel kernel = Kernels.matrixKernel();
+        BatchWorkspace workspace = network.newBatchWorkspace(kernel, miniBatchSize);
+        BatchWorkspace evaluationWorkspace = network.newBatchWorkspace(kernel, 256);
+        Gradient gradient = network.newGradient();
+        Batch batch = new Batch(miniBatchSize, trainData.imageSize());
+        DatasetSource source = new DatasetSource(trainData, seeds.shuffling());
+        System.out.println("cnn parameters " + network.parameterCount());
+        for (int i = 0; i < epochs; ++i) {
+            source.reset();
+            while (source.next(batch)) {
+                gradient.clear();
+                workspace.loadBatch(batch, 0, batch.size());
+                network.backPropagate(workspace, batch.size(), gradient);
+                network.applyGradient(gradient, 1.0 / batch.size(), optimizer);
+            }
+            System.out.println(i + "testData correct percent " + network.accuracy(testData, evaluationWorkspace));
+        }
+    }
 
-        for (int k = 0; k < dataNums; ++k) {
-            byte[] buf = new byte[perTrainDataSize];
-            dsIn.readFully(buf);
-            int result = dsResultIn.readUnsignedByte();
-            inputDataList.add(buf);
-            resultList.add(result);
+    private static Optimizer createOptimizer(String name, long totalSteps) {
+        switch (name) {
+            case "sgd":
+                return new SgdOptimizer(0.3);
+            case "momentum":
+            case "nesterov":
+                return new MomentumOptimizer(LearningRateSchedule.cosine(0.03, 0, totalSteps), 0.9, name.equals("nesterov"));
+            case "adam":
+                return new AdamOptimizer(LearningRateSchedule.cosine(0.01, 0, totalSteps));
+            default:
+                throw new IllegalArgumentException("unknown optimizer: " + name);
         }
-        dsIn.close();
-        dsResultIn.close();
     }
 
     public static void main(String[] args) throws IOException {
-        KataMnist kataMnist = new KataMnist(new int[]{30}, 0.3);
-        System.out.println("init  " + kataMnist.runTest());
-        kataMnist.runTest();
-        for (int i = 0; i < 100; ++i) {
+        // -Dmnist.seed=<long> 时初始化、洗牌和抽样都由它决定, 两次运行的结果可以逐行比较
+        Seeds seeds = Seeds.fromSystemProperty();
+        System.out.println(seeds);
+        // -Dmnist.precision=float 时用单精度训练
+        Precision precision = Precision.valueOf(System.getProperty("mnist.precision", "double").toUpperCase(Locale.ROOT));
+        // -Dmnist.optimizer=momentum|nesterov|adam 时换用对应的优化器, 学习率按余弦退火
+        Optimizer optimizer = createOptimizer(System.getProperty("mnist.optimizer", "sgd"), 100 * 60000 / 10);
+        // -Dmnist.model=cnn 时改为训练卷积网络, 默认用 Adam
+        if ("cnn".equals(System.getProperty("mnist.model"))) {
+            trainConvNetwork(10, 10, System.getProperty("mnist.optimizer") == null
+                    ? new AdamOptimizer(LearningRateSchedule.constant(0.001)) : optimizer, seeds);
+            return;
+        }
+        // -Dmnist.serve=<port> 时不训练, 用 -Dmnist.checkpoint 指定的模型启动推理服务;
+        // -Dmnist.serve.online=<学习率> 时同时开放 /train 做在线学习
+        String servePort = System.getProperty("mnist.serve");
+        if (servePort != null) {
+            InferenceServer.main(new String[]{System.getProperty("mnist.checkpoint"), servePort,
+                    System.getProperty("mnist.serve.budget", "2"), System.getProperty("mnist.serve.batch", "64"),
+                    System.getProperty("mnist.serve.online", "0")});
+            return;
+        }
+        // -Dmnist.workers=N 时在本机启动 N 个进程做数据并行训练, 端口从 -Dmnist.port (默认 29500) 开始
+        String workers = System.getProperty("mnist.workers");
+        if (workers != null) {
+            DistributedLauncher.launch(Integer.parseInt(workers), Integer.getInteger("mnist.port", 29500), 10, 10, 0.3,
+                    seeds.seed(), TRAIN_IMAGE_FILE, TRAIN_LABEL_FILE, TEST_IMAGE_FILE, TEST_LABEL_FILE);
+            return;
+        }
+        // -Dmnist.activations=relu,softmax 按层指定激活函数, 个数为隐藏层数加 1
+        String activationNames = System.getProperty("mnist.activations");
+        Activation[] activations = null;
+        if (activationNames != null) {
+            String[] names = activationNames.split(",");
+            activations = new Activation[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                activations[i] = Activation.valueOf(names[i].trim().toUpperCase(Locale.ROOT));
+            }
+        }
+        KataMnist kataMnist = new KataMnist(new int[]{30}, activations, optimizer, 1, null, precision, seeds);
+        // -Dmnist.checkpoint=<file> 时每轮结束后在后台写一次检查点, 已有的检查点作为起点
+        String checkpointFile = System.getProperty("mnist.checkpoint");
+        AsyncCheckpointer checkpointer = null;
+        int startEpoch = 0;
+        if (checkpointFile != null) {
+            Path checkpointPath = Paths.get(checkpointFile);
+            if (Files.exists(checkpointPath)) {
+                // 恢复了优化器状态时从检查点记录的步数接着数轮次, 换了优化器则从第 0 轮开始
+                startEpoch = (int) Math.min(100, kataMnist.loadCheckpoint(checkpointPath) / kataMnist.stepsPerEpoch(10));
+            }
+            checkpointer = new AsyncCheckpointer(checkpointPath);
+        }
+        // 每 10 秒打印一行指标, 同时提交 JFR 事件
+        MetricsReporter reporter = kataMnist.reportMetrics(10, TimeUnit.SECONDS,
+                MetricsExporter.log(System.out), MetricsExporter.jfr());
+        System.out.println("init  " + kataMnist.runSampledTest());
+        for (int i = startEpoch; i < 100; ++i) {
             kataMnist.gradientDescent(10);
-            System.out.println(i + "trainData correct percent: " + kataMnist.runTrainData());
-            System.out.println(i + "testData correct percent " + kataMnist.runTest());
+            if (checkpointer != null) {
+                checkpointer.submit(kataMnist.checkpoint());
+            }
+            // 每轮只评估抽样的子集, 全量测试只在最后做一次
+            System.out.println(i + "trainData correct percent (sampled): " + kataMnist.runSampledTrainData());
+            System.out.println(i + "testData correct percent (sampled) " + kataMnist.runSampledTest());
+        }
+        reporter.flush();
+        System.out.println("testData correct percent " + kataMnist.runTest());
+        if (QuantizedModel.supports(kataMnist.snapshot())) {
+            System.out.println("int8 " + kataMnist.runQuantizedTest());
+        }
+        if (checkpointer != null) {
+            checkpointer.close();
         }
+        kataMnist.close();
     }
 
     /**
@@ -0,0 +1,72 @@
+package org.example.mnist;
+
+/**
+ * 管理步数、学习率和扁平状态数组, 状态大小为参数个数的 slots 倍。
+ */
+abstract class AbstractOptimizer implements Optimizer {
+
+    private final String name;
+    private final LearningRateSchedule schedule;
+    private final int slots;
+    /**
+     * slots 段, 每段 parameterCount 个元素, 第 s 段中参数 k 的状态在 state[s * parameterCount + k]。
+     */
+    double[] state = new double[0];
+    int parameterCount;
+    long step;
+    /**
+     * 当前这一步的学习率。
+     */
+    double rate;
+
+    AbstractOptimizer(String name, LearningRateSchedule schedule, int slots) {
+        this.name = name;
+        this.schedule = schedule;
+        this.slots = slots;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public void beginStep(int parameterCount) {
+        if (state.length != slots * parameterCount) {
+            if (step != 0) {
+                throw new IllegalStateException("optimizer state holds " + state.length + " values, "
+                        + slots + " x " + parameterCount + " needed");
+            }
+            state = new double[slots * parameterCount];
+        }
+        this.parameterCount = parameterCount;
+        rate = schedule.rate(step);
+        ++step;
+    }
+
+    @Override
+    public long step() {
+        return step;
+    }
+
+    @Override
+    public double[] state() {
+        return state.clone();
+    }
+
+    @Override
+    public void restore(double[] state, long step, int parameterCount) {
+        // 还没开始第一步的优化器没有分配状态, 同 beginStep 一样允许空数组
+        boolean unallocated = step == 0 && state.length == 0;
+        if (!unallocated && state.length != (long) slots * parameterCount) {
+            throw new IllegalArgumentException("optimizer state holds " + state.length + " values, "
+                    + slots + " x " + parameterCount + " needed");
+        }
+        if (step < 0) {
+            throw new IllegalArgumentException("negative step: " + step);
+        }
+        this.state = state.clone();
+        this.parameterCount = parameterCount;
+        this.step = step;
+    }
+}
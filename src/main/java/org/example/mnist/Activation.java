@@ -0,0 +1,313 @@
+package org.example.mnist;
+
+/**
+ * 层的激活函数, 每层单独选择, 见 {@link Network#Network(int[], Activation[], java.util.Random)}。
+ * <p>
+ * 导数都用激活后的值 y 表示, 反向传播时不需要保留激活前的值。
+ * {@link #SOFTMAX} 只能用于输出层, 并且总是搭配交叉熵损失, 此时输出层的误差就是 t - y;
+ * 其他激活函数在输出层使用平方误差。
+ * <p>
+ * 检查点按序号保存各层的激活函数, 新的常量只能加在最后。
+ */
+public enum Activation {
+
+    SIGMOID {
+        @Override
+        public void apply(double[] x, int offset, int length) {
+            OPS.sigmoid(x, offset, length);
+        }
+
+        @Override
+        public void apply(float[] x, int offset, int length) {
+            OPS.sigmoid(x, offset, length);
+        }
+
+        @Override
+        public void multiplyDerivative(double[] y, double[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                delta[i] *= y[i] * (1 - y[i]);
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] y, float[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                delta[i] *= y[i] * (1 - y[i]);
+            }
+        }
+    },
+
+    /**
+     * 用 {@link FastSigmoid} 查表计算的 sigmoid, 绝对误差小于 1e-6。
+     */
+    FAST_SIGMOID {
+        @Override
+        public void apply(double[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = FastSigmoid.value(x[i]);
+            }
+        }
+
+        @Override
+        public void apply(float[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = (float) FastSigmoid.value(x[i]);
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(double[] y, double[] delta, int offset, int length) {
+            SIGMOID.multiplyDerivative(y, delta, offset, length);
+        }
+
+        @Override
+        public void multiplyDerivative(float[] y, float[] delta, int offset, int length) {
+            SIGMOID.multiplyDerivative(y, delta, offset, length);
+        }
+    },
+
+    RELU {
+        @Override
+        public void apply(double[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = Math.max(0, x[i]);
+            }
+        }
+
+        @Override
+        public void apply(float[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = Math.max(0, x[i]);
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(double[] y, double[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                if (y[i] <= 0) {
+                    delta[i] = 0;
+                }
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] y, float[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                if (y[i] <= 0) {
+                    delta[i] = 0;
+                }
+            }
+        }
+    },
+
+    /**
+     * 负半轴斜率为 {@link #LEAKY_SLOPE} 的 ReLU。
+     */
+    LEAKY_RELU {
+        @Override
+        public void apply(double[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                if (x[i] < 0) {
+                    x[i] *= LEAKY_SLOPE;
+                }
+            }
+        }
+
+        @Override
+        public void apply(float[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                if (x[i] < 0) {
+                    x[i] *= LEAKY_SLOPE;
+                }
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(double[] y, double[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                if (y[i] < 0) {
+                    delta[i] *= LEAKY_SLOPE;
+                }
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] y, float[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                if (y[i] < 0) {
+                    delta[i] *= LEAKY_SLOPE;
+                }
+            }
+        }
+    },
+
+    TANH {
+        @Override
+        public void apply(double[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = Math.tanh(x[i]);
+            }
+        }
+
+        @Override
+        public void apply(float[] x, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = (float) Math.tanh(x[i]);
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(double[] y, double[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                delta[i] *= 1 - y[i] * y[i];
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(float[] y, float[] delta, int offset, int length) {
+            for (int i = offset; i < offset + length; ++i) {
+                delta[i] *= 1 - y[i] * y[i];
+            }
+        }
+    },
+
+    /**
+     * 对 [offset, offset + length) 整段做 softmax, 所以批量计算时必须逐行调用。
+     * 与交叉熵损失一起求导后误差为 t - y, 不再乘导数。
+     */
+    SOFTMAX {
+        @Override
+        public void apply(double[] x, int offset, int length) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = offset; i < offset + length; ++i) {
+                max = Math.max(max, x[i]);
+            }
+            double sum = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = Math.exp(x[i] - max);
+                sum += x[i];
+            }
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] /= sum;
+            }
+        }
+
+        @Override
+        public void apply(float[] x, int offset, int length) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = offset; i < offset + length; ++i) {
+                max = Math.max(max, x[i]);
+            }
+            double sum = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = (float) Math.exp(x[i] - max);
+                sum += x[i];
+            }
+            for (int i = offset; i < offset + length; ++i) {
+                x[i] = (float) (x[i] / sum);
+            }
+        }
+
+        @Override
+        public void multiplyDerivative(double[] y, double[] delta, int offset, int length) {
+            throw new UnsupportedOperationException("softmax is only supported in the output layer");
+        }
+
+        @Override
+        public void multiplyDerivative(float[] y, float[] delta, int offset, int length) {
+            throw new UnsupportedOperationException("softmax is only supported in the output layer");
+        }
+    };
+
+    public static final double LEAKY_SLOPE = 0.01;
+
+    private static final VectorOps OPS = Kernels.vectorOps();
+
+    /**
+     * x[offset, offset + length) = f(x), 原地计算。
+     */
+    public abstract void apply(double[] x, int offset, int length);
+
+    public abstract void apply(float[] x, int offset, int length);
+
+    /**
+     * delta[i] *= f'(x_i), 其中导数用 y[i] = f(x_i) 表示。
+     */
+    public abstract void multiplyDerivative(double[] y, double[] delta, int offset, int length);
+
+    public abstract void multiplyDerivative(float[] y, float[] delta, int offset, int length);
+
+    /**
+     * 初始化权重时高斯分布的标准差。sigmoid 保持原来的 N(0, 1); ReLU 类用 He 初始化 sqrt(2 / fanIn),
+     * tanh 和 softmax 用 Xavier 初始化 sqrt(1 / fanIn), 否则未归一化的像素输入会让这些激活值在第一步就发散。
+     */
+    double initialStandardDeviation(int fanIn) {
+        switch (this) {
+            case RELU:
+            case LEAKY_RELU:
+                return Math.sqrt(2.0 / fanIn);
+            case TANH:
+            case SOFTMAX:
+                return Math.sqrt(1.0 / fanIn);
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * 把一个样本的输出层激活值原地换算成和为 1 的概率。softmax 的输出本身就是概率; tanh 和 leaky ReLU
+     * 可能为负, 先做 softmax; 其余激活值非负, 直接除以总和, 总和为 0 时视为均匀分布。
+     * 三种换算都保持原来的大小顺序。
+     */
+    void toProbabilities(double[] y, int offset, int length) {
+        switch (this) {
+            case SOFTMAX:
+                return;
+            case TANH:
+            case LEAKY_RELU:
+                SOFTMAX.apply(y, offset, length);
+                return;
+            default:
+                double total = 0;
+                for (int i = 0; i < length; ++i) {
+                    total += y[offset + i];
+                }
+                for (int i = 0; i < length; ++i) {
+                    y[offset + i] = total > 0 ? y[offset + i] / total : 1.0 / length;
+                }
+        }
+    }
+
+    /**
+     * 计算输出层误差 delta = -dE/dnet, 返回 E。SOFTMAX 用交叉熵, 其他用平方误差的一半。
+     */
+    double outputError(double[] y, double[] delta, int offset, int length, int label) {
+        double loss = 0;
+        for (int i = 0; i < length; ++i) {
+            double targetResult = i == label ? 1 : 0;
+            double cellActivation = y[offset + i];
+            delta[offset + i] = targetResult - cellActivation;
+            loss += (targetResult - cellActivation) * (targetResult - cellActivation);
+        }
+        if (this == SOFTMAX) {
+            return -Math.log(Math.max(y[offset + label], Double.MIN_NORMAL));
+        }
+        multiplyDerivative(y, delta, offset, length);
+        return loss / 2;
+    }
+
+    double outputError(float[] y, float[] delta, int offset, int length, int label) {
+        double loss = 0;
+        for (int i = 0; i < length; ++i) {
+            float targetResult = i == label ? 1 : 0;
+            float cellActivation = y[offset + i];
+            delta[offset + i] = targetResult - cellActivation;
+            loss += (targetResult - cellActivation) * (targetResult - cellActivation);
+        }
+        if (this == SOFTMAX) {
+            return -Math.log(Math.max(y[offset + label], Float.MIN_NORMAL));
+        }
+        multiplyDerivative(y, delta, offset, length);
+        return loss / 2;
+    }
+}
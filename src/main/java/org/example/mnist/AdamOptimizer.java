@@ -0,0 +1,61 @@
+package org.example.mnist;
+
+/**
+ * Adam: 一阶矩和二阶矩的指数滑动平均, 带偏差修正。
+ * 状态前 parameterCount 个元素为一阶矩, 后 parameterCount 个为二阶矩。
+ */
+public final class AdamOptimizer extends AbstractOptimizer {
+
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+
+    public AdamOptimizer(LearningRateSchedule schedule, double beta1, double beta2, double epsilon) {
+        super("adam", schedule, 2);
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    public AdamOptimizer(LearningRateSchedule schedule) {
+        this(schedule, 0.9, 0.999, 1e-8);
+    }
+
+    /**
+     * 偏差修正并入步长: rate * sqrt(1 - beta2^t) / (1 - beta1^t)。
+     */
+    private double stepSize() {
+        return rate * Math.sqrt(1 - Math.pow(beta2, step)) / (1 - Math.pow(beta1, step));
+    }
+
+    @Override
+    public void update(double[] parameters, double[] gradient, double scale, int offset) {
+        double[] moments = state;
+        int second = parameterCount + offset;
+        double stepSize = stepSize();
+        for (int k = 0; k < parameters.length; ++k) {
+            // g 是 -dE/dw, 一阶矩的符号随之取反, 所以参数沿 +m 方向更新
+            double g = scale * gradient[k];
+            double m = beta1 * moments[offset + k] + (1 - beta1) * g;
+            double v = beta2 * moments[second + k] + (1 - beta2) * g * g;
+            moments[offset + k] = m;
+            moments[second + k] = v;
+            parameters[k] += stepSize * m / (Math.sqrt(v) + epsilon);
+        }
+    }
+
+    @Override
+    public void update(float[] parameters, double[] gradient, double scale, int offset) {
+        double[] moments = state;
+        int second = parameterCount + offset;
+        double stepSize = stepSize();
+        for (int k = 0; k < parameters.length; ++k) {
+            double g = scale * gradient[k];
+            double m = beta1 * moments[offset + k] + (1 - beta1) * g;
+            double v = beta2 * moments[second + k] + (1 - beta2) * g * g;
+            moments[offset + k] = m;
+            moments[second + k] = v;
+            parameters[k] = (float) (parameters[k] + stepSize * m / (Math.sqrt(v) + epsilon));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.mnist;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 在后台线程写检查点。训练线程只需要付出拷贝一份参数的代价 (见 {@link ModelSnapshot#of}),
+ * 写文件和 fsync 都在后台完成。上一次写入尚未完成时新的请求直接丢弃, 不会排队拖慢训练。
+ */
+public final class AsyncCheckpointer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncCheckpointer.class.getName());
+
+    private final Path path;
+    private final ExecutorService executor;
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    public AsyncCheckpointer(Path path) {
+        this.path = path;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mnist-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return 是否接受了这次请求; 上一次还在写时返回 false
+     */
+    public boolean submit(Checkpoint checkpoint) {
+        if (!writing.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                checkpoint.save(path);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "failed to write checkpoint " + path, e);
+            } finally {
+                writing.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 等待正在进行的写入完成。
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.mnist;
+
+/**
+ * 一批解码好的样本: inputs 是 capacity x imageSize 的行主序矩阵, 前 size 行有效。
+ * 由 {@link DataSource} 反复填充复用。
+ */
+public final class Batch {
+
+    private final int capacity;
+    private final int imageSize;
+    double[] inputs;
+    int[] labels;
+    int size;
+
+    public Batch(int capacity, int imageSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("batch capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.imageSize = imageSize;
+        this.inputs = new double[capacity * imageSize];
+        this.labels = new int[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int imageSize() {
+        return imageSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double[] inputs() {
+        return inputs;
+    }
+
+    public int label(int index) {
+        return labels[index];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * 追加一个样本, pixels[offset, offset + imageSize) 为无符号像素值。
+     */
+    void add(byte[] pixels, int offset, int label) {
+        int row = size * imageSize;
+        for (int i = 0; i < imageSize; ++i) {
+            inputs[row + i] = pixels[offset + i] & 0xff;
+        }
+        labels[size++] = label;
+    }
+
+    void add(Dataset dataset, int index) {
+        dataset.copyImage(index, inputs, size * imageSize);
+        labels[size++] = dataset.label(index);
+    }
+
+    /**
+     * 与 other 交换内容, 两者容量必须相同。
+     */
+    void swap(Batch other) {
+        if (other.capacity != capacity || other.imageSize != imageSize) {
+            throw new IllegalArgumentException("batch shape mismatch");
+        }
+        double[] otherInputs = other.inputs;
+        int[] otherLabels = other.labels;
+        int otherSize = other.size;
+        other.inputs = inputs;
+        other.labels = labels;
+        other.size = size;
+        inputs = otherInputs;
+        labels = otherLabels;
+        size = otherSize;
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.mnist;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 批量计算用的缓冲区: 每层一个 batch x units 的行主序矩阵, 第 s 行是第 s 个样本。
+ * 容量不足时才重新分配, 不是线程安全的。
+ */
+public final class BatchWorkspace {
+
+    final MatrixKernel kernel;
+    private final int[] layerUnitNums;
+    private final int[] scratchSizes;
+    int capacity;
+    double[][] activations;
+    double[][] errorRates;
+    /**
+     * scratch[l] 为第 l 层 ({@link Layer}) 每个样本 scratchSizes[l] 个元素的临时空间。
+     */
+    double[][] scratch;
+    int[] labels = new int[0];
+
+    BatchWorkspace(int[] layerUnitNums, MatrixKernel kernel, int capacity) {
+        this(layerUnitNums, new int[layerUnitNums.length - 1], kernel, capacity);
+    }
+
+    BatchWorkspace(int[] layerUnitNums, int[] scratchSizes, MatrixKernel kernel, int capacity) {
+        this.layerUnitNums = layerUnitNums;
+        this.scratchSizes = scratchSizes;
+        this.kernel = kernel;
+        this.activations = new double[layerUnitNums.length][];
+        this.errorRates = new double[layerUnitNums.length][];
+        this.scratch = new double[scratchSizes.length][];
+        ensureCapacity(capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void ensureCapacity(int batchSize) {
+        if (batchSize <= capacity) {
+            return;
+        }
+        for (int i = 0; i < layerUnitNums.length; ++i) {
+            activations[i] = new double[batchSize * layerUnitNums[i]];
+            errorRates[i] = new double[batchSize * layerUnitNums[i]];
+        }
+        for (int l = 0; l < scratchSizes.length; ++l) {
+            scratch[l] = new double[batchSize * scratchSizes[l]];
+        }
+        labels = new int[batchSize];
+        capacity = batchSize;
+    }
+
+    public double[] inputs() {
+        return activations[0];
+    }
+
+    public double[] outputs() {
+        return activations[activations.length - 1];
+    }
+
+    /**
+     * 载入 images 中从第 from 个开始的 count 个图像, 每个图像 inputSize 个无符号字节, 连续存放。
+     */
+    public void loadImages(byte[] images, int from, int count) {
+        ensureCapacity(count);
+        double[] input = activations[0];
+        int inputSize = layerUnitNums[0];
+        int base = from * inputSize;
+        for (int k = 0; k < count * inputSize; ++k) {
+            input[k] = images[base + k] & 0xff;
+        }
+    }
+
+    /**
+     * 与 {@link #loadImages(byte[], int, int)} 相同, 按绝对位置读取, 不改变 images 的 position。
+     */
+    public void loadImages(ByteBuffer images, int from, int count) {
+        ensureCapacity(count);
+        double[] input = activations[0];
+        int inputSize = layerUnitNums[0];
+        int base = images.position() + from * inputSize;
+        for (int k = 0; k < count * inputSize; ++k) {
+            input[k] = images.get(base + k) & 0xff;
+        }
+    }
+
+    public void loadImages(Dataset dataset, int from, int count) {
+        ensureCapacity(count);
+        int inputSize = layerUnitNums[0];
+        for (int s = 0; s < count; ++s) {
+            dataset.copyImage(from + s, activations[0], s * inputSize);
+        }
+    }
+
+    /**
+     * 载入 batch 中 [from, from + count) 的样本。
+     */
+    public void loadBatch(Batch batch, int from, int count) {
+        ensureCapacity(count);
+        int inputSize = layerUnitNums[0];
+        System.arraycopy(batch.inputs, from * inputSize, activations[0], 0, count * inputSize);
+        System.arraycopy(batch.labels, from, labels, 0, count);
+    }
+}
@@ -0,0 +1,239 @@
+package org.example.mnist;
+
+/**
+ * 分块 + 寄存器分块的矩阵乘法。
+ * <p>
+ * 按 KC x NC 把 op(B) 打包成连续的 NR 列面板, 按 MC x KC 把 op(A) 打包成连续的 MR 行面板,
+ * 打包后两种转置情况都变成顺序访问, 面板大小按 L1/L2 选取; 最内层每次计算 C 的一个 4 x 4 小块,
+ * 16 个累加值保存在局部变量中。打包缓冲区按线程复用。
+ * <p>
+ * float 版本按 KC 行一块把 op(B) 打包成行主序, 再对 C 的每一行逐个加上 op(A)[i][p] 乘以 op(B) 的第 p 行,
+ * 最内层是连续的 axpy, 交给 {@link VectorOps} 处理。
+ */
+public final class BlockedKernel implements MatrixKernel {
+
+    private static final VectorOps OPS = Kernels.vectorOps();
+
+    private static final int MR = 4;
+    private static final int NR = 4;
+    private static final int MC = 64;
+    private static final int KC = 256;
+    private static final int NC = 512;
+
+    private final ThreadLocal<double[][]> packBuffers = new ThreadLocal<double[][]>() {
+        @Override
+        protected double[][] initialValue() {
+            return new double[][]{new double[MC * KC], new double[KC * NC]};
+        }
+    };
+
+    private final ThreadLocal<float[]> floatPackBuffer = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[0];
+        }
+    };
+
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+                     double alpha, double[] a, int lda, double[] b, int ldb,
+                     double beta, double[] c, int ldc) {
+        if (beta != 1) {
+            for (int i = 0; i < m; ++i) {
+                int row = i * ldc;
+                for (int j = 0; j < n; ++j) {
+                    c[row + j] = beta == 0 ? 0 : beta * c[row + j];
+                }
+            }
+        }
+        if (alpha == 0 || k == 0) {
+            return;
+        }
+        double[][] buffers = packBuffers.get();
+        double[] packedA = buffers[0];
+        double[] packedB = buffers[1];
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(transposeB, b, ldb, pc, jc, kc, nc, packedB);
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    packA(transposeA, a, lda, ic, pc, mc, kc, packedA);
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int bPanel = jr * kc;
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            microKernel(kc, alpha, packedA, ir * kc, packedB, bPanel,
+                                    c, (ic + ir) * ldc + jc + jr, ldc,
+                                    Math.min(MR, mc - ir), Math.min(NR, nc - jr));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+                     float alpha, float[] a, int lda, float[] b, int ldb,
+                     float beta, float[] c, int ldc) {
+        if (beta != 1) {
+            for (int i = 0; i < m; ++i) {
+                int row = i * ldc;
+                for (int j = 0; j < n; ++j) {
+                    c[row + j] = beta == 0 ? 0 : beta * c[row + j];
+                }
+            }
+        }
+        if (alpha == 0 || k == 0) {
+            return;
+        }
+        float[] packed = floatPackBuffer.get();
+        if (packed.length < Math.min(KC, k) * n) {
+            packed = new float[Math.min(KC, k) * n];
+            floatPackBuffer.set(packed);
+        }
+        for (int pc = 0; pc < k; pc += KC) {
+            int kc = Math.min(KC, k - pc);
+            for (int p = 0; p < kc; ++p) {
+                int target = p * n;
+                for (int j = 0; j < n; ++j) {
+                    packed[target + j] = transposeB ? b[j * ldb + pc + p] : b[(pc + p) * ldb + j];
+                }
+            }
+            for (int i = 0; i < m; ++i) {
+                int cRow = i * ldc;
+                for (int p = 0; p < kc; ++p) {
+                    float aValue = alpha * (transposeA ? a[(pc + p) * lda + i] : a[i * lda + pc + p]);
+                    if (aValue != 0) {
+                        OPS.axpy(aValue, packed, p * n, c, cRow, n);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * packed[(i / MR) * MR * kc + p * MR + i % MR] = op(A)[ic + i][pc + p], 不足 MR 行的面板补 0。
+     */
+    private static void packA(boolean transpose, double[] a, int lda, int ic, int pc, int mc, int kc, double[] packed) {
+        for (int ir = 0; ir < mc; ir += MR) {
+            int panel = ir * kc;
+            int rows = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; ++p) {
+                int target = panel + p * MR;
+                for (int r = 0; r < MR; ++r) {
+                    if (r < rows) {
+                        int i = ic + ir + r;
+                        packed[target + r] = transpose ? a[(pc + p) * lda + i] : a[i * lda + pc + p];
+                    } else {
+                        packed[target + r] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * packed[(j / NR) * NR * kc + p * NR + j % NR] = op(B)[pc + p][jc + j], 不足 NR 列的面板补 0。
+     */
+    private static void packB(boolean transpose, double[] b, int ldb, int pc, int jc, int kc, int nc, double[] packed) {
+        for (int jr = 0; jr < nc; jr += NR) {
+            int panel = jr * kc;
+            int cols = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; ++p) {
+                int target = panel + p * NR;
+                for (int q = 0; q < NR; ++q) {
+                    if (q < cols) {
+                        int j = jc + jr + q;
+                        packed[target + q] = transpose ? b[j * ldb + pc + p] : b[(pc + p) * ldb + j];
+                    } else {
+                        packed[target + q] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void microKernel(int kc, double alpha, double[] a, int aOffset, double[] b, int bOffset,
+                                    double[] c, int cOffset, int ldc, int rows, int cols) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0, ap = aOffset, bp = bOffset; p < kc; ++p, ap += MR, bp += NR) {
+            double a0 = a[ap];
+            double a1 = a[ap + 1];
+            double a2 = a[ap + 2];
+            double a3 = a[ap + 3];
+            double b0 = b[bp];
+            double b1 = b[bp + 1];
+            double b2 = b[bp + 2];
+            double b3 = b[bp + 3];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+        }
+        if (rows == MR && cols == NR) {
+            int r0 = cOffset;
+            int r1 = r0 + ldc;
+            int r2 = r1 + ldc;
+            int r3 = r2 + ldc;
+            c[r0] += alpha * c00;
+            c[r0 + 1] += alpha * c01;
+            c[r0 + 2] += alpha * c02;
+            c[r0 + 3] += alpha * c03;
+            c[r1] += alpha * c10;
+            c[r1 + 1] += alpha * c11;
+            c[r1 + 2] += alpha * c12;
+            c[r1 + 3] += alpha * c13;
+            c[r2] += alpha * c20;
+            c[r2 + 1] += alpha * c21;
+            c[r2 + 2] += alpha * c22;
+            c[r2 + 3] += alpha * c23;
+            c[r3] += alpha * c30;
+            c[r3 + 1] += alpha * c31;
+            c[r3 + 2] += alpha * c32;
+            c[r3 + 3] += alpha * c33;
+            return;
+        }
+        // 边缘上不完整的小块
+        storeRow(c, cOffset, cols, alpha, c00, c01, c02, c03);
+        if (rows > 1) {
+            storeRow(c, cOffset + ldc, cols, alpha, c10, c11, c12, c13);
+        }
+        if (rows > 2) {
+            storeRow(c, cOffset + 2 * ldc, cols, alpha, c20, c21, c22, c23);
+        }
+        if (rows > 3) {
+            storeRow(c, cOffset + 3 * ldc, cols, alpha, c30, c31, c32, c33);
+        }
+    }
+
+    private static void storeRow(double[] c, int offset, int cols, double alpha,
+                                 double v0, double v1, double v2, double v3) {
+        c[offset] += alpha * v0;
+        if (cols > 1) {
+            c[offset + 1] += alpha * v1;
+        }
+        if (cols > 2) {
+            c[offset + 2] += alpha * v2;
+        }
+        if (cols > 3) {
+            c[offset + 3] += alpha * v3;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.example.mnist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 模型检查点: 网络结构、全部参数和优化器状态。
+ * <p>
+ * 文件格式 (小端):
+ * <pre>
+ * 0   int  magic 'KNNC'
+ * 4   int  version
+ * 8   int  数据块偏移 dataOffset, 按 4096 对齐
+ * 12  int  层数 n, 随后 n 个 int 为 layerUnitNums
+ *     n - 1 个 int, 各层激活函数的 {@link Activation#ordinal()} (版本 2 起; 版本 1 全部为 sigmoid)
+ *     long 训练步数
+ *     int  优化器名称的 UTF-8 字节数, 随后是名称
+ *     long 参数个数 P
+ *     long 优化器状态个数 S
+ *     long CRC32, 版本 3 起覆盖它之前的整个文件头和数据块, 之前的版本只覆盖数据块
+ * dataOffset: P 个 double, 各层按顺序存放, 每层布局同 {@link DenseLayer#parameters()}; 随后 S 个 double
+ * </pre>
+ * 载入时先检查文件头中的层数、单元数、激活函数序号和各段长度是否落在文件范围内, 不合法时抛出 IOException,
+ * 再校验 CRC。
+ * 载入时整个文件以只读方式内存映射, 参数块作为 DoubleBuffer 视图一次性拷贝进堆内数组
+ * (矩阵乘法内核只处理 double[]), 载入完成后不再引用映射。单个映射不能超过 2 GB,
+ * 因此写入和载入都拒绝超过 {@link Integer#MAX_VALUE} 字节的检查点, 抛出 IOException。
+ * 写入先写临时文件再原子改名, 读者不会看到写了一半的文件。
+ */
+public final class Checkpoint {
+
+    static final int MAGIC = 0x4B4E4E43;
+    static final int VERSION = 3;
+    private static final int ALIGNMENT = 4096;
+
+    private final ModelSnapshot model;
+    private final String optimizer;
+    private final double[] optimizerState;
+    private final long step;
+
+    public Checkpoint(ModelSnapshot model, String optimizer, double[] optimizerState, long step) {
+        this.model = model;
+        this.optimizer = optimizer;
+        this.optimizerState = optimizerState;
+        this.step = step;
+    }
+
+    public Checkpoint(ModelSnapshot model, long step) {
+        this(model, "sgd", new double[0], step);
+    }
+
+    /**
+     * 记录 optimizer 当前的名字、状态和步数。
+     */
+    public Checkpoint(ModelSnapshot model, Optimizer optimizer) {
+        this(model, optimizer.name(), optimizer.state(), optimizer.step());
+    }
+
+    public ModelSnapshot model() {
+        return model;
+    }
+
+    public String optimizer() {
+        return optimizer;
+    }
+
+    public double[] optimizerState() {
+        return optimizerState.clone();
+    }
+
+    public long step() {
+        return step;
+    }
+
+    /**
+     * 优化器名字相同时把状态和步数恢复到 optimizer, 返回是否恢复。
+     * 状态长度与模型的参数个数不符时抛出 IllegalArgumentException, optimizer 保持原样。
+     */
+    public boolean restoreOptimizer(Optimizer optimizer) {
+        if (!optimizer.name().equals(this.optimizer)) {
+            return false;
+        }
+        optimizer.restore(optimizerState, step, model.network().parameterCount());
+        return true;
+    }
+
+    public void save(Path path) throws IOException {
+        Network network = model.network();
+        int[] layerUnitNums = network.layerUnitNums();
+        byte[] optimizerName = optimizer.getBytes(StandardCharsets.UTF_8);
+        int headerSize = 4 * 4 + 4 * layerUnitNums.length + 4 * network.layerCount()
+                + 8 + 4 + optimizerName.length + 8 + 8 + 8;
+        int dataOffset = align(headerSize, ALIGNMENT);
+        long parameterCount = network.parameterCount();
+        long dataBytes = 8L * (parameterCount + optimizerState.length);
+        if (dataOffset + dataBytes > Integer.MAX_VALUE) {
+            throw new IOException("checkpoint of " + (dataOffset + dataBytes) + " bytes exceeds "
+                    + Integer.MAX_VALUE + ": " + path);
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, dataOffset, dataBytes);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = data.asDoubleBuffer();
+            for (int l = 0; l < network.layerCount(); ++l) {
+                doubles.put(network.layer(l).parameters());
+            }
+            doubles.put(optimizerState);
+            data.force();
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dataOffset).putInt(layerUnitNums.length);
+            for (int units : layerUnitNums) {
+                header.putInt(units);
+            }
+            for (Activation activation : network.activations()) {
+                header.putInt(activation.ordinal());
+            }
+            header.putLong(step).putInt(optimizerName.length).put(optimizerName);
+            header.putLong(parameterCount).putLong(optimizerState.length);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, header.position());
+            data.clear();
+            crc.update(data);
+            header.putLong(crc.getValue());
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        try {
+            Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static Checkpoint load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("checkpoint of " + fileSize + " bytes exceeds " + Integer.MAX_VALUE + ": " + path);
+            }
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            file.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                if (file.getInt() != MAGIC) {
+                    throw new IOException("not a checkpoint file: " + path);
+                }
+                int version = file.getInt();
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("unsupported checkpoint version " + version + ": " + path);
+                }
+                int dataOffset = file.getInt();
+                int layerCount = file.getInt();
+                if (layerCount < 2 || layerCount > file.remaining() / 4) {
+                    throw corrupt(path, "layer count " + layerCount);
+                }
+                int[] layerUnitNums = new int[layerCount];
+                for (int i = 0; i < layerUnitNums.length; ++i) {
+                    layerUnitNums[i] = file.getInt();
+                    if (layerUnitNums[i] <= 0) {
+                        throw corrupt(path, "unit count " + layerUnitNums[i] + " in layer " + i);
+                    }
+                }
+                Activation[] activations = null;
+                if (version >= 2) {
+                    Activation[] values = Activation.values();
+                    activations = new Activation[layerUnitNums.length - 1];
+                    for (int l = 0; l < activations.length; ++l) {
+                        int ordinal = file.getInt();
+                        if (ordinal < 0 || ordinal >= values.length) {
+                            throw corrupt(path, "activation " + ordinal + " in layer " + l);
+                        }
+                        activations[l] = values[ordinal];
+                    }
+                }
+                long step = file.getLong();
+                int nameLength = file.getInt();
+                if (nameLength < 0 || nameLength > file.remaining()) {
+                    throw corrupt(path, "optimizer name length " + nameLength);
+                }
+                byte[] optimizerName = new byte[nameLength];
+                file.get(optimizerName);
+                long parameterCount = file.getLong();
+                long stateCount = file.getLong();
+                int crcPosition = file.position();
+                long expectedCrc = file.getLong();
+
+                long topologyParameters = 0;
+                for (int l = 0; l + 1 < layerUnitNums.length; ++l) {
+                    topologyParameters += (layerUnitNums[l] + 1L) * layerUnitNums[l + 1];
+                }
+                if (parameterCount != topologyParameters) {
+                    throw new IOException("parameter count " + parameterCount + " does not match topology: " + path);
+                }
+                if (dataOffset < file.position() || dataOffset > fileSize) {
+                    throw corrupt(path, "data offset " + dataOffset);
+                }
+                if (stateCount < 0 || stateCount > (fileSize - dataOffset) / 8 - parameterCount) {
+                    throw corrupt(path, "optimizer state count " + stateCount);
+                }
+                file.position(dataOffset);
+                file.limit((int) (dataOffset + 8 * (parameterCount + stateCount)));
+                ByteBuffer data = file.slice().order(ByteOrder.LITTLE_ENDIAN);
+                CRC32 crc = new CRC32();
+                if (version >= 3) {
+                    ByteBuffer header = file.duplicate();
+                    header.position(0).limit(crcPosition);
+                    crc.update(header);
+                }
+                crc.update(data.duplicate());
+                if (crc.getValue() != expectedCrc) {
+                    throw new IOException("checkpoint checksum mismatch: " + path);
+                }
+                Network network = new Network(layerUnitNums, activations);
+                DoubleBuffer doubles = data.asDoubleBuffer();
+                for (int l = 0; l < network.layerCount(); ++l) {
+                    doubles.get(network.layer(l).parameters());
+                }
+                double[] optimizerState = new double[(int) stateCount];
+                doubles.get(optimizerState);
+                return new Checkpoint(ModelSnapshot.wrap(network),
+                        new String(optimizerName, StandardCharsets.UTF_8), optimizerState, step);
+            } catch (RuntimeException e) {
+                // 截断的文件会在读取时越界
+                throw new IOException("corrupt checkpoint file: " + path, e);
+            }
+        }
+    }
+
+    private static IOException corrupt(Path path, String reason) {
+        return new IOException("corrupt checkpoint file (" + reason + "): " + path);
+    }
+
+    private static int align(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+}
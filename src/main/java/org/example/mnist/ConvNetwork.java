@@ -0,0 +1,146 @@
+package org.example.mnist;
+
+import java.util.Random;
+
+/**
+ * 由任意 {@link Layer} 串成的网络, 例如卷积 → 池化 → 全连接。只支持批量计算, 样本通过
+ * {@link BatchWorkspace#loadBatch} 或 {@link BatchWorkspace#loadImages} 载入。
+ * <p>
+ * 最后一层必须是 {@link DenseLayer}, 损失由它的激活函数决定, 见 {@link Activation}。
+ * 推理引擎、检查点、量化和并行训练目前只支持全连接的 {@link Network}。
+ */
+public final class ConvNetwork {
+
+    private final Layer[] layers;
+    private final int[] layerUnitNums;
+    private final int[] scratchSizes;
+
+    public ConvNetwork(Random random, Layer... layers) {
+        if (layers.length == 0 || !(layers[layers.length - 1] instanceof DenseLayer)) {
+            throw new IllegalArgumentException("the last layer must be a DenseLayer");
+        }
+        this.layers = layers.clone();
+        this.layerUnitNums = new int[layers.length + 1];
+        this.scratchSizes = new int[layers.length];
+        layerUnitNums[0] = layers[0].inputSize();
+        for (int l = 0; l < layers.length; ++l) {
+            if (layers[l].inputSize() != layerUnitNums[l]) {
+                throw new IllegalArgumentException("layer " + l + " expects " + layers[l].inputSize()
+                        + " inputs, previous layer produces " + layerUnitNums[l]);
+            }
+            if (l < layers.length - 1 && layers[l] instanceof DenseLayer
+                    && ((DenseLayer) layers[l]).activation() == Activation.SOFTMAX) {
+                throw new IllegalArgumentException("softmax is only supported in the output layer");
+            }
+            layerUnitNums[l + 1] = layers[l].outputSize();
+            scratchSizes[l] = layers[l].scratchSize();
+            layers[l].initGaussian(random);
+        }
+    }
+
+    public int parameterCount() {
+        int count = 0;
+        for (Layer layer : layers) {
+            count += layer.parameterCount();
+        }
+        return count;
+    }
+
+    public int layerCount() {
+        return layers.length;
+    }
+
+    public Layer layer(int index) {
+        return layers[index];
+    }
+
+    public int inputSize() {
+        return layerUnitNums[0];
+    }
+
+    public int outputSize() {
+        return layerUnitNums[layerUnitNums.length - 1];
+    }
+
+    public BatchWorkspace newBatchWorkspace(MatrixKernel kernel, int capacity) {
+        return new BatchWorkspace(layerUnitNums, scratchSizes, kernel, capacity);
+    }
+
+    public Gradient newGradient() {
+        return new Gradient(layers);
+    }
+
+    public double[] feedForward(BatchWorkspace workspace, int count) {
+        double[][] activations = workspace.activations;
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l].forward(workspace.kernel, activations[l], activations[l + 1], workspace.scratch[l], count);
+        }
+        return workspace.outputs();
+    }
+
+    /**
+     * 计算 workspace 中前 count 个样本的梯度并累加到 gradient 中, 返回损失之和。
+     */
+    public double backPropagate(BatchWorkspace workspace, int count, Gradient gradient) {
+        feedForward(workspace, count);
+
+        double[][] activations = workspace.activations;
+        double[][] errorRates = workspace.errorRates;
+
+        // 计算输出层错误率
+        int outputSize = outputSize();
+        double[] outputActivation = activations[layers.length];
+        double[] outputErrorRate = errorRates[layers.length];
+        Activation outputActivationFunction = ((DenseLayer) layers[layers.length - 1]).activation();
+        double loss = 0;
+        for (int s = 0, row = 0; s < count; ++s, row += outputSize) {
+            loss += outputActivationFunction.outputError(outputActivation, outputErrorRate, row, outputSize,
+                    workspace.labels[s]);
+        }
+
+        // 从输出层往回逐层累加梯度并传回误差
+        for (int l = layers.length - 1; l >= 0; --l) {
+            double[] inputErrorRate = l > 0 ? errorRates[l] : null;
+            layers[l].backward(workspace.kernel, activations[l], activations[l + 1], errorRates[l + 1],
+                    inputErrorRate, gradient.values[l], workspace.scratch[l], count);
+            if (l > 0) {
+                layers[l - 1].multiplyDerivative(activations[l], inputErrorRate, count);
+            }
+        }
+        return loss;
+    }
+
+    /**
+     * 见 {@link Network#applyGradient(Gradient, double, Optimizer)}。
+     */
+    public void applyGradient(Gradient gradient, double scale, Optimizer optimizer) {
+        optimizer.beginStep(parameterCount());
+        int offset = 0;
+        for (int l = 0; l < layers.length; ++l) {
+            optimizer.update(layers[l].parameters(), gradient.values[l], scale, offset);
+            offset += layers[l].parameterCount();
+        }
+    }
+
+    /**
+     * 在 dataset 上的准确率, 每次取 workspace 容量个样本批量计算。
+     */
+    public double accuracy(Dataset dataset, BatchWorkspace workspace) {
+        int batchSize = Math.max(workspace.capacity(), 1);
+        int outputSize = outputSize();
+        int correct = 0;
+        double[] scores = new double[outputSize];
+        for (int from = 0; from < dataset.size(); from += batchSize) {
+            int count = Math.min(batchSize, dataset.size() - from);
+            workspace.loadImages(dataset, from, count);
+            double[] outputs = feedForward(workspace, count);
+            for (int s = 0; s < count; ++s) {
+                System.arraycopy(outputs, s * outputSize, scores, 0, outputSize);
+                if (Network.argMax(scores) == dataset.label(from + s)) {
+                    ++correct;
+                }
+            }
+        }
+        return 1.0 * correct / dataset.size();
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.mnist;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 步长为 1、不补零的二维卷积层, 通过 im2col 变成一次矩阵乘法。
+ * <p>
+ * 输入为 height x width x channels, 输出为 outputHeight x outputWidth x filters, 都是通道在最内层。
+ * im2col 把每个输出位置对应的 kernelSize x kernelSize x channels 个输入排成一行, 整个 batch 得到
+ * (count * outputHeight * outputWidth) x patchSize 的矩阵 X, 于是输出就是 f(X * W^T + b),
+ * 与 {@link DenseLayer} 的批量计算相同, 同样交给 {@link MatrixKernel}。
+ * <p>
+ * 参数布局: filters x patchSize 的权重矩阵, 每行按 (ky, kx, channel) 排列, 随后是 filters 个偏置。
+ */
+public final class ConvolutionLayer implements Layer {
+
+    private static final VectorOps OPS = Kernels.vectorOps();
+
+    private final int height;
+    private final int width;
+    private final int channels;
+    private final int filters;
+    private final int kernelSize;
+    private final int outputHeight;
+    private final int outputWidth;
+    private final int patchSize;
+    private final double[] parameters;
+    private final Activation activation;
+
+    public ConvolutionLayer(int height, int width, int channels, int filters, int kernelSize, Activation activation) {
+        if (kernelSize <= 0 || kernelSize > height || kernelSize > width || channels <= 0 || filters <= 0) {
+            throw new IllegalArgumentException("invalid convolution: " + height + "x" + width + "x" + channels
+                    + ", " + filters + " filters of " + kernelSize + "x" + kernelSize);
+        }
+        if (activation == Activation.SOFTMAX) {
+            throw new IllegalArgumentException("softmax is only supported in the output layer");
+        }
+        this.height = height;
+        this.width = width;
+        this.channels = channels;
+        this.filters = filters;
+        this.kernelSize = kernelSize;
+        this.outputHeight = height - kernelSize + 1;
+        this.outputWidth = width - kernelSize + 1;
+        this.patchSize = kernelSize * kernelSize * channels;
+        this.parameters = new double[filters * patchSize + filters];
+        this.activation = activation;
+    }
+
+    public int outputHeight() {
+        return outputHeight;
+    }
+
+    public int outputWidth() {
+        return outputWidth;
+    }
+
+    public int filters() {
+        return filters;
+    }
+
+    @Override
+    public int inputSize() {
+        return height * width * channels;
+    }
+
+    @Override
+    public int outputSize() {
+        return outputHeight * outputWidth * filters;
+    }
+
+    @Override
+    public int parameterCount() {
+        return parameters.length;
+    }
+
+    @Override
+    public double[] parameters() {
+        return parameters;
+    }
+
+    @Override
+    public void initGaussian(Random random) {
+        double standardDeviation = activation.initialStandardDeviation(patchSize);
+        for (int k = 0; k < parameters.length; ++k) {
+            parameters[k] = standardDeviation * random.nextGaussian();
+        }
+    }
+
+    /**
+     * im2col 得到的矩阵。
+     */
+    @Override
+    public int scratchSize() {
+        return outputHeight * outputWidth * patchSize;
+    }
+
+    @Override
+    public void forward(MatrixKernel kernel, double[] input, double[] output, double[] scratch, int count) {
+        imageToColumns(input, scratch, count);
+        int rows = count * outputHeight * outputWidth;
+        kernel.gemm(false, true, rows, filters, patchSize,
+                1, scratch, patchSize, parameters, patchSize, 0, output, filters);
+        int biasOffset = filters * patchSize;
+        for (int r = 0, row = 0; r < rows; ++r, row += filters) {
+            OPS.axpy(1, parameters, biasOffset, output, row, filters);
+        }
+        activation.apply(output, 0, rows * filters);
+    }
+
+    @Override
+    public void multiplyDerivative(double[] output, double[] delta, int count) {
+        activation.multiplyDerivative(output, delta, 0, count * outputSize());
+    }
+
+    /**
+     * G_W += E^T * X, G_b += E 按列求和; inputDelta 为 E * W 经 col2im 累加回各输入位置的结果。
+     */
+    @Override
+    public void backward(MatrixKernel kernel, double[] input, double[] output, double[] delta, double[] inputDelta,
+                         double[] gradient, double[] scratch, int count) {
+        int rows = count * outputHeight * outputWidth;
+        kernel.gemm(true, false, filters, patchSize, rows,
+                1, delta, filters, scratch, patchSize, 1, gradient, patchSize);
+        int biasOffset = filters * patchSize;
+        for (int r = 0, row = 0; r < rows; ++r, row += filters) {
+            OPS.axpy(1, delta, row, gradient, biasOffset, filters);
+        }
+        if (inputDelta == null) {
+            return;
+        }
+        // X 已经用完, 直接用同一块空间存放 E * W
+        kernel.gemm(false, false, rows, patchSize, filters,
+                1, delta, filters, parameters, patchSize, 0, scratch, patchSize);
+        columnsToImage(scratch, inputDelta, count);
+    }
+
+    private void imageToColumns(double[] input, double[] columns, int count) {
+        int rowLength = kernelSize * channels;
+        int row = 0;
+        for (int s = 0; s < count; ++s) {
+            int image = s * inputSize();
+            for (int y = 0; y < outputHeight; ++y) {
+                for (int x = 0; x < outputWidth; ++x, row += patchSize) {
+                    // 卷积核的每一行在输入中是连续的 kernelSize * channels 个元素
+                    for (int ky = 0; ky < kernelSize; ++ky) {
+                        int source = image + ((y + ky) * width + x) * channels;
+                        int target = row + ky * rowLength;
+                        for (int i = 0; i < rowLength; ++i) {
+                            columns[target + i] = input[source + i];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void columnsToImage(double[] columns, double[] image, int count) {
+        Arrays.fill(image, 0, count * inputSize(), 0);
+        int rowLength = kernelSize * channels;
+        int row = 0;
+        for (int s = 0; s < count; ++s) {
+            int base = s * inputSize();
+            for (int y = 0; y < outputHeight; ++y) {
+                for (int x = 0; x < outputWidth; ++x, row += patchSize) {
+                    for (int ky = 0; ky < kernelSize; ++ky) {
+                        int source = row + ky * rowLength;
+                        int target = base + ((y + ky) * width + x) * channels;
+                        for (int i = 0; i < rowLength; ++i) {
+                            image[target + i] += columns[source + i];
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.mnist;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 按批顺序读取一轮 (epoch) 训练数据。
+ */
+public interface DataSource extends Closeable {
+
+    int imageSize();
+
+    /**
+     * 把下一批样本写入 batch, 最多 batch.capacity() 个。本轮数据读完时 batch 为空并返回 false;
+     * 最后一批可能不满。
+     */
+    boolean next(Batch batch) throws IOException;
+
+    /**
+     * 开始新的一轮。
+     */
+    void reset() throws IOException;
+}
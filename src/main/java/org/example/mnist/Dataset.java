@@ -0,0 +1,23 @@
+package org.example.mnist;
+
+/**
+ * 按样本下标随机访问的只读数据集, 每个样本是 imageSize 个无符号字节的灰度图和一个 0-9 的标签。
+ */
+public interface Dataset {
+
+    int size();
+
+    int imageSize();
+
+    int label(int index);
+
+    /**
+     * target[offset + i] = 第 index 个图像的第 i 个像素 (0-255)
+     */
+    void copyImage(int index, double[] target, int offset);
+
+    /**
+     * 原样拷贝第 index 个图像的像素字节到 target[offset, offset + imageSize)。
+     */
+    void copyImage(int index, byte[] target, int offset);
+}
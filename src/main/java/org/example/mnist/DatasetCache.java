@@ -0,0 +1,234 @@
+package org.example.mnist;
+
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * 把 classpath 中 gzip 压缩的 IDX 图像/标签文件一次性解码成未压缩的缓存文件, 之后直接内存映射打开。
+ * <p>
+ * 缓存文件格式 (大端):
+ * <pre>
+ * 0   int magic 'KMNC'
+ * 4   int version
+ * 8   int 样本数 count
+ * 12  int 行数
+ * 16  int 列数
+ * 20  int 图像数据的起始偏移, 按 4096 对齐
+ * 24  long 图像资源的字节数
+ * 32  long 标签资源的字节数
+ * 40  long 图像资源的最后修改时间
+ * 48  long 标签资源的最后修改时间
+ * 56  int 图像资源的 CRC32
+ * 60  int 标签资源的 CRC32
+ * 64  保留
+ * 128 count 个字节的标签
+ * ... 图像数据, 每个样本 行数 * 列数 个字节, 连续存放
+ * </pre>
+ * 缓存文件名由图像和标签两个资源的完整路径决定。打开时比较文件头中记录的资源大小、修改时间和 CRC32
+ * 与当前 classpath 上的资源, 不一致、文件头损坏或文件被截断时重新生成。
+ * 缓存目录由 {@code -Dmnist.cache.dir} 指定, 默认是 java.io.tmpdir 下的 kata-mnist。
+ * 新文件先写到临时文件再原子改名, 多个进程同时启动也不会读到写了一半的缓存。
+ */
+public final class DatasetCache {
+
+    static final int MAGIC = 0x4B4D4E43;
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 128;
+    private static final int PAGE_SIZE = 4096;
+
+    private DatasetCache() {
+    }
+
+    public static Path defaultCacheDir() {
+        String dir = System.getProperty("mnist.cache.dir");
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "kata-mnist");
+    }
+
+    public static MappedDataset open(String imageResource, String labelResource) throws IOException {
+        return open(imageResource, labelResource, defaultCacheDir());
+    }
+
+    public static MappedDataset open(String imageResource, String labelResource, Path cacheDir) throws IOException {
+        Path cacheFile = cacheDir.resolve(cacheFileName(imageResource, labelResource));
+        Source image = Source.of(imageResource);
+        Source label = Source.of(labelResource);
+        if (!isCurrent(cacheFile, image, label)) {
+            convert(imageResource, labelResource, cacheFile, image, label);
+        }
+        return MappedDataset.open(cacheFile);
+    }
+
+    /**
+     * 缓存文件存在、文件头完整并且记录的资源与 image, label 一致。
+     */
+    static boolean isCurrent(Path cacheFile, Source image, Source label) throws IOException {
+        if (!Files.isRegularFile(cacheFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return false;
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return false;
+            }
+            long count = header.getInt();
+            long imageSize = (long) header.getInt() * header.getInt();
+            long imageOffset = header.getInt();
+            Source recordedImage = new Source(header.getLong(24), header.getLong(40), header.getInt(56));
+            Source recordedLabel = new Source(header.getLong(32), header.getLong(48), header.getInt(60));
+            if (!recordedImage.matches(image) || !recordedLabel.matches(label)) {
+                return false;
+            }
+            return count >= 0 && imageSize > 0 && imageOffset >= HEADER_SIZE + count
+                    && imageOffset + count * imageSize <= channel.size();
+        }
+    }
+
+    /**
+     * 解码 IDX 资源并写出缓存文件。
+     */
+    public static void convert(String imageResource, String labelResource, Path cacheFile) throws IOException {
+        convert(imageResource, labelResource, cacheFile, Source.of(imageResource), Source.of(labelResource));
+    }
+
+    /**
+     * image, label 是解码之前取得的资源信息, 解码期间资源被替换时下次打开会再次重新生成。
+     */
+    private static void convert(String imageResource, String labelResource, Path cacheFile, Source image,
+                                Source label) throws IOException {
+        Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+        Path tempFile = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try (DataInputStream imageIn = IdxFiles.openResource(imageResource);
+             DataInputStream labelIn = IdxFiles.openResource(labelResource);
+             FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int[] imageHeader = IdxFiles.readImageHeader(imageIn);
+            int count = imageHeader[0];
+            int rows = imageHeader[1];
+            int columns = imageHeader[2];
+            int labelCount = IdxFiles.readLabelHeader(labelIn);
+            if (labelCount != count) {
+                throw new IOException("image count " + count + " does not match label count " + labelCount);
+            }
+            int imageOffset = align(HEADER_SIZE + count, PAGE_SIZE);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(rows).putInt(columns).putInt(imageOffset);
+            header.putLong(image.size).putLong(label.size).putLong(image.lastModified).putLong(label.lastModified);
+            header.putInt(image.crc).putInt(label.crc);
+            header.clear();
+            writeFully(out, header, 0);
+
+            byte[] labels = new byte[count];
+            labelIn.readFully(labels);
+            writeFully(out, ByteBuffer.wrap(labels), HEADER_SIZE);
+
+            // 每次拷贝一批图像, 避免为每个样本分配数组
+            int imageSize = rows * columns;
+            byte[] chunk = new byte[imageSize * 1024];
+            long position = imageOffset;
+            for (int remaining = count; remaining > 0; ) {
+                int samples = Math.min(remaining, 1024);
+                imageIn.readFully(chunk, 0, samples * imageSize);
+                writeFully(out, ByteBuffer.wrap(chunk, 0, samples * imageSize), position);
+                position += (long) samples * imageSize;
+                remaining -= samples;
+            }
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        try {
+            Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 图像资源的文件名加上两个资源完整路径的 CRC32, 同名资源在不同目录下或配不同的标签时不会共用缓存。
+     */
+    static String cacheFileName(String imageResource, String labelResource) {
+        String name = imageResource.substring(imageResource.lastIndexOf('/') + 1);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        CRC32 crc = new CRC32();
+        crc.update((imageResource + '\0' + labelResource).getBytes(StandardCharsets.UTF_8));
+        return String.format(Locale.ROOT, "%s-%08x.v%d.bin", name, crc.getValue(), VERSION);
+    }
+
+    private static int align(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 生成缓存时 classpath 资源的字节数、最后修改时间 (未知时为 0) 和压缩文件本身的 CRC32。
+     */
+    static final class Source {
+
+        final long size;
+        final long lastModified;
+        final int crc;
+
+        Source(long size, long lastModified, int crc) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+
+        static Source of(String resource) throws IOException {
+            URL url = DatasetCache.class.getClassLoader().getResource(resource);
+            if (url == null) {
+                throw new FileNotFoundException("resource not found: " + resource);
+            }
+            URLConnection connection = url.openConnection();
+            // 不缓存 jar 文件句柄, 关闭流时一并释放
+            connection.setUseCaches(false);
+            CRC32 crc = new CRC32();
+            long size = 0;
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                    size += n;
+                }
+            }
+            return new Source(size, connection.getLastModified(), (int) crc.getValue());
+        }
+
+        boolean matches(Source other) {
+            return size == other.size && lastModified == other.lastModified && crc == other.crc;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.mnist;
+
+import java.util.Random;
+
+/**
+ * 从可随机访问的 {@link Dataset} 读取批次。random 不为 null 时每一轮开始前重新打乱样本顺序。
+ */
+public final class DatasetSource implements DataSource {
+
+    private final Dataset dataset;
+    private final Random random;
+    private final int[] order;
+    private int position;
+
+    public DatasetSource(Dataset dataset, Random random) {
+        this.dataset = dataset;
+        this.random = random;
+        this.order = new int[dataset.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        shuffle();
+    }
+
+    @Override
+    public int imageSize() {
+        return dataset.imageSize();
+    }
+
+    @Override
+    public boolean next(Batch batch) {
+        batch.clear();
+        while (batch.size() < batch.capacity() && position < order.length) {
+            batch.add(dataset, order[position++]);
+        }
+        return batch.size() > 0;
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+        shuffle();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void shuffle() {
+        if (random == null) {
+            return;
+        }
+        for (int i = order.length - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.mnist;
+
+import java.util.Random;
+
+/**
+ * 全连接层。权重和偏置连续存放在同一个行主序的 double[] 中:
+ * 前 outputSize * inputSize 个元素是权重矩阵, 第 j 行是第 j 个单元对上一层各单元的权重;
+ * 随后的 outputSize 个元素是偏置。本层的输出经过 {@link #activation()} 之后作为下一层的输入。
+ */
+public final class DenseLayer implements Layer {
+
+    private static final VectorOps OPS = Kernels.vectorOps();
+
+    private final int inputSize;
+    private final int outputSize;
+    private final double[] parameters;
+    private final Activation activation;
+
+    public DenseLayer(int inputSize, int outputSize) {
+        this(inputSize, outputSize, Activation.SIGMOID);
+    }
+
+    public DenseLayer(int inputSize, int outputSize, Activation activation) {
+        if (inputSize <= 0 || outputSize <= 0) {
+            throw new IllegalArgumentException("layer size must be positive: " + inputSize + "x" + outputSize);
+        }
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.parameters = new double[outputSize * inputSize + outputSize];
+        this.activation = activation;
+    }
+
+    public DenseLayer copy() {
+        DenseLayer copy = new DenseLayer(inputSize, outputSize, activation);
+        System.arraycopy(parameters, 0, copy.parameters, 0, parameters.length);
+        return copy;
+    }
+
+    @Override
+    public int inputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int outputSize() {
+        return outputSize;
+    }
+
+    public Activation activation() {
+        return activation;
+    }
+
+    /**
+     * 权重个数, 同时也是偏置在 {@link #parameters()} 中的起始下标。
+     */
+    public int weightCount() {
+        return outputSize * inputSize;
+    }
+
+    @Override
+    public int parameterCount() {
+        return parameters.length;
+    }
+
+    /**
+     * 直接暴露底层存储, 供梯度更新等需要整块遍历参数的地方使用。
+     */
+    @Override
+    public double[] parameters() {
+        return parameters;
+    }
+
+    public double weight(int j, int i) {
+        return parameters[j * inputSize + i];
+    }
+
+    public double bias(int j) {
+        return parameters[weightCount() + j];
+    }
+
+    /**
+     * 按激活函数选择标准差, 见 {@link Activation#initialStandardDeviation(int)}。
+     */
+    @Override
+    public void initGaussian(Random random) {
+        double standardDeviation = activation.initialStandardDeviation(inputSize);
+        for (int k = 0; k < parameters.length; ++k) {
+            parameters[k] = standardDeviation * random.nextGaussian();
+        }
+    }
+
+    /**
+     * output[j] = sum_i W[j][i] * input[i] + b[j]
+     */
+    public void multiply(double[] input, int inputOffset, double[] output, int outputOffset) {
+        int biasOffset = weightCount();
+        for (int j = 0, row = 0; j < outputSize; ++j, row += inputSize) {
+            output[outputOffset + j] = parameters[biasOffset + j] + OPS.dot(parameters, row, input, inputOffset, inputSize);
+        }
+    }
+
+    /**
+     * output[i] = sum_j W[j][i] * delta[j], 即把本层的误差传回上一层。
+     */
+    public void multiplyTransposed(double[] delta, int deltaOffset, double[] output, int outputOffset) {
+        for (int i = 0; i < inputSize; ++i) {
+            output[outputOffset + i] = 0;
+        }
+        for (int j = 0, row = 0; j < outputSize; ++j, row += inputSize) {
+            double d = delta[deltaOffset + j];
+            if (d == 0) {
+                continue;
+            }
+            OPS.axpy(d, parameters, row, output, outputOffset, inputSize);
+        }
+    }
+
+    /**
+     * gradient[j][i] += scale * delta[j] * input[i], gradient 的偏置部分 += scale * delta[j]。
+     * gradient 与 {@link #parameters()} 布局相同。
+     */
+    public void accumulateOuterProduct(double scale, double[] delta, int deltaOffset,
+                                       double[] input, int inputOffset, double[] gradient) {
+        int biasOffset = weightCount();
+        for (int j = 0, row = 0; j < outputSize; ++j, row += inputSize) {
+            double d = scale * delta[deltaOffset + j];
+            gradient[biasOffset + j] += d;
+            if (d == 0) {
+                continue;
+            }
+            OPS.axpy(d, input, inputOffset, gradient, row, inputSize);
+        }
+    }
+
+    @Override
+    public int scratchSize() {
+        return 0;
+    }
+
+    /**
+     * 批量前向传播: output = f(X * W^T + b)。
+     */
+    @Override
+    public void forward(MatrixKernel kernel, double[] input, double[] output, double[] scratch, int count) {
+        kernel.gemm(false, true, count, outputSize, inputSize,
+                1, input, inputSize, parameters, inputSize, 0, output, outputSize);
+        int biasOffset = weightCount();
+        for (int s = 0, row = 0; s < count; ++s, row += outputSize) {
+            OPS.axpy(1, parameters, biasOffset, output, row, outputSize);
+            activation.apply(output, row, outputSize);
+        }
+    }
+
+    @Override
+    public void multiplyDerivative(double[] output, double[] delta, int count) {
+        activation.multiplyDerivative(output, delta, 0, count * outputSize);
+    }
+
+    /**
+     * G_W += E^T * X, G_b += E 按列求和, inputDelta = E * W。
+     */
+    @Override
+    public void backward(MatrixKernel kernel, double[] input, double[] output, double[] delta, double[] inputDelta,
+                         double[] gradient, double[] scratch, int count) {
+        kernel.gemm(true, false, outputSize, inputSize, count,
+                1, delta, outputSize, input, inputSize, 1, gradient, inputSize);
+        int biasOffset = weightCount();
+        for (int s = 0, row = 0; s < count; ++s, row += outputSize) {
+            OPS.axpy(1, delta, row, gradient, biasOffset, outputSize);
+        }
+        if (inputDelta != null) {
+            kernel.gemm(false, false, count, inputSize, outputSize,
+                    1, delta, outputSize, parameters, inputSize, 0, inputDelta, inputSize);
+        }
+    }
+}
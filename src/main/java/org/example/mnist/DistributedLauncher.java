@@ -0,0 +1,83 @@
+package org.example.mnist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在本机启动 workers 个 {@link DistributedTrainer} 进程, 端口从 basePort 开始依次分配,
+ * 用于在一台机器上验证分布式训练。子进程使用当前 JVM 的 java 可执行文件和 classpath,
+ * 输出直接继承到当前进程。
+ */
+public final class DistributedLauncher {
+
+    private DistributedLauncher() {
+    }
+
+    /**
+     * 启动所有进程并等待其结束。任一进程失败时结束其余进程并抛出异常。
+     */
+    public static void launch(int workers, int basePort, int epochs, int miniBatchSize, double learningRate,
+                              long seed, String trainImages, String trainLabels, String testImages, String testLabels)
+            throws IOException {
+        StringBuilder addresses = new StringBuilder();
+        for (int rank = 0; rank < workers; ++rank) {
+            if (rank > 0) {
+                addresses.append(',');
+            }
+            addresses.append("127.0.0.1:").append(basePort + rank);
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        // 子进程先各自把数据集解码到缓存目录, DatasetCache 的原子改名保证并发启动是安全的
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int rank = 0; rank < workers; ++rank) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add("-Dmnist.cache.dir=" + DatasetCache.defaultCacheDir());
+                command.add(DistributedTrainer.class.getName());
+                command.add(Integer.toString(rank));
+                command.add(addresses.toString());
+                command.add(Integer.toString(epochs));
+                command.add(Integer.toString(miniBatchSize));
+                command.add(Double.toString(learningRate));
+                command.add(Long.toString(seed));
+                command.add(trainImages);
+                command.add(trainLabels);
+                command.add(testImages);
+                command.add(testLabels);
+                processes.add(new ProcessBuilder(command).inheritIO().start());
+            }
+            for (int rank = 0; rank < workers; ++rank) {
+                int exitCode = processes.get(rank).waitFor();
+                if (exitCode != 0) {
+                    throw new IOException("worker " + rank + " exited with code " + exitCode);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for workers", e);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * DistributedLauncher workers basePort epochs miniBatchSize learningRate seed trainImages trainLabels testImages testLabels
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 10) {
+            System.err.println("usage: DistributedLauncher workers basePort epochs miniBatchSize learningRate seed"
+                    + " trainImages trainLabels testImages testLabels");
+            System.exit(2);
+        }
+        launch(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), Double.parseDouble(args[4]), Long.parseLong(args[5]),
+                args[6], args[7], args[8], args[9]);
+    }
+}
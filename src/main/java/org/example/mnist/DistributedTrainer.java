@@ -0,0 +1,153 @@
+package org.example.mnist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 数据并行的分布式训练, 每个进程一个实例。各进程用自己的数据分片算出本地梯度之和,
+ * 经 {@link RingAllReduce} 求出全局梯度之和后各自做同样的一步更新, 参数因此始终保持一致。
+ * <p>
+ * 梯度以 float 传输; 样本数和损失附在梯度之后一起求和, 最后一批不满时也按全局样本数求平均。
+ */
+public final class DistributedTrainer implements Closeable {
+
+    private final Network network;
+    private final RingAllReduce ring;
+    private final Optimizer optimizer;
+    private final BatchWorkspace workspace;
+    private final Gradient gradient;
+    private final double[] buffer;
+
+    public DistributedTrainer(Network network, RingAllReduce ring, Optimizer optimizer, MatrixKernel kernel,
+                              int miniBatchSize) {
+        this.network = network;
+        this.ring = ring;
+        this.optimizer = optimizer;
+        this.workspace = network.newBatchWorkspace(kernel, miniBatchSize);
+        this.gradient = network.newGradient();
+        this.buffer = new double[network.parameterCount() + 2];
+    }
+
+    public Network network() {
+        return network;
+    }
+
+    /**
+     * 把第 0 个进程的参数广播给所有进程。其余进程先把参数清零, 再按 double 精度求和。
+     */
+    public void broadcastParameters() throws IOException {
+        int offset = 0;
+        for (int l = 0; l < network.layerCount(); ++l) {
+            double[] parameters = network.layer(l).parameters();
+            if (ring.rank() == 0) {
+                System.arraycopy(parameters, 0, buffer, offset, parameters.length);
+            } else {
+                Arrays.fill(buffer, offset, offset + parameters.length, 0);
+            }
+            offset += parameters.length;
+        }
+        ring.allReduce(buffer, offset, false);
+        offset = 0;
+        for (int l = 0; l < network.layerCount(); ++l) {
+            double[] parameters = network.layer(l).parameters();
+            System.arraycopy(buffer, offset, parameters, 0, parameters.length);
+            offset += parameters.length;
+        }
+    }
+
+    /**
+     * 用 source 训练一轮。各进程的 source 每轮必须产生相同个数的批次。
+     *
+     * @return 全局平均损失
+     */
+    public double trainEpoch(DataSource source, Batch batch) throws IOException {
+        double loss = 0;
+        long samples = 0;
+        while (source.next(batch)) {
+            gradient.clear();
+            workspace.loadBatch(batch, 0, batch.size());
+            double localLoss = network.backPropagate(workspace, batch.size(), gradient);
+
+            int length = 0;
+            for (double[] layerValues : gradient.values) {
+                System.arraycopy(layerValues, 0, buffer, length, layerValues.length);
+                length += layerValues.length;
+            }
+            buffer[length] = batch.size();
+            buffer[length + 1] = localLoss;
+            ring.allReduce(buffer, length + 2, true);
+            length = 0;
+            for (double[] layerValues : gradient.values) {
+                System.arraycopy(buffer, length, layerValues, 0, layerValues.length);
+                length += layerValues.length;
+            }
+            double count = buffer[length];
+            network.applyGradient(gradient, 1.0 / count, optimizer);
+            loss += buffer[length + 1];
+            samples += (long) count;
+        }
+        return samples == 0 ? 0 : loss / samples;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ring.close();
+    }
+
+    /**
+     * 单个工作进程的入口, 通常由 {@link DistributedLauncher} 启动:
+     * <pre>
+     * DistributedTrainer rank host:port,host:port,... epochs miniBatchSize learningRate seed
+     *                    trainImages trainLabels testImages testLabels
+     * </pre>
+     * 初始权重由第 0 个进程按 seed 生成后广播, 各进程用 seed 派生出的子种子洗牌自己的分片。
+     * 第 0 个进程在每轮结束后打印测试集准确率。
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 10) {
+            System.err.println("usage: DistributedTrainer rank host:port,... epochs miniBatchSize learningRate seed"
+                    + " trainImages trainLabels testImages testLabels");
+            System.exit(2);
+        }
+        int rank = Integer.parseInt(args[0]);
+        List<InetSocketAddress> addresses = parseAddresses(args[1]);
+        int epochs = Integer.parseInt(args[2]);
+        int miniBatchSize = Integer.parseInt(args[3]);
+        double learningRate = Double.parseDouble(args[4]);
+        Seeds seeds = Seeds.of(Long.parseLong(args[5]));
+        Dataset trainData = new ShardedDataset(DatasetCache.open(args[6], args[7]), rank, addresses.size());
+        Dataset testData = rank == 0 ? DatasetCache.open(args[8], args[9]) : null;
+
+        Network network = new Network(new int[]{trainData.imageSize(), 30, 10}, seeds.initialization());
+        try (DistributedTrainer trainer = new DistributedTrainer(network, new RingAllReduce(rank, addresses),
+                new SgdOptimizer(learningRate), Kernels.matrixKernel(), miniBatchSize)) {
+            trainer.broadcastParameters();
+            DatasetSource source = new DatasetSource(trainData, seeds.derive(rank).shuffling());
+            Batch batch = new Batch(miniBatchSize, trainData.imageSize());
+            for (int i = 0; i < epochs; ++i) {
+                long start = System.nanoTime();
+                double loss = trainer.trainEpoch(source, batch);
+                source.reset();
+                if (rank == 0) {
+                    System.out.printf("%d loss %.4f, %d ms, testData correct percent %s%n", i, loss,
+                            (System.nanoTime() - start) / 1_000_000,
+                            new InferenceEngine(ModelSnapshot.of(network)).accuracy(testData));
+                }
+            }
+        }
+    }
+
+    static List<InetSocketAddress> parseAddresses(String value) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : value.split(",")) {
+            int colon = address.lastIndexOf(':');
+            addresses.add(new InetSocketAddress(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1))));
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.mnist;
+
+/**
+ * 查表加线性插值的 sigmoid, 不调用 Math.exp。
+ * <p>
+ * 表覆盖 [-16, 16], 步长 h = 1/128, 共 4097 个点。线性插值的误差不超过 h^2 / 8 * max|sigmoid''|
+ * = 2^-17 * 0.0963 ≈ 7.4e-7; 区间外直接取 0 或 1, 误差不超过 sigmoid(-16) ≈ 1.1e-7。
+ * 所以在整个实数轴上与 1 / (1 + exp(-x)) 的绝对误差小于 1e-6。
+ */
+final class FastSigmoid {
+
+    private static final double RANGE = 16;
+    private static final int STEPS_PER_UNIT = 128;
+    private static final double[] TABLE = new double[(int) (2 * RANGE * STEPS_PER_UNIT) + 1];
+
+    static {
+        for (int k = 0; k < TABLE.length; ++k) {
+            double x = -RANGE + (double) k / STEPS_PER_UNIT;
+            TABLE[k] = 1.0 / (1 + Math.exp(-x));
+        }
+    }
+
+    private FastSigmoid() {
+    }
+
+    static double value(double x) {
+        if (x <= -RANGE) {
+            return 0;
+        }
+        if (x >= RANGE) {
+            return 1;
+        }
+        double position = (x + RANGE) * STEPS_PER_UNIT;
+        int k = (int) position;
+        double fraction = position - k;
+        return TABLE[k] + fraction * (TABLE[k + 1] - TABLE[k]);
+    }
+}
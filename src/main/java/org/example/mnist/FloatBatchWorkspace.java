@@ -0,0 +1,105 @@
+package org.example.mnist;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link FloatNetwork} 批量计算用的缓冲区, 对应 {@link BatchWorkspace}: 每层一个 batch x units 的
+ * 行主序 float 矩阵。gradients[l] 是第 l 层这一批的 float 梯度, 与参数布局相同。
+ * 容量不足时才重新分配, 不是线程安全的。
+ */
+public final class FloatBatchWorkspace {
+
+    final MatrixKernel kernel;
+    private final int[] layerUnitNums;
+    private final byte[] image;
+    int capacity;
+    float[][] activations;
+    float[][] errorRates;
+    final float[][] gradients;
+    int[] labels = new int[0];
+
+    FloatBatchWorkspace(int[] layerUnitNums, MatrixKernel kernel, int capacity) {
+        this.layerUnitNums = layerUnitNums;
+        this.kernel = kernel;
+        this.image = new byte[layerUnitNums[0]];
+        this.activations = new float[layerUnitNums.length][];
+        this.errorRates = new float[layerUnitNums.length][];
+        this.gradients = new float[layerUnitNums.length - 1][];
+        for (int l = 0; l < gradients.length; ++l) {
+            gradients[l] = new float[(layerUnitNums[l] + 1) * layerUnitNums[l + 1]];
+        }
+        ensureCapacity(capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void ensureCapacity(int batchSize) {
+        if (batchSize <= capacity) {
+            return;
+        }
+        for (int i = 0; i < layerUnitNums.length; ++i) {
+            activations[i] = new float[batchSize * layerUnitNums[i]];
+            errorRates[i] = new float[batchSize * layerUnitNums[i]];
+        }
+        labels = new int[batchSize];
+        capacity = batchSize;
+    }
+
+    public float[] outputs() {
+        return activations[activations.length - 1];
+    }
+
+    /**
+     * 见 {@link BatchWorkspace#loadImages(byte[], int, int)}。
+     */
+    public void loadImages(byte[] images, int from, int count) {
+        ensureCapacity(count);
+        float[] input = activations[0];
+        int inputSize = layerUnitNums[0];
+        int base = from * inputSize;
+        for (int k = 0; k < count * inputSize; ++k) {
+            input[k] = images[base + k] & 0xff;
+        }
+    }
+
+    /**
+     * 见 {@link BatchWorkspace#loadImages(ByteBuffer, int, int)}。
+     */
+    public void loadImages(ByteBuffer images, int from, int count) {
+        ensureCapacity(count);
+        float[] input = activations[0];
+        int inputSize = layerUnitNums[0];
+        int base = images.position() + from * inputSize;
+        for (int k = 0; k < count * inputSize; ++k) {
+            input[k] = images.get(base + k) & 0xff;
+        }
+    }
+
+    public void loadImages(Dataset dataset, int from, int count) {
+        ensureCapacity(count);
+        float[] input = activations[0];
+        int inputSize = layerUnitNums[0];
+        for (int s = 0; s < count; ++s) {
+            dataset.copyImage(from + s, image, 0);
+            int row = s * inputSize;
+            for (int i = 0; i < inputSize; ++i) {
+                input[row + i] = image[i] & 0xff;
+            }
+        }
+    }
+
+    /**
+     * 载入 batch 中 [from, from + count) 的样本。
+     */
+    public void loadBatch(Batch batch, int from, int count) {
+        ensureCapacity(count);
+        float[] input = activations[0];
+        int base = from * layerUnitNums[0];
+        for (int k = 0; k < count * layerUnitNums[0]; ++k) {
+            input[k] = (float) batch.inputs[base + k];
+        }
+        System.arraycopy(batch.labels, from, labels, 0, count);
+    }
+}
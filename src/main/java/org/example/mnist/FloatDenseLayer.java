@@ -0,0 +1,156 @@
+package org.example.mnist;
+
+/**
+ * float 存储的全连接层, 布局与 {@link DenseLayer} 相同: 行主序的权重矩阵之后是偏置。
+ * 一个 batch 内的梯度在与参数同样布局的 float[] 中累加, 每批结束时由 {@link #addTo} 加到 double 的
+ * {@link Gradient} 中, 逐样本累加时读写的字节数只有 double 的一半。
+ */
+public final class FloatDenseLayer implements LayerShape {
+
+    private static final VectorOps OPS = Kernels.vectorOps();
+
+    private final int inputSize;
+    private final int outputSize;
+    private final float[] parameters;
+    private final Activation activation;
+
+    public FloatDenseLayer(int inputSize, int outputSize, Activation activation) {
+        if (inputSize <= 0 || outputSize <= 0) {
+            throw new IllegalArgumentException("layer size must be positive: " + inputSize + "x" + outputSize);
+        }
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.parameters = new float[outputSize * inputSize + outputSize];
+        this.activation = activation;
+    }
+
+    @Override
+    public int inputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int outputSize() {
+        return outputSize;
+    }
+
+    public Activation activation() {
+        return activation;
+    }
+
+    public int weightCount() {
+        return outputSize * inputSize;
+    }
+
+    @Override
+    public int parameterCount() {
+        return parameters.length;
+    }
+
+    public float[] parameters() {
+        return parameters;
+    }
+
+    /**
+     * 从 double 层拷贝参数, 两者形状必须相同。
+     */
+    void copyFrom(DenseLayer source) {
+        double[] values = source.parameters();
+        for (int k = 0; k < parameters.length; ++k) {
+            parameters[k] = (float) values[k];
+        }
+    }
+
+    void copyTo(DenseLayer target) {
+        double[] values = target.parameters();
+        for (int k = 0; k < parameters.length; ++k) {
+            values[k] = parameters[k];
+        }
+    }
+
+    /**
+     * output[j] = sum_i W[j][i] * input[i] + b[j]
+     */
+    public void multiply(float[] input, float[] output) {
+        int biasOffset = weightCount();
+        for (int j = 0, row = 0; j < outputSize; ++j, row += inputSize) {
+            output[j] = parameters[biasOffset + j] + OPS.dot(parameters, row, input, 0, inputSize);
+        }
+    }
+
+    /**
+     * output[i] = sum_j W[j][i] * delta[j]
+     */
+    public void multiplyTransposed(float[] delta, float[] output) {
+        for (int i = 0; i < inputSize; ++i) {
+            output[i] = 0;
+        }
+        for (int j = 0, row = 0; j < outputSize; ++j, row += inputSize) {
+            float d = delta[j];
+            if (d == 0) {
+                continue;
+            }
+            OPS.axpy(d, parameters, row, output, 0, inputSize);
+        }
+    }
+
+    /**
+     * gradient[j][i] += delta[j] * input[i], gradient 的偏置部分 += delta[j]。gradient 与 {@link #parameters()}
+     * 布局相同。
+     */
+    public void accumulateOuterProduct(float[] delta, float[] input, float[] gradient) {
+        int biasOffset = weightCount();
+        for (int j = 0, row = 0; j < outputSize; ++j, row += inputSize) {
+            float d = delta[j];
+            gradient[biasOffset + j] += d;
+            if (d == 0) {
+                continue;
+            }
+            OPS.axpy(d, input, 0, gradient, row, inputSize);
+        }
+    }
+
+    /**
+     * 批量前向传播: output = f(X * W^T + b), 见 {@link DenseLayer#forward}。
+     */
+    public void forward(MatrixKernel kernel, float[] input, float[] output, int count) {
+        kernel.gemm(false, true, count, outputSize, inputSize,
+                1, input, inputSize, parameters, inputSize, 0, output, outputSize);
+        int biasOffset = weightCount();
+        for (int s = 0, row = 0; s < count; ++s, row += outputSize) {
+            OPS.axpy(1, parameters, biasOffset, output, row, outputSize);
+            activation.apply(output, row, outputSize);
+        }
+    }
+
+    public void multiplyDerivative(float[] output, float[] delta, int count) {
+        activation.multiplyDerivative(output, delta, 0, count * outputSize);
+    }
+
+    /**
+     * G_W += E^T * X, G_b += E 按列求和, inputDelta 不为 null 时 inputDelta = E * W。
+     */
+    public void backward(MatrixKernel kernel, float[] input, float[] delta, float[] inputDelta,
+                         float[] gradient, int count) {
+        kernel.gemm(true, false, outputSize, inputSize, count,
+                1, delta, outputSize, input, inputSize, 1, gradient, inputSize);
+        int biasOffset = weightCount();
+        for (int s = 0, row = 0; s < count; ++s, row += outputSize) {
+            OPS.axpy(1, delta, row, gradient, biasOffset, outputSize);
+        }
+        if (inputDelta != null) {
+            kernel.gemm(false, false, count, inputSize, outputSize,
+                    1, delta, outputSize, parameters, inputSize, 0, inputDelta, inputSize);
+        }
+    }
+
+    /**
+     * target += gradient, 然后把 gradient 清零, 供下一批继续累加。
+     */
+    static void addTo(float[] gradient, double[] target) {
+        for (int k = 0; k < gradient.length; ++k) {
+            target[k] += gradient[k];
+            gradient[k] = 0;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.mnist;
+
+import java.util.Arrays;
+
+/**
+ * 单精度版本的 {@link Network}: 权重、激活值和错误率都是 float。
+ * <p>
+ * 一个 batch 内的梯度先在 workspace 中以 float 累加: 逐样本计算时由 {@link #flushGradient} 在每批结束时
+ * 一次性加到 double 的 {@link Gradient}, 批量计算时每次调用结束前加过去。跨段、跨线程的求和和优化器状态
+ * 仍是 double, 更新时再舍入回 float。检查点等通过 {@link #toNetwork()} 转成 double 网络。
+ */
+public final class FloatNetwork {
+
+    private final int[] layerUnitNums;
+    private final FloatDenseLayer[] layers;
+
+    /**
+     * 以 source 的参数为初值。
+     */
+    public FloatNetwork(Network source) {
+        this.layerUnitNums = source.layerUnitNums();
+        this.layers = new FloatDenseLayer[layerUnitNums.length - 1];
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l] = new FloatDenseLayer(layerUnitNums[l], layerUnitNums[l + 1], source.layer(l).activation());
+            layers[l].copyFrom(source.layer(l));
+        }
+    }
+
+    public int[] layerUnitNums() {
+        return layerUnitNums.clone();
+    }
+
+    public int layerCount() {
+        return layers.length;
+    }
+
+    public FloatDenseLayer layer(int index) {
+        return layers[index];
+    }
+
+    public int inputSize() {
+        return layerUnitNums[0];
+    }
+
+    public int outputSize() {
+        return layerUnitNums[layerUnitNums.length - 1];
+    }
+
+    /**
+     * 把 source 的参数拷贝到本网络, 两者结构必须相同。
+     */
+    public void copyParametersFrom(Network source) {
+        if (!Arrays.equals(layerUnitNums, source.layerUnitNums()) || !Arrays.equals(activations(), source.activations())) {
+            throw new IllegalArgumentException("topology mismatch: " + Arrays.toString(layerUnitNums)
+                    + Arrays.toString(activations()) + " vs " + Arrays.toString(source.layerUnitNums())
+                    + Arrays.toString(source.activations()));
+        }
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l].copyFrom(source.layer(l));
+        }
+    }
+
+    public Activation[] activations() {
+        Activation[] activations = new Activation[layers.length];
+        for (int l = 0; l < layers.length; ++l) {
+            activations[l] = layers[l].activation();
+        }
+        return activations;
+    }
+
+    /**
+     * 把参数扩展成 double, 返回一个新的 {@link Network}。
+     */
+    public Network toNetwork() {
+        Network network = new Network(layerUnitNums, activations());
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l].copyTo(network.layer(l));
+        }
+        return network;
+    }
+
+    public FloatWorkspace newWorkspace() {
+        return new FloatWorkspace(layerUnitNums);
+    }
+
+    public Gradient newGradient() {
+        return new Gradient(layers);
+    }
+
+    public FloatBatchWorkspace newBatchWorkspace(MatrixKernel kernel, int capacity) {
+        return new FloatBatchWorkspace(layerUnitNums, kernel, capacity);
+    }
+
+    public float[] feedForward(FloatWorkspace workspace) {
+        float[][] activations = workspace.activations;
+        for (int l = 0; l < layers.length; ++l) {
+            float[] layerActivation = activations[l + 1];
+            layers[l].multiply(activations[l], layerActivation);
+            layers[l].activation().apply(layerActivation, 0, layerActivation.length);
+        }
+        return workspace.output();
+    }
+
+    public int classify(byte[] sample, FloatWorkspace workspace) {
+        workspace.loadInput(sample);
+        float[] output = feedForward(workspace);
+        int maxIndex = -1;
+        float maxValue = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < output.length; ++i) {
+            if (output[i] > maxValue) {
+                maxIndex = i;
+                maxValue = output[i];
+            }
+        }
+        return maxIndex;
+    }
+
+    public float[] feedForward(Batch batch, int index, FloatWorkspace workspace) {
+        workspace.loadInput(batch.inputs, index * batch.imageSize());
+        return feedForward(workspace);
+    }
+
+    /**
+     * 计算 batch 中第 index 个样本的梯度, 以 float 累加到 workspace 中, 见 {@link #flushGradient}。
+     *
+     * @return 该样本的 E
+     */
+    public double backPropagate(Batch batch, int index, FloatWorkspace workspace) {
+        feedForward(batch, index, workspace);
+        return backward(batch.labels[index], workspace);
+    }
+
+    /**
+     * 见 {@link Network#backward(int, Workspace, Gradient)}, 梯度累加到 workspace 中。
+     */
+    public double backward(int label, FloatWorkspace workspace) {
+        float[][] activations = workspace.activations;
+        float[][] errorRates = workspace.errorRates;
+
+        // 计算输出层错误率
+        int outputLayer = layerUnitNums.length - 1;
+        float[] outputActivation = activations[outputLayer];
+        double loss = layers[outputLayer - 1].activation().outputError(outputActivation, errorRates[outputLayer],
+                0, outputActivation.length, label);
+
+        // 计算隐藏层错误率, 误差经由下一层的权重传回
+        for (int layerIndex = outputLayer - 1; layerIndex >= 1; --layerIndex) {
+            float[] layerErrorRate = errorRates[layerIndex];
+            layers[layerIndex].multiplyTransposed(errorRates[layerIndex + 1], layerErrorRate);
+            layers[layerIndex - 1].activation().multiplyDerivative(activations[layerIndex], layerErrorRate,
+                    0, layerErrorRate.length);
+        }
+
+        // 累加变化的权
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l].accumulateOuterProduct(errorRates[l + 1], activations[l], workspace.gradients[l]);
+        }
+        return loss;
+    }
+
+    /**
+     * 把 workspace 中累加的 float 梯度加到 gradient, 并清零 workspace 中的累加值。每个 batch 结束时调用一次。
+     */
+    public void flushGradient(FloatWorkspace workspace, Gradient gradient) {
+        for (int l = 0; l < layers.length; ++l) {
+            FloatDenseLayer.addTo(workspace.gradients[l], gradient.values[l]);
+        }
+    }
+
+    /**
+     * 见 {@link Network#feedForward(BatchWorkspace, int)}。
+     */
+    public float[] feedForward(FloatBatchWorkspace workspace, int count) {
+        float[][] activations = workspace.activations;
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l].forward(workspace.kernel, activations[l], activations[l + 1], count);
+        }
+        return workspace.outputs();
+    }
+
+    /**
+     * 见 {@link Network#backPropagate(BatchWorkspace, int, Gradient)}。
+     */
+    public double backPropagate(FloatBatchWorkspace workspace, int count, Gradient gradient) {
+        feedForward(workspace, count);
+        return backward(workspace, count, gradient);
+    }
+
+    /**
+     * 见 {@link Network#backward(BatchWorkspace, int, Gradient)}。这一批的梯度由矩阵乘法以 float 算出,
+     * 最后一次性加到 gradient。
+     */
+    public double backward(FloatBatchWorkspace workspace, int count, Gradient gradient) {
+        float[][] activations = workspace.activations;
+        float[][] errorRates = workspace.errorRates;
+
+        // 计算输出层错误率
+        int outputLayer = layerUnitNums.length - 1;
+        int outputSize = layerUnitNums[outputLayer];
+        float[] outputActivation = activations[outputLayer];
+        float[] outputErrorRate = errorRates[outputLayer];
+        Activation outputActivationFunction = layers[outputLayer - 1].activation();
+        double loss = 0;
+        for (int s = 0, row = 0; s < count; ++s, row += outputSize) {
+            loss += outputActivationFunction.outputError(outputActivation, outputErrorRate, row, outputSize,
+                    workspace.labels[s]);
+        }
+
+        // 从输出层往回: 累加本层的梯度, 并把误差经由本层权重传回上一层
+        for (int l = layers.length - 1; l >= 0; --l) {
+            float[] inputErrorRate = l > 0 ? errorRates[l] : null;
+            layers[l].backward(workspace.kernel, activations[l], errorRates[l + 1], inputErrorRate,
+                    workspace.gradients[l], count);
+            if (l > 0) {
+                layers[l - 1].multiplyDerivative(activations[l], inputErrorRate, count);
+            }
+        }
+        for (int l = 0; l < layers.length; ++l) {
+            FloatDenseLayer.addTo(workspace.gradients[l], gradient.values[l]);
+        }
+        return loss;
+    }
+
+    public int parameterCount() {
+        int count = 0;
+        for (FloatDenseLayer layer : layers) {
+            count += layer.parameterCount();
+        }
+        return count;
+    }
+
+    /**
+     * 见 {@link Network#applyGradient(Gradient, double)}。
+     */
+    public void applyGradient(Gradient gradient, double scale) {
+        for (int l = 0; l < layers.length; ++l) {
+            float[] parameters = layers[l].parameters();
+            double[] values = gradient.values[l];
+            for (int k = 0; k < parameters.length; ++k) {
+                parameters[k] += (float) (scale * values[k]);
+            }
+        }
+    }
+
+    /**
+     * 见 {@link Network#applyGradient(Gradient, double, Optimizer)}。
+     */
+    public void applyGradient(Gradient gradient, double scale, Optimizer optimizer) {
+        optimizer.beginStep(parameterCount());
+        int offset = 0;
+        for (int l = 0; l < layers.length; ++l) {
+            optimizer.update(layers[l].parameters(), gradient.values[l], scale, offset);
+            offset += layers[l].parameterCount();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.mnist;
+
+/**
+ * {@link FloatNetwork} 使用的单线程缓冲区, 对应 {@link Workspace}。
+ * gradients[l] 是第 l 层在当前 batch 内以 float 累加的梯度, 见 {@link FloatNetwork#flushGradient}。
+ */
+public final class FloatWorkspace {
+
+    final float[][] activations;
+    final float[][] errorRates;
+    final float[][] gradients;
+
+    FloatWorkspace(int[] layerUnitNums) {
+        activations = new float[layerUnitNums.length][];
+        errorRates = new float[layerUnitNums.length][];
+        gradients = new float[layerUnitNums.length - 1][];
+        for (int i = 0; i < layerUnitNums.length; ++i) {
+            activations[i] = new float[layerUnitNums[i]];
+            errorRates[i] = new float[layerUnitNums[i]];
+        }
+        for (int l = 0; l < gradients.length; ++l) {
+            gradients[l] = new float[(layerUnitNums[l] + 1) * layerUnitNums[l + 1]];
+        }
+    }
+
+    public float[] output() {
+        return activations[activations.length - 1];
+    }
+
+    void loadInput(double[] source, int offset) {
+        float[] input = activations[0];
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = (float) source[offset + i];
+        }
+    }
+
+    void loadInput(byte[] sample) {
+        float[] input = activations[0];
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = sample[i] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.mnist;
+
+import java.util.Arrays;
+
+/**
+ * 一个 mini-batch 的梯度累加器, 每层一个与该层参数布局相同的 double[]。
+ */
+public final class Gradient {
+
+    final double[][] values;
+
+    Gradient(LayerShape[] layers) {
+        values = new double[layers.length][];
+        for (int i = 0; i < layers.length; ++i) {
+            values[i] = new double[layers[i].parameterCount()];
+        }
+    }
+
+    public double[] layer(int layerIndex) {
+        return values[layerIndex];
+    }
+
+    public void clear() {
+        for (double[] layerValues : values) {
+            Arrays.fill(layerValues, 0);
+        }
+    }
+
+    /**
+     * 所有层梯度的 L2 范数。
+     */
+    public double norm() {
+        double sum = 0;
+        for (double[] layerValues : values) {
+            for (double value : layerValues) {
+                sum += value * value;
+            }
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * this += other
+     */
+    public void add(Gradient other) {
+        for (int l = 0; l < values.length; ++l) {
+            double[] target = values[l];
+            double[] source = other.values[l];
+            for (int k = 0; k < target.length; ++k) {
+                target[k] += source[k];
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.mnist;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 读取 IDX 文件, 可以是 gzip 压缩的 (http://yann.lecun.com/exdb/mnist/)。
+ */
+public final class IdxFiles {
+
+    public static final int IMAGE_MAGIC = 0x00000803;
+    public static final int LABEL_MAGIC = 0x00000801;
+
+    private IdxFiles() {
+    }
+
+    /**
+     * 打开 classpath 中的 .gz 资源, 返回的流已经解压。
+     */
+    public static DataInputStream openResource(String resourceName) throws IOException {
+        InputStream in = IdxFiles.class.getClassLoader().getResourceAsStream(resourceName);
+        if (in == null) {
+            throw new FileNotFoundException("resource not found: " + resourceName);
+        }
+        return wrap(in, resourceName);
+    }
+
+    /**
+     * location 是已存在的文件路径时打开该文件, 否则当作 classpath 资源。以 .gz 结尾的按 gzip 解压。
+     */
+    public static DataInputStream open(String location) throws IOException {
+        Path path = Paths.get(location);
+        if (Files.isRegularFile(path)) {
+            return wrap(Files.newInputStream(path), location);
+        }
+        InputStream in = IdxFiles.class.getClassLoader().getResourceAsStream(location);
+        if (in == null) {
+            throw new FileNotFoundException("neither a file nor a resource: " + location);
+        }
+        return wrap(in, location);
+    }
+
+    private static DataInputStream wrap(InputStream in, String name) throws IOException {
+        if (name.endsWith(".gz")) {
+            return new DataInputStream(new GZIPInputStream(in, 64 * 1024));
+        }
+        return new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    /**
+     * 读取图像文件头, 返回 {样本数, 行数, 列数}。
+     */
+    public static int[] readImageHeader(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != IMAGE_MAGIC) {
+            throw new IOException("not an IDX image file, magic: " + Integer.toHexString(magic));
+        }
+        return new int[]{in.readInt(), in.readInt(), in.readInt()};
+    }
+
+    /**
+     * 读取标签文件头, 返回样本数。
+     */
+    public static int readLabelHeader(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != LABEL_MAGIC) {
+            throw new IOException("not an IDX label file, magic: " + Integer.toHexString(magic));
+        }
+        return in.readInt();
+    }
+}
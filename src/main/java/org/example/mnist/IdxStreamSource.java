@@ -0,0 +1,156 @@
+package org.example.mnist;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * 顺序流式读取 IDX 图像/标签文件, 内存中只保留一个有上限的乱序缓冲区, 适合放不进堆的大数据集。
+ * <p>
+ * 乱序方式: 缓冲区先装满 bufferSamples 个样本, 每输出一个样本时从缓冲区随机取一个, 再从流中读一个补位。
+ * 打乱程度取决于缓冲区大小, 缓冲区不小于数据集时等价于完全打乱。random 为 null 时按文件顺序输出。
+ */
+public final class IdxStreamSource implements DataSource {
+
+    private final String imageLocation;
+    private final String labelLocation;
+    private final Random random;
+
+    private int imageSize;
+    private int remainingInStream;
+    private DataInputStream imageIn;
+    private DataInputStream labelIn;
+
+    private final byte[] buffer;
+    private final int[] bufferLabels;
+    private int buffered;
+
+    /**
+     * @param imageLocation    IDX 图像文件, 见 {@link IdxFiles#open(String)}
+     * @param labelLocation    IDX 标签文件
+     * @param maxBufferedBytes 乱序缓冲区占用内存的上限
+     * @param random           为 null 时不打乱
+     */
+    public IdxStreamSource(String imageLocation, String labelLocation, long maxBufferedBytes, Random random) throws IOException {
+        this.imageLocation = imageLocation;
+        this.labelLocation = labelLocation;
+        this.random = random;
+        open();
+        try {
+            long bufferSamples = Math.max(1, Math.min(Integer.MAX_VALUE / imageSize, maxBufferedBytes / imageSize));
+            int capacity = (int) Math.min(bufferSamples, Math.max(remainingInStream, 1));
+            this.buffer = new byte[capacity * imageSize];
+            this.bufferLabels = new int[capacity];
+            fillBuffer();
+        } catch (IOException | RuntimeException e) {
+            // 构造失败时调用方拿不到对象, 只能在这里关闭已经打开的流
+            closeQuietly(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public int imageSize() {
+        return imageSize;
+    }
+
+    @Override
+    public boolean next(Batch batch) throws IOException {
+        batch.clear();
+        while (batch.size() < batch.capacity() && buffered > 0) {
+            int slot = random == null ? 0 : random.nextInt(buffered);
+            batch.add(buffer, slot * imageSize, bufferLabels[slot]);
+            if (random == null) {
+                // 按顺序输出时缓冲区只有一个样本
+                buffered = 0;
+                fillBuffer();
+            } else if (!readRecord(slot)) {
+                // 流已读完, 用最后一个样本补位
+                --buffered;
+                System.arraycopy(buffer, buffered * imageSize, buffer, slot * imageSize, imageSize);
+                bufferLabels[slot] = bufferLabels[buffered];
+            }
+        }
+        return batch.size() > 0;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        close();
+        open();
+        buffered = 0;
+        fillBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (imageIn != null) {
+                imageIn.close();
+            }
+        } finally {
+            if (labelIn != null) {
+                labelIn.close();
+            }
+            imageIn = null;
+            labelIn = null;
+        }
+    }
+
+    private void open() throws IOException {
+        try {
+            imageIn = IdxFiles.open(imageLocation);
+            labelIn = IdxFiles.open(labelLocation);
+            int[] header = IdxFiles.readImageHeader(imageIn);
+            int labelCount = IdxFiles.readLabelHeader(labelIn);
+            if (labelCount != header[0]) {
+                throw new IOException("image count " + header[0] + " does not match label count " + labelCount);
+            }
+            int size = header[1] * header[2];
+            if (imageSize != 0 && size != imageSize) {
+                throw new IOException("image size changed from " + imageSize + " to " + size);
+            }
+            imageSize = size;
+            remainingInStream = header[0];
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 出错后关闭两个流, 关闭时的异常附加到 failure 上。
+     */
+    private void closeQuietly(Throwable failure) {
+        try {
+            close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void fillBuffer() throws IOException {
+        int capacity = random == null ? 1 : bufferLabels.length;
+        while (buffered < capacity && readRecord(buffered)) {
+            ++buffered;
+        }
+    }
+
+    /**
+     * 从流中读一个样本到缓冲区的 slot 位置, 流已读完时返回 false。
+     */
+    private boolean readRecord(int slot) throws IOException {
+        if (remainingInStream == 0) {
+            return false;
+        }
+        try {
+            imageIn.readFully(buffer, slot * imageSize, imageSize);
+            bufferLabels[slot] = labelIn.readUnsignedByte();
+        } catch (EOFException e) {
+            throw new IOException("IDX file shorter than its header says: " + imageLocation, e);
+        }
+        --remainingInStream;
+        return true;
+    }
+}
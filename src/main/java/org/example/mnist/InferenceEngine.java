@@ -0,0 +1,278 @@
+package org.example.mnist;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 批量推理。图像按 chunkSize 个一组拼成矩阵做批量前向传播, 各组在 ForkJoinPool 上并行计算。
+ * <p>
+ * 模型是不可变的 {@link ModelSnapshot}, 每个线程复用自己的 {@link BatchWorkspace},
+ * 所以同一个 engine 可以被多个线程同时调用。
+ * <p>
+ * 精度为 {@link Precision#FLOAT} 时, 构造时把模型转成一份只读的 {@link FloatNetwork},
+ * 前向传播的权重和激活值都是 float, 线程各自复用 {@link FloatBatchWorkspace}。
+ */
+public final class InferenceEngine {
+
+    private final ModelSnapshot model;
+    /**
+     * 精度为 DOUBLE 时为 null。
+     */
+    private final FloatNetwork floatModel;
+    private final ForkJoinPool pool;
+    private final MatrixKernel kernel;
+    private final int chunkSize;
+    private final ThreadLocal<BatchWorkspace> workspaces = new ThreadLocal<BatchWorkspace>() {
+        @Override
+        protected BatchWorkspace initialValue() {
+            return model.newBatchWorkspace(kernel, chunkSize);
+        }
+    };
+    private final ThreadLocal<FloatBatchWorkspace> floatWorkspaces = new ThreadLocal<FloatBatchWorkspace>() {
+        @Override
+        protected FloatBatchWorkspace initialValue() {
+            return floatModel.newBatchWorkspace(kernel, chunkSize);
+        }
+    };
+
+    public InferenceEngine(ModelSnapshot model, ForkJoinPool pool, MatrixKernel kernel, int chunkSize) {
+        this(model, pool, kernel, chunkSize, Precision.DOUBLE);
+    }
+
+    public InferenceEngine(ModelSnapshot model, ForkJoinPool pool, MatrixKernel kernel, int chunkSize,
+                           Precision precision) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.model = model;
+        this.floatModel = precision == Precision.FLOAT ? new FloatNetwork(model.network()) : null;
+        this.pool = pool;
+        this.kernel = kernel;
+        this.chunkSize = chunkSize;
+    }
+
+    public InferenceEngine(ModelSnapshot model) {
+        this(model, ForkJoinPool.commonPool(), Kernels.matrixKernel(), 64);
+    }
+
+    public ModelSnapshot model() {
+        return model;
+    }
+
+    /**
+     * images 中连续存放 count 个图像, 每个 inputSize 个无符号字节。
+     */
+    public int[] classify(byte[] images, int count) {
+        int[] results = new int[count];
+        run(new ByteArrayInput(images), count, results, null, 0);
+        return results;
+    }
+
+    /**
+     * 从 images 当前 position 开始读取 count 个图像, 不改变 position。
+     */
+    public int[] classify(ByteBuffer images, int count) {
+        int[] results = new int[count];
+        run(new ByteBufferInput(images), count, results, null, 0);
+        return results;
+    }
+
+    public int[] classify(Dataset dataset) {
+        int[] results = new int[dataset.size()];
+        run(new DatasetInput(dataset), dataset.size(), results, null, 0);
+        return results;
+    }
+
+    public Prediction[] predict(byte[] images, int count, int k) {
+        Prediction[] predictions = new Prediction[count];
+        run(new ByteArrayInput(images), count, null, predictions, checkK(k));
+        return predictions;
+    }
+
+    public Prediction[] predict(ByteBuffer images, int count, int k) {
+        Prediction[] predictions = new Prediction[count];
+        run(new ByteBufferInput(images), count, null, predictions, checkK(k));
+        return predictions;
+    }
+
+    /**
+     * dataset 上的准确率, 空数据集返回 0。
+     */
+    public double accuracy(Dataset dataset) {
+        int[] results = classify(dataset);
+        int correct = 0;
+        for (int i = 0; i < results.length; ++i) {
+            if (results[i] == dataset.label(i)) {
+                ++correct;
+            }
+        }
+        return results.length == 0 ? 0 : 1.0 * correct / results.length;
+    }
+
+    private int checkK(int k) {
+        if (k <= 0 || k > model.outputSize()) {
+            throw new IllegalArgumentException("k must be in [1, " + model.outputSize() + "]: " + k);
+        }
+        return k;
+    }
+
+    private void run(Input input, int count, int[] results, Prediction[] predictions, int k) {
+        if (count == 0) {
+            return;
+        }
+        int chunks = (count + chunkSize - 1) / chunkSize;
+        ChunkTask task = new ChunkTask(input, count, results, predictions, k, 0, chunks);
+        if (chunks == 1) {
+            // 只有一组时直接在调用线程上计算
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    private void computeChunk(Input input, int from, int count, int[] results, Prediction[] predictions, int k) {
+        if (floatModel != null) {
+            computeFloatChunk(input, from, count, results, predictions, k);
+            return;
+        }
+        BatchWorkspace workspace = workspaces.get();
+        input.load(workspace, from, count);
+        double[] outputs = model.feedForward(workspace, count);
+        int outputSize = model.outputSize();
+        for (int s = 0; s < count; ++s) {
+            int row = s * outputSize;
+            if (results != null) {
+                int best = 0;
+                for (int i = 1; i < outputSize; ++i) {
+                    if (outputs[row + i] > outputs[row + best]) {
+                        best = i;
+                    }
+                }
+                results[from + s] = best;
+            } else {
+                predictions[from + s] = Prediction.topK(outputs, row, outputSize, k, model.outputActivation());
+            }
+        }
+    }
+
+    private void computeFloatChunk(Input input, int from, int count, int[] results, Prediction[] predictions, int k) {
+        FloatBatchWorkspace workspace = floatWorkspaces.get();
+        input.load(workspace, from, count);
+        float[] outputs = floatModel.feedForward(workspace, count);
+        int outputSize = model.outputSize();
+        double[] scores = results != null ? null : new double[outputSize];
+        for (int s = 0; s < count; ++s) {
+            int row = s * outputSize;
+            if (results != null) {
+                int best = 0;
+                for (int i = 1; i < outputSize; ++i) {
+                    if (outputs[row + i] > outputs[row + best]) {
+                        best = i;
+                    }
+                }
+                results[from + s] = best;
+            } else {
+                for (int i = 0; i < outputSize; ++i) {
+                    scores[i] = outputs[row + i];
+                }
+                predictions[from + s] = Prediction.topK(scores, 0, outputSize, k, model.outputActivation());
+            }
+        }
+    }
+
+    private final class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Input input;
+        private final int count;
+        private final int[] results;
+        private final Prediction[] predictions;
+        private final int k;
+        private final int fromChunk;
+        private final int toChunk;
+
+        ChunkTask(Input input, int count, int[] results, Prediction[] predictions, int k, int fromChunk, int toChunk) {
+            this.input = input;
+            this.count = count;
+            this.results = results;
+            this.predictions = predictions;
+            this.k = k;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk == 1) {
+                int from = fromChunk * chunkSize;
+                computeChunk(input, from, Math.min(chunkSize, count - from), results, predictions, k);
+                return;
+            }
+            int middle = (fromChunk + toChunk) >>> 1;
+            invokeAll(new ChunkTask(input, count, results, predictions, k, fromChunk, middle),
+                    new ChunkTask(input, count, results, predictions, k, middle, toChunk));
+        }
+    }
+
+    private interface Input {
+        void load(BatchWorkspace workspace, int from, int count);
+
+        void load(FloatBatchWorkspace workspace, int from, int count);
+    }
+
+    private static final class ByteArrayInput implements Input {
+        private final byte[] images;
+
+        ByteArrayInput(byte[] images) {
+            this.images = images;
+        }
+
+        @Override
+        public void load(BatchWorkspace workspace, int from, int count) {
+            workspace.loadImages(images, from, count);
+        }
+
+        @Override
+        public void load(FloatBatchWorkspace workspace, int from, int count) {
+            workspace.loadImages(images, from, count);
+        }
+    }
+
+    private static final class ByteBufferInput implements Input {
+        private final ByteBuffer images;
+
+        ByteBufferInput(ByteBuffer images) {
+            this.images = images;
+        }
+
+        @Override
+        public void load(BatchWorkspace workspace, int from, int count) {
+            workspace.loadImages(images, from, count);
+        }
+
+        @Override
+        public void load(FloatBatchWorkspace workspace, int from, int count) {
+            workspace.loadImages(images, from, count);
+        }
+    }
+
+    private static final class DatasetInput implements Input {
+        private final Dataset dataset;
+
+        DatasetInput(Dataset dataset) {
+            this.dataset = dataset;
+        }
+
+        @Override
+        public void load(BatchWorkspace workspace, int from, int count) {
+            workspace.loadImages(dataset, from, count);
+        }
+
+        @Override
+        public void load(FloatBatchWorkspace workspace, int from, int count) {
+            workspace.loadImages(dataset, from, count);
+        }
+    }
+}
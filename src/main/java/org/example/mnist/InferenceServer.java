@@ -0,0 +1,356 @@
+package org.example.mnist;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 JDK 自带 com.sun.net.httpserver 的推理服务。
+ * <ul>
+ * <li>POST /predict?k=3: 请求体是若干个连续的 inputSize 字节原始图像, 或 IDX3 格式 (magic 0x00000803) 的图像文件,
+ * 返回 JSON {@code {"predictions":[{"label":7,"classes":[7,9,4],"probabilities":[0.93,0.04,0.01]}]}}。
+ * 并发请求经 {@link MicroBatcher} 合并成批。队列满时返回 503。</li>
+ * <li>POST /train?label=3: 仅在线学习模式, 请求体格式同 /predict, 所有图像使用同一个标签, 交给
+ * {@link OnlineLearner} 异步训练, 返回 202; 新模型发布后 /predict 自动使用。</li>
+ * <li>GET /metrics: 纯文本, 每行一个指标, 包括启动以来的 p50/p99 延迟和当前队列深度。</li>
+ * </ul>
+ * 请求体最多 queueCapacity * maxBatchSize 个图像 (加上 IDX 头), 即队列能容纳的上限, 超过时返回 413。
+ * <p>
+ * 请求在虚拟线程上处理 (JDK 21+, 通过反射获取); 更早的 JDK 上退回固定大小的线程池。
+ */
+public final class InferenceServer implements AutoCloseable {
+
+    private static final int IDX3_MAGIC = 0x00000803;
+
+    private final MicroBatcher batcher;
+    private final OnlineLearner learner;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int maxBatchSize;
+    private final long maxBodyBytes;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder images = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public InferenceServer(ModelSnapshot model, InetSocketAddress address, long latencyBudget, TimeUnit unit,
+                           int maxBatchSize, int queueCapacity) throws IOException {
+        this(new MicroBatcher(model, Kernels.matrixKernel(), latencyBudget, unit, maxBatchSize, queueCapacity),
+                null, address, maxBatchSize, queueCapacity);
+    }
+
+    /**
+     * 在线学习模式: 推理使用 learner 最新发布的模型, 并开放 /train。关闭服务时一并关闭 learner。
+     */
+    public InferenceServer(OnlineLearner learner, InetSocketAddress address, long latencyBudget, TimeUnit unit,
+                           int maxBatchSize, int queueCapacity) throws IOException {
+        this(new MicroBatcher(learner::model, Kernels.matrixKernel(), latencyBudget, unit, maxBatchSize, queueCapacity),
+                learner, address, maxBatchSize, queueCapacity);
+    }
+
+    private InferenceServer(MicroBatcher batcher, OnlineLearner learner, InetSocketAddress address,
+                            int maxBatchSize, int queueCapacity) throws IOException {
+        this.maxBatchSize = maxBatchSize;
+        this.maxBodyBytes = Math.min(Integer.MAX_VALUE - 8,
+                16 + (long) queueCapacity * maxBatchSize * batcher.inputSize());
+        this.batcher = batcher;
+        this.learner = learner;
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/predict", this::handlePredict);
+        if (learner != null) {
+            server.createContext("/train", this::handleTrain);
+        }
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(executor);
+    }
+
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // 处理线程会阻塞等待批处理结果, 线程数决定了能同时合并的请求数
+            return Executors.newFixedThreadPool(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "use POST\n");
+                return;
+            }
+            requests.increment();
+            int k = parseInt(exchange.getRequestURI().getRawQuery(), "k", 1);
+            byte[] body = readBody(exchange);
+            if (body == null) {
+                rejected.increment();
+                send(exchange, 413, "text/plain", "request body exceeds " + maxBodyBytes + " bytes\n");
+                return;
+            }
+            int inputSize = batcher.inputSize();
+            int offset = imageOffset(body);
+            if (offset < 0) {
+                send(exchange, 400, "text/plain", "body must be " + inputSize + "-byte images or an IDX3 file\n");
+                return;
+            }
+            int count = (body.length - offset) / inputSize;
+            if (k <= 0 || k > batcher.outputSize()) {
+                send(exchange, 400, "text/plain", "k must be in [1, " + batcher.outputSize() + "]\n");
+                return;
+            }
+            // 超过一批的请求拆开提交, 各部分可能与其他请求合并
+            List<CompletableFuture<Prediction[]>> parts = new ArrayList<>();
+            try {
+                for (int from = 0; from < count; from += maxBatchSize) {
+                    int n = Math.min(maxBatchSize, count - from);
+                    parts.add(batcher.submit(body, offset + from * inputSize, n, k));
+                }
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                send(exchange, 503, "text/plain", "server busy\n");
+                return;
+            }
+            StringBuilder json = new StringBuilder("{\"predictions\":[");
+            boolean first = true;
+            for (CompletableFuture<Prediction[]> part : parts) {
+                for (Prediction prediction : part.get()) {
+                    if (!first) {
+                        json.append(',');
+                    }
+                    first = false;
+                    appendJson(json, prediction);
+                }
+            }
+            json.append("]}\n");
+            images.add(count);
+            send(exchange, 200, "application/json", json.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.increment();
+            send(exchange, 500, "text/plain", "interrupted\n");
+        } catch (ExecutionException | RuntimeException e) {
+            failed.increment();
+            send(exchange, 500, "text/plain", "inference failed: " + e + "\n");
+        } finally {
+            latency.record(System.nanoTime() - start);
+            exchange.close();
+        }
+    }
+
+    private void handleTrain(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "use POST\n");
+                return;
+            }
+            int label = parseInt(exchange.getRequestURI().getRawQuery(), "label", -1);
+            byte[] body = readBody(exchange);
+            if (body == null) {
+                send(exchange, 413, "text/plain", "request body exceeds " + maxBodyBytes + " bytes\n");
+                return;
+            }
+            int offset = imageOffset(body);
+            if (offset < 0 || label < 0 || label >= batcher.outputSize()) {
+                send(exchange, 400, "text/plain", "need label in [0, " + batcher.outputSize() + ") and "
+                        + batcher.inputSize() + "-byte images or an IDX3 file\n");
+                return;
+            }
+            int accepted = 0;
+            for (; offset < body.length; offset += batcher.inputSize()) {
+                if (learner.offer(body, offset, label)) {
+                    ++accepted;
+                }
+            }
+            send(exchange, accepted > 0 ? 202 : 503, "text/plain", "accepted " + accepted + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 请求体中第一个图像的偏移: 原始图像为 0, IDX3 为 16; 格式不对时返回 -1。
+     */
+    private int imageOffset(byte[] body) {
+        int inputSize = batcher.inputSize();
+        if (body.length >= 16 && ByteBuffer.wrap(body).getInt(0) == IDX3_MAGIC) {
+            ByteBuffer header = ByteBuffer.wrap(body);
+            int count = header.getInt(4);
+            if (count <= 0 || header.getInt(8) * header.getInt(12) != inputSize
+                    || body.length != 16 + (long) count * inputSize) {
+                return -1;
+            }
+            return 16;
+        }
+        return body.length > 0 && body.length % inputSize == 0 ? 0 : -1;
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            long[] counts = latency.counts();
+            long batches = batcher.batches();
+            StringBuilder text = new StringBuilder();
+            text.append("requests_total ").append(requests.sum()).append('\n');
+            text.append("images_total ").append(images.sum()).append('\n');
+            text.append("rejected_total ").append(rejected.sum()).append('\n');
+            text.append("failed_total ").append(failed.sum()).append('\n');
+            text.append("batches_total ").append(batches).append('\n');
+            text.append(String.format(Locale.ROOT, "mean_batch_size %.2f%n",
+                    batches == 0 ? 0.0 : (double) batcher.batchedImages() / batches));
+            text.append(String.format(Locale.ROOT, "latency_p50_ms %.3f%n", LatencyHistogram.percentileMillis(counts, 0.5)));
+            text.append(String.format(Locale.ROOT, "latency_p99_ms %.3f%n", LatencyHistogram.percentileMillis(counts, 0.99)));
+            text.append("queue_depth ").append(batcher.queueDepth()).append('\n');
+            text.append("queued_images ").append(batcher.queuedImages()).append('\n');
+            if (learner != null) {
+                text.append("online_samples_total ").append(learner.samples()).append('\n');
+                text.append("online_rejected_total ").append(learner.rejected()).append('\n');
+                text.append("online_failed_total ").append(learner.failures()).append('\n');
+                text.append("online_steps_total ").append(learner.steps()).append('\n');
+                text.append("online_queue_depth ").append(learner.queueDepth()).append('\n');
+                text.append("model_version ").append(learner.version()).append('\n');
+            }
+            send(exchange, 200, "text/plain", text.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 查询串中的整数参数 name, 没有时返回 defaultValue, 不是整数时返回 -1。
+     */
+    private static int parseInt(String query, String name, int defaultValue) {
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                try {
+                    return Integer.parseInt(parameter.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private static void appendJson(StringBuilder json, Prediction prediction) {
+        json.append("{\"label\":").append(prediction.label()).append(",\"classes\":[");
+        for (int rank = 0; rank < prediction.size(); ++rank) {
+            json.append(rank > 0 ? "," : "").append(prediction.classAt(rank));
+        }
+        json.append("],\"probabilities\":[");
+        for (int rank = 0; rank < prediction.size(); ++rank) {
+            json.append(rank > 0 ? "," : "").append(String.format(Locale.ROOT, "%.6f", prediction.probabilityAt(rank)));
+        }
+        json.append("]}");
+    }
+
+    /**
+     * 读取整个请求体; 超过 maxBodyBytes 时返回 null。Content-Length 已经超限时不读取,
+     * 没有 Content-Length (分块传输) 时读到超限为止。
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > maxBodyBytes) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            if (out.size() + n > maxBodyBytes) {
+                return null;
+            }
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * 停止接收新连接, 等待正在处理的请求最多 1 秒。
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        batcher.close();
+        if (learner != null) {
+            learner.close();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * InferenceServer checkpoint [port] [latencyBudgetMillis] [maxBatchSize] [onlineLearningRate]
+     * <p>
+     * onlineLearningRate 大于 0 时开启在线学习, 每 10 个样本一批, 每 10 步发布一次模型。
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: InferenceServer checkpoint [port] [latencyBudgetMillis] [maxBatchSize]"
+                    + " [onlineLearningRate]");
+            System.exit(2);
+        }
+        ModelSnapshot model = Checkpoint.load(Paths.get(args[0])).model();
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        long latencyBudget = args.length > 2 ? Long.parseLong(args[2]) : 2;
+        int maxBatchSize = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        double onlineLearningRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        InferenceServer server;
+        if (onlineLearningRate > 0) {
+            OnlineLearner learner = new OnlineLearner(model, new SgdOptimizer(onlineLearningRate),
+                    Kernels.matrixKernel(), 10, 10, 10_000);
+            server = new InferenceServer(learner, new InetSocketAddress(port),
+                    latencyBudget, TimeUnit.MILLISECONDS, maxBatchSize, 1024);
+        } else {
+            server = new InferenceServer(model, new InetSocketAddress(port),
+                    latencyBudget, TimeUnit.MILLISECONDS, maxBatchSize, 1024);
+        }
+        server.start();
+        System.out.println("serving on " + server.address());
+    }
+}
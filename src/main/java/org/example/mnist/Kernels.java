@@ -0,0 +1,51 @@
+package org.example.mnist;
+
+/**
+ * 启动时选择一次内核实现。
+ * <p>
+ * 如果 classpath 中有用 -Pvector 编译出的 {@code org.example.mnist.SimdKernel}, 且 JVM 以
+ * {@code --add-modules jdk.incubator.vector} 启动, 就使用它; 否则退回到标量实现。
+ * 设置 {@code -Dmnist.kernel=scalar} 可以强制使用标量实现。
+ */
+public final class Kernels {
+
+    private static final String SIMD_KERNEL_CLASS = "org.example.mnist.SimdKernel";
+
+    private static final VectorOps VECTOR_OPS;
+    private static final MatrixKernel MATRIX_KERNEL;
+
+    static {
+        Object simd = "scalar".equals(System.getProperty("mnist.kernel")) ? null : loadSimdKernel();
+        if (simd != null) {
+            VECTOR_OPS = (VectorOps) simd;
+            MATRIX_KERNEL = (MatrixKernel) simd;
+        } else {
+            VECTOR_OPS = new ScalarVectorOps();
+            MATRIX_KERNEL = new BlockedKernel();
+        }
+    }
+
+    private Kernels() {
+    }
+
+    public static VectorOps vectorOps() {
+        return VECTOR_OPS;
+    }
+
+    public static MatrixKernel matrixKernel() {
+        return MATRIX_KERNEL;
+    }
+
+    public static boolean isSimd() {
+        return VECTOR_OPS.getClass().getName().equals(SIMD_KERNEL_CLASS);
+    }
+
+    private static Object loadSimdKernel() {
+        try {
+            return Class.forName(SIMD_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // 没有编译 SIMD 实现, 或者当前 JVM 不支持 jdk.incubator.vector
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.mnist;
+
+import java.util.Random;
+
+/**
+ * 批量计算的层, 用于 {@link ConvNetwork}。
+ * <p>
+ * 输入和输出都是 count x size 的行主序矩阵, 第 s 行是第 s 个样本展平后的值; 卷积类的层按
+ * (行, 列, 通道) 的顺序展平, 即通道在最内层。参数与梯度的布局由各层自己决定, 两者相同。
+ * 层本身不保存中间结果, 前向传播需要留给反向传播的数据放在调用方提供的 scratch 中,
+ * 每个样本 {@link #scratchSize()} 个元素。
+ */
+public interface Layer extends LayerShape {
+
+    /**
+     * 直接暴露底层存储, 没有参数的层返回空数组。
+     */
+    double[] parameters();
+
+    void initGaussian(Random random);
+
+    /**
+     * 每个样本需要的临时空间。
+     */
+    int scratchSize();
+
+    /**
+     * output = f(layer(input)), 包括激活函数。
+     */
+    void forward(MatrixKernel kernel, double[] input, double[] output, double[] scratch, int count);
+
+    /**
+     * delta *= f'(output), delta 原本是 -dE/d(output), 之后是 -dE/d(激活前的值)。没有激活函数的层什么都不做。
+     */
+    void multiplyDerivative(double[] output, double[] delta, int count);
+
+    /**
+     * 用已乘过导数的 delta 把本层参数的梯度累加到 gradient, 并在 inputDelta 不为 null 时
+     * 写入 -dE/d(input)。scratch 必须是同一批样本 {@link #forward} 之后的内容, 调用之后其内容不再有效。
+     */
+    void backward(MatrixKernel kernel, double[] input, double[] output, double[] delta, double[] inputDelta,
+                  double[] gradient, double[] scratch, int count);
+}
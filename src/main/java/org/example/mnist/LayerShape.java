@@ -0,0 +1,14 @@
+package org.example.mnist;
+
+/**
+ * 层的形状: 每个样本的输入、输出大小和参数个数, 与参数的存储精度无关。
+ * {@link Layer} 和 {@link FloatDenseLayer} 都实现它, {@link Gradient} 按它为每层分配累加器。
+ */
+public interface LayerShape {
+
+    int inputSize();
+
+    int outputSize();
+
+    int parameterCount();
+}
@@ -0,0 +1,49 @@
+package org.example.mnist;
+
+/**
+ * 学习率随更新步数的变化, step 从 0 开始, 每个 mini-batch 加 1。
+ */
+public interface LearningRateSchedule {
+
+    double rate(long step);
+
+    static LearningRateSchedule constant(final double rate) {
+        return new LearningRateSchedule() {
+            @Override
+            public double rate(long step) {
+                return rate;
+            }
+        };
+    }
+
+    /**
+     * 每 stepSize 步乘一次 factor: initialRate * factor^(step / stepSize)。
+     */
+    static LearningRateSchedule step(final double initialRate, final double factor, final long stepSize) {
+        if (stepSize <= 0) {
+            throw new IllegalArgumentException("stepSize must be positive: " + stepSize);
+        }
+        return new LearningRateSchedule() {
+            @Override
+            public double rate(long step) {
+                return initialRate * Math.pow(factor, step / stepSize);
+            }
+        };
+    }
+
+    /**
+     * 余弦退火: 在 totalSteps 步内从 initialRate 平滑降到 minimumRate, 之后保持 minimumRate。
+     */
+    static LearningRateSchedule cosine(final double initialRate, final double minimumRate, final long totalSteps) {
+        if (totalSteps <= 0) {
+            throw new IllegalArgumentException("totalSteps must be positive: " + totalSteps);
+        }
+        return new LearningRateSchedule() {
+            @Override
+            public double rate(long step) {
+                double progress = Math.min(step, totalSteps) / (double) totalSteps;
+                return minimumRate + 0.5 * (initialRate - minimumRate) * (1 + Math.cos(Math.PI * progress));
+            }
+        };
+    }
+}
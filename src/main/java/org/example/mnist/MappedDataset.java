@@ -0,0 +1,126 @@
+package org.example.mnist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 以内存映射方式打开的 {@link DatasetCache} 缓存文件。
+ * 图像留在堆外的只读映射中 (同一主机上的多个进程共享 page cache), 标签读成 byte[]。
+ * 单个映射不超过 2GB, 对 MNIST 规模的数据足够。
+ */
+public final class MappedDataset implements Dataset {
+
+    private final ByteBuffer images;
+    private final byte[] labels;
+    private final int imageSize;
+    private final int rows;
+    private final int columns;
+
+    private MappedDataset(ByteBuffer images, byte[] labels, int rows, int columns) {
+        this.images = images;
+        this.labels = labels;
+        this.rows = rows;
+        this.columns = columns;
+        this.imageSize = rows * columns;
+    }
+
+    public static MappedDataset open(Path cacheFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            if (channel.size() < DatasetCache.HEADER_SIZE) {
+                throw new IOException("not a dataset cache file: " + cacheFile);
+            }
+            ByteBuffer header = ByteBuffer.allocate(DatasetCache.HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != DatasetCache.MAGIC) {
+                throw new IOException("not a dataset cache file: " + cacheFile);
+            }
+            int version = header.getInt();
+            if (version != DatasetCache.VERSION) {
+                throw new IOException("unsupported dataset cache version " + version + ": " + cacheFile);
+            }
+            int count = header.getInt();
+            int rows = header.getInt();
+            int columns = header.getInt();
+            long imageOffset = header.getInt();
+            long imageBytes = (long) count * rows * columns;
+            if (imageOffset + imageBytes > channel.size()) {
+                throw new IOException("truncated dataset cache file: " + cacheFile);
+            }
+
+            byte[] labels = new byte[count];
+            readFully(channel, ByteBuffer.wrap(labels), DatasetCache.HEADER_SIZE);
+
+            MappedByteBuffer images = channel.map(FileChannel.MapMode.READ_ONLY, imageOffset, imageBytes);
+            return new MappedDataset(images.asReadOnlyBuffer(), labels, rows, columns);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of dataset cache file");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public int size() {
+        return labels.length;
+    }
+
+    @Override
+    public int imageSize() {
+        return imageSize;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public int label(int index) {
+        return labels[index];
+    }
+
+    /**
+     * 标签数组本身, 调用方不应修改。
+     */
+    public byte[] labels() {
+        return labels;
+    }
+
+    @Override
+    public void copyImage(int index, double[] target, int offset) {
+        int base = index * imageSize;
+        for (int i = 0; i < imageSize; ++i) {
+            target[offset + i] = images.get(base + i) & 0xff;
+        }
+    }
+
+    @Override
+    public void copyImage(int index, byte[] target, int offset) {
+        ByteBuffer view = images.duplicate();
+        view.position(index * imageSize);
+        view.get(target, offset, imageSize);
+    }
+
+    /**
+     * 第 index 个图像的只读视图, 不复制数据。
+     */
+    public ByteBuffer image(int index) {
+        ByteBuffer view = images.duplicate();
+        view.position(index * imageSize).limit((index + 1) * imageSize);
+        return view.slice();
+    }
+}
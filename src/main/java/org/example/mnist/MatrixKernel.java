@@ -0,0 +1,22 @@
+package org.example.mnist;
+
+/**
+ * 行主序矩阵乘法内核, 语义同 BLAS dgemm:
+ * C = alpha * op(A) * op(B) + beta * C, 其中 op(A) 为 m x k, op(B) 为 k x n, C 为 m x n。
+ * <p>
+ * transposeA 为 true 时 A 按 k x m 存放 (op(A) = A 的转置), B 同理。
+ * lda/ldb/ldc 为各矩阵按存放形状的行跨度。实现必须是线程安全的。
+ */
+public interface MatrixKernel {
+
+    void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+              double alpha, double[] a, int lda, double[] b, int ldb,
+              double beta, double[] c, int ldc);
+
+    /**
+     * float 版本, 供 {@link Precision#FLOAT} 使用, 乘积在 float 中累加。
+     */
+    void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+              float alpha, float[] a, int lda, float[] b, int ldb,
+              float beta, float[] c, int ldc);
+}
@@ -0,0 +1,126 @@
+package org.example.mnist;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 不重叠的 size x size 最大池化, 步长等于 size, 除不尽的边缘行列被丢弃。没有参数和激活函数。
+ * 输入输出的布局同 {@link ConvolutionLayer}, 通道在最内层。
+ */
+public final class MaxPoolingLayer implements Layer {
+
+    private final int height;
+    private final int width;
+    private final int channels;
+    private final int size;
+    private final int outputHeight;
+    private final int outputWidth;
+
+    public MaxPoolingLayer(int height, int width, int channels, int size) {
+        if (size <= 0 || size > height || size > width || channels <= 0) {
+            throw new IllegalArgumentException("invalid pooling: " + height + "x" + width + "x" + channels
+                    + " by " + size);
+        }
+        this.height = height;
+        this.width = width;
+        this.channels = channels;
+        this.size = size;
+        this.outputHeight = height / size;
+        this.outputWidth = width / size;
+    }
+
+    public int outputHeight() {
+        return outputHeight;
+    }
+
+    public int outputWidth() {
+        return outputWidth;
+    }
+
+    @Override
+    public int inputSize() {
+        return height * width * channels;
+    }
+
+    @Override
+    public int outputSize() {
+        return outputHeight * outputWidth * channels;
+    }
+
+    @Override
+    public int parameterCount() {
+        return 0;
+    }
+
+    @Override
+    public double[] parameters() {
+        return new double[0];
+    }
+
+    @Override
+    public void initGaussian(Random random) {
+    }
+
+    @Override
+    public int scratchSize() {
+        return 0;
+    }
+
+    @Override
+    public void forward(MatrixKernel kernel, double[] input, double[] output, double[] scratch, int count) {
+        int out = 0;
+        for (int s = 0; s < count; ++s) {
+            int image = s * inputSize();
+            for (int y = 0; y < outputHeight; ++y) {
+                for (int x = 0; x < outputWidth; ++x) {
+                    for (int c = 0; c < channels; ++c) {
+                        output[out++] = input[argMax(input, image, y, x, c)];
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void multiplyDerivative(double[] output, double[] delta, int count) {
+    }
+
+    /**
+     * 每个窗口的误差只传给窗口中取到最大值的那个输入 (有多个时取第一个)。
+     */
+    @Override
+    public void backward(MatrixKernel kernel, double[] input, double[] output, double[] delta, double[] inputDelta,
+                         double[] gradient, double[] scratch, int count) {
+        if (inputDelta == null) {
+            return;
+        }
+        Arrays.fill(inputDelta, 0, count * inputSize(), 0);
+        int out = 0;
+        for (int s = 0; s < count; ++s) {
+            int image = s * inputSize();
+            for (int y = 0; y < outputHeight; ++y) {
+                for (int x = 0; x < outputWidth; ++x) {
+                    for (int c = 0; c < channels; ++c) {
+                        inputDelta[argMax(input, image, y, x, c)] += delta[out++];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 第 (y, x) 个窗口中通道 c 的最大值在 input 中的下标。
+     */
+    private int argMax(double[] input, int image, int y, int x, int c) {
+        int best = image + ((y * size) * width + x * size) * channels + c;
+        for (int dy = 0; dy < size; ++dy) {
+            for (int dx = 0; dx < size; ++dx) {
+                int index = image + ((y * size + dy) * width + x * size + dx) * channels + c;
+                if (input[index] > input[best]) {
+                    best = index;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.mnist;
+
+import java.io.PrintStream;
+
+/**
+ * 接收 {@link MetricsReporter} 每个周期的指标。
+ */
+public interface MetricsExporter {
+
+    void export(MetricsSnapshot window);
+
+    /**
+     * 每个周期打印一行。
+     */
+    static MetricsExporter log(final PrintStream out) {
+        return new MetricsExporter() {
+            @Override
+            public void export(MetricsSnapshot window) {
+                out.println("metrics " + window);
+            }
+        };
+    }
+
+    /**
+     * 每个周期提交一个 JFR 事件 {@code org.example.mnist.TrainingWindow}, 用 -XX:StartFlightRecording 录制。
+     * {@code org.example.mnist.JfrMetricsExporter} 由 JDK 11+ 构建时的 jfr profile 编译; 用 JDK 8 构建或运行时没有它,
+     * 此时在 System.err 上说明原因, 返回什么都不做的导出器。
+     */
+    static MetricsExporter jfr() {
+        try {
+            return (MetricsExporter) Class.forName("org.example.mnist.JfrMetricsExporter")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("JFR metrics disabled: JfrMetricsExporter is unavailable (" + e + ")");
+            return new MetricsExporter() {
+                @Override
+                public void export(MetricsSnapshot window) {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.mnist;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在训练线程上按固定周期把 {@link TrainingMetrics} 的增量交给各个 {@link MetricsExporter}。
+ * 不启动额外线程, 由训练循环在每个 batch 之后调用 {@link #tick()}。
+ */
+public final class MetricsReporter {
+
+    private final TrainingMetrics metrics;
+    private final long intervalNanos;
+    private final List<MetricsExporter> exporters;
+    private MetricsSnapshot last;
+    private long lastExportNanos;
+
+    public MetricsReporter(TrainingMetrics metrics, long interval, TimeUnit unit, MetricsExporter... exporters) {
+        this.metrics = metrics;
+        this.intervalNanos = unit.toNanos(interval);
+        this.exporters = Arrays.asList(exporters.clone());
+        this.last = metrics.snapshot();
+        this.lastExportNanos = System.nanoTime();
+    }
+
+    /**
+     * 距上一次导出超过一个周期时导出一次。
+     */
+    public void tick() {
+        if (System.nanoTime() - lastExportNanos >= intervalNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * 立即导出上一次导出之后的指标。
+     */
+    public void flush() {
+        MetricsSnapshot current = metrics.snapshot();
+        MetricsSnapshot window = current.minus(last);
+        last = current;
+        lastExportNanos = System.nanoTime();
+        for (MetricsExporter exporter : exporters) {
+            exporter.export(window);
+        }
+    }
+}
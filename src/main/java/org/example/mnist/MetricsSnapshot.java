@@ -0,0 +1,99 @@
+package org.example.mnist;
+
+import java.util.Locale;
+
+/**
+ * {@link TrainingMetrics} 在某一时刻的值, 或者用 {@link #minus} 得到的两个时刻之间的差。
+ */
+public final class MetricsSnapshot {
+
+    private final long timeNanos;
+    private final long[] phaseNanos;
+    private final long steps;
+    private final long samples;
+    private final double loss;
+    private final double gradientNorm;
+    private final long allocatedBytes;
+
+    MetricsSnapshot(long timeNanos, long[] phaseNanos, long steps, long samples, double loss,
+                    double gradientNorm, long allocatedBytes) {
+        this.timeNanos = timeNanos;
+        this.phaseNanos = phaseNanos;
+        this.steps = steps;
+        this.samples = samples;
+        this.loss = loss;
+        this.gradientNorm = gradientNorm;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * this - earlier, 时间为两次快照之间的墙钟时间。
+     */
+    public MetricsSnapshot minus(MetricsSnapshot earlier) {
+        long[] nanos = new long[phaseNanos.length];
+        for (int p = 0; p < nanos.length; ++p) {
+            nanos[p] = phaseNanos[p] - earlier.phaseNanos[p];
+        }
+        return new MetricsSnapshot(timeNanos - earlier.timeNanos, nanos, steps - earlier.steps,
+                samples - earlier.samples, loss - earlier.loss, gradientNorm - earlier.gradientNorm,
+                allocatedBytes - earlier.allocatedBytes);
+    }
+
+    /**
+     * 对 {@link #minus} 的结果是这段时间的长度, 对 {@link TrainingMetrics#snapshot()} 的结果是取快照时
+     * System.nanoTime() 的读数。
+     */
+    public long elapsedNanos() {
+        return timeNanos;
+    }
+
+    public long phaseNanos(TrainingMetrics.Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long steps() {
+        return steps;
+    }
+
+    public long samples() {
+        return samples;
+    }
+
+    public double samplesPerSecond() {
+        return timeNanos == 0 ? 0 : samples * 1e9 / timeNanos;
+    }
+
+    /**
+     * 每个样本的平均损失。
+     */
+    public double meanLoss() {
+        return samples == 0 ? 0 : loss / samples;
+    }
+
+    /**
+     * 每次更新的平均梯度范数。
+     */
+    public double meanGradientNorm() {
+        return steps == 0 ? 0 : gradientNorm / steps;
+    }
+
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long allocatedBytesPerStep() {
+        return steps == 0 ? 0 : allocatedBytes / steps;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "steps=%d samples/s=%.1f loss=%.5f |g|=%.5f alloc/step=%dB",
+                steps, samplesPerSecond(), meanLoss(), meanGradientNorm(), allocatedBytesPerStep()));
+        for (TrainingMetrics.Phase phase : TrainingMetrics.Phase.values()) {
+            builder.append(String.format(Locale.ROOT, " %s=%.1fms",
+                    phase.name().toLowerCase(Locale.ROOT), phaseNanos(phase) / 1e6));
+        }
+        return builder.toString();
+    }
+}
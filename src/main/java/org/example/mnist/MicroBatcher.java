@@ -0,0 +1,263 @@
+package org.example.mnist;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 把并发到达的推理请求合并成一批做批量前向传播。
+ * <p>
+ * 一个后台线程从队列取出第一个请求后, 在 latencyBudget 内继续收集请求, 直到凑满 maxBatchSize 个图像
+ * 或时间用完, 然后用 {@link InferenceEngine} 一次算完整批。每批开始前从 models 取当前模型,
+ * 配合 {@link OnlineLearner#model()} 可以在不停服务的情况下换上新发布的模型。单个请求最多因此多等 latencyBudget,
+ * 换来的是矩阵乘法按批执行的吞吐量。队列满时 {@link #submit} 直接拒绝, 而不是让延迟无限增长。
+ */
+public final class MicroBatcher implements Closeable {
+
+    private static final Request SHUTDOWN = new Request(null, 0, 0);
+
+    private final Supplier<ModelSnapshot> models;
+    private final MatrixKernel kernel;
+    private final int inputSize;
+    private final int outputSize;
+    private final long latencyBudgetNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Request> queue;
+    private final AtomicInteger queuedImages = new AtomicInteger();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedImages = new LongAdder();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+    private byte[] images;
+    private InferenceEngine engine;
+
+    public MicroBatcher(ModelSnapshot model, MatrixKernel kernel, long latencyBudget, TimeUnit unit,
+                        int maxBatchSize, int queueCapacity) {
+        this(() -> model, kernel, latencyBudget, unit, maxBatchSize, queueCapacity);
+    }
+
+    /**
+     * models 返回的模型可以随时变化, 但输入输出大小必须不变。
+     */
+    public MicroBatcher(Supplier<ModelSnapshot> models, MatrixKernel kernel, long latencyBudget, TimeUnit unit,
+                        int maxBatchSize, int queueCapacity) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        ModelSnapshot model = models.get();
+        this.models = models;
+        this.kernel = kernel;
+        this.engine = newEngine(model, maxBatchSize);
+        this.inputSize = model.inputSize();
+        this.outputSize = model.outputSize();
+        this.latencyBudgetNanos = unit.toNanos(latencyBudget);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.images = new byte[maxBatchSize * inputSize];
+        this.dispatcher = new Thread(this::dispatch, "micro-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    private InferenceEngine newEngine(ModelSnapshot model, int maxBatchSize) {
+        // 每批只有一组, 前向传播直接在调度线程上执行
+        return new InferenceEngine(model, null, kernel, maxBatchSize);
+    }
+
+    public int inputSize() {
+        return inputSize;
+    }
+
+    public int outputSize() {
+        return outputSize;
+    }
+
+    /**
+     * 提交 images[offset, offset + count * inputSize) 中的 count 个图像, 每个返回前 k 个候选。
+     * count 不超过 maxBatchSize。
+     *
+     * @throws RejectedExecutionException 队列已满或已关闭
+     */
+    public CompletableFuture<Prediction[]> submit(byte[] images, int offset, int count, int k) {
+        if (count <= 0 || count > maxBatchSize) {
+            throw new IllegalArgumentException("count must be in [1, " + maxBatchSize + "]: " + count);
+        }
+        if (k <= 0 || k > outputSize()) {
+            throw new IllegalArgumentException("k must be in [1, " + outputSize() + "]: " + k);
+        }
+        byte[] copy = new byte[count * inputSize];
+        System.arraycopy(images, offset, copy, 0, copy.length);
+        Request request = new Request(copy, count, k);
+        if (closed) {
+            throw new RejectedExecutionException("micro-batcher is closed");
+        }
+        queuedImages.addAndGet(count);
+        if (!queue.offer(request)) {
+            queuedImages.addAndGet(-count);
+            throw new RejectedExecutionException("inference queue is full");
+        }
+        // 入队前 close() 可能已经让调度线程退出。能从队列中删掉说明没有人会处理它, 由这里拒绝;
+        // 删不掉说明调度线程已经取走, 它总会完成这个 future
+        if (closed && queue.remove(request)) {
+            queuedImages.addAndGet(-count);
+            throw new RejectedExecutionException("micro-batcher is closed");
+        }
+        return request.future;
+    }
+
+    /**
+     * 排队等待中的请求数。
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 排队等待中的图像数。
+     */
+    public int queuedImages() {
+        return queuedImages.get();
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long batchedImages() {
+        return batchedImages.sum();
+    }
+
+    private void dispatch() {
+        List<Request> pending = new ArrayList<>();
+        Request carried = null;
+        while (true) {
+            Request first;
+            try {
+                first = carried != null ? carried : queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            carried = null;
+            if (first == SHUTDOWN) {
+                break;
+            }
+            pending.add(first);
+            int count = first.count;
+            long deadline = System.nanoTime() + latencyBudgetNanos;
+            try {
+                while (count < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == SHUTDOWN || count + next.count > maxBatchSize) {
+                        // 放不下的请求留给下一批打头
+                        carried = next;
+                        break;
+                    }
+                    pending.add(next);
+                    count += next.count;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            run(pending, count);
+            pending.clear();
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        failPending(carried);
+    }
+
+    private void run(List<Request> pending, int count) {
+        queuedImages.addAndGet(-count);
+        int maxK = 1;
+        int position = 0;
+        for (Request request : pending) {
+            System.arraycopy(request.images, 0, images, position, request.images.length);
+            position += request.images.length;
+            maxK = Math.max(maxK, request.k);
+        }
+        Prediction[] predictions;
+        try {
+            ModelSnapshot model = models.get();
+            if (model != engine.model()) {
+                if (model.inputSize() != inputSize || model.outputSize() != outputSize) {
+                    throw new IllegalStateException("published model has a different input or output size");
+                }
+                engine = newEngine(model, maxBatchSize);
+            }
+            predictions = engine.predict(images, count, maxK);
+        } catch (RuntimeException | Error e) {
+            for (Request request : pending) {
+                request.future.completeExceptionally(e);
+            }
+            return;
+        }
+        batches.increment();
+        batchedImages.add(count);
+        int from = 0;
+        for (Request request : pending) {
+            Prediction[] result = new Prediction[request.count];
+            for (int i = 0; i < request.count; ++i) {
+                result[i] = predictions[from + i].truncate(request.k);
+            }
+            from += request.count;
+            request.future.complete(result);
+        }
+    }
+
+    private void failPending(Request carried) {
+        RejectedExecutionException closedException = new RejectedExecutionException("micro-batcher is closed");
+        if (carried != null && carried != SHUTDOWN) {
+            queuedImages.addAndGet(-carried.count);
+            carried.future.completeExceptionally(closedException);
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            if (request != SHUTDOWN) {
+                queuedImages.addAndGet(-request.count);
+                request.future.completeExceptionally(closedException);
+            }
+        }
+    }
+
+    /**
+     * 处理完已经入队的请求后停止调度线程。与 close 并发提交的请求要么被 {@link #submit} 拒绝,
+     * 要么返回的 future 以 RejectedExecutionException 异常完成, 不会一直挂起。
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            queue.put(SHUTDOWN);
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            dispatcher.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Request {
+        final byte[] images;
+        final int count;
+        final int k;
+        final CompletableFuture<Prediction[]> future = new CompletableFuture<>();
+
+        Request(byte[] images, int count, int k) {
+            this.images = images;
+            this.count = count;
+            this.k = k;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.mnist;
+
+/**
+ * 某一时刻网络参数的只读拷贝。创建后不再改变, 可以被任意多个线程同时用于推理,
+ * 训练继续更新原网络也不会影响它。
+ */
+public final class ModelSnapshot {
+
+    private final Network network;
+
+    private ModelSnapshot(Network network) {
+        this.network = network;
+    }
+
+    public static ModelSnapshot of(Network network) {
+        return new ModelSnapshot(network.copy());
+    }
+
+    /**
+     * 直接使用 network, 调用方保证之后不再修改它。
+     */
+    static ModelSnapshot wrap(Network network) {
+        return new ModelSnapshot(network);
+    }
+
+    Network network() {
+        return network;
+    }
+
+    Activation outputActivation() {
+        return network.layer(network.layerCount() - 1).activation();
+    }
+
+    public int[] layerUnitNums() {
+        return network.layerUnitNums();
+    }
+
+    public int inputSize() {
+        return network.inputSize();
+    }
+
+    public int outputSize() {
+        return network.outputSize();
+    }
+
+    /**
+     * 返回一个可以修改的网络拷贝, 例如作为继续训练的起点。
+     */
+    public Network toNetwork() {
+        return network.copy();
+    }
+
+    BatchWorkspace newBatchWorkspace(MatrixKernel kernel, int capacity) {
+        return network.newBatchWorkspace(kernel, capacity);
+    }
+
+    double[] feedForward(BatchWorkspace workspace, int count) {
+        return network.feedForward(workspace, count);
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.mnist;
+
+/**
+ * 动量法: v = momentum * v + g, w += rate * v。
+ * Nesterov 版本用前瞻的速度更新: w += rate * (momentum * v + g)。
+ */
+public final class MomentumOptimizer extends AbstractOptimizer {
+
+    private final double momentum;
+    private final boolean nesterov;
+
+    public MomentumOptimizer(LearningRateSchedule schedule, double momentum, boolean nesterov) {
+        super(nesterov ? "nesterov" : "momentum", schedule, 1);
+        if (momentum < 0 || momentum >= 1) {
+            throw new IllegalArgumentException("momentum must be in [0, 1): " + momentum);
+        }
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+    }
+
+    @Override
+    public void update(double[] parameters, double[] gradient, double scale, int offset) {
+        double[] velocity = state;
+        for (int k = 0; k < parameters.length; ++k) {
+            double g = scale * gradient[k];
+            double v = momentum * velocity[offset + k] + g;
+            velocity[offset + k] = v;
+            parameters[k] += rate * (nesterov ? momentum * v + g : v);
+        }
+    }
+
+    @Override
+    public void update(float[] parameters, double[] gradient, double scale, int offset) {
+        double[] velocity = state;
+        for (int k = 0; k < parameters.length; ++k) {
+            double g = scale * gradient[k];
+            double v = momentum * velocity[offset + k] + g;
+            velocity[offset + k] = v;
+            parameters[k] = (float) (parameters[k] + rate * (nesterov ? momentum * v + g : v));
+        }
+    }
+}
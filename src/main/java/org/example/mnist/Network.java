@@ -0,0 +1,304 @@
+package org.example.mnist;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 全连接网络。layerUnitNums[0] 为输入层大小, layer(k) 连接第 k 层和第 k + 1 层, 激活函数按层指定, 默认为 sigmoid。
+ * <p>
+ * 前向/反向传播只使用调用方传入的 {@link Workspace} 和 {@link Gradient}, 本身不分配内存,
+ * 多个线程可以各自持有 Workspace 同时计算梯度, 但不能与 {@link #applyGradient} 并发。
+ */
+public final class Network {
+
+    private static final VectorOps OPS = Kernels.vectorOps();
+
+    private final int[] layerUnitNums;
+    private final DenseLayer[] layers;
+
+    public Network(int[] layerUnitNums, Random random) {
+        this(layerUnitNums, null, random);
+    }
+
+    /**
+     * @param activations 每层 (不含输入层) 的激活函数, null 表示全部用 sigmoid; SOFTMAX 只能用于最后一层
+     */
+    public Network(int[] layerUnitNums, Activation[] activations, Random random) {
+        this(layerUnitNums, activations);
+        for (DenseLayer layer : layers) {
+            layer.initGaussian(random);
+        }
+    }
+
+    /**
+     * 参数全为 0 的网络, 用于随后载入已有的参数。
+     */
+    Network(int[] layerUnitNums, Activation[] activations) {
+        if (layerUnitNums.length < 2) {
+            throw new IllegalArgumentException("network needs at least an input and an output layer");
+        }
+        if (activations != null && activations.length != layerUnitNums.length - 1) {
+            throw new IllegalArgumentException("expected " + (layerUnitNums.length - 1) + " activations, got "
+                    + activations.length);
+        }
+        this.layerUnitNums = layerUnitNums.clone();
+        this.layers = new DenseLayer[layerUnitNums.length - 1];
+        // input层没有weight
+        for (int layerIndex = 1; layerIndex < layerUnitNums.length; ++layerIndex) {
+            Activation activation = activations == null ? Activation.SIGMOID : activations[layerIndex - 1];
+            if (activation == Activation.SOFTMAX && layerIndex != layerUnitNums.length - 1) {
+                throw new IllegalArgumentException("softmax is only supported in the output layer");
+            }
+            layers[layerIndex - 1] = new DenseLayer(layerUnitNums[layerIndex - 1], layerUnitNums[layerIndex], activation);
+        }
+    }
+
+    private Network(int[] layerUnitNums, DenseLayer[] layers) {
+        this.layerUnitNums = layerUnitNums;
+        this.layers = layers;
+    }
+
+    /**
+     * 深拷贝, 拷贝与原网络不共享任何参数数组。
+     */
+    public Network copy() {
+        DenseLayer[] copiedLayers = new DenseLayer[layers.length];
+        for (int l = 0; l < layers.length; ++l) {
+            copiedLayers[l] = layers[l].copy();
+        }
+        return new Network(layerUnitNums, copiedLayers);
+    }
+
+    /**
+     * 把 source 的参数拷贝到本网络, 两者结构必须相同。
+     */
+    public void copyParametersFrom(Network source) {
+        if (!Arrays.equals(layerUnitNums, source.layerUnitNums) || !Arrays.equals(activations(), source.activations())) {
+            throw new IllegalArgumentException("topology mismatch: " + Arrays.toString(layerUnitNums)
+                    + Arrays.toString(activations()) + " vs " + Arrays.toString(source.layerUnitNums)
+                    + Arrays.toString(source.activations()));
+        }
+        for (int l = 0; l < layers.length; ++l) {
+            double[] target = layers[l].parameters();
+            System.arraycopy(source.layers[l].parameters(), 0, target, 0, target.length);
+        }
+    }
+
+    public int parameterCount() {
+        int count = 0;
+        for (DenseLayer layer : layers) {
+            count += layer.parameterCount();
+        }
+        return count;
+    }
+
+    public int[] layerUnitNums() {
+        return layerUnitNums.clone();
+    }
+
+    /**
+     * 每层的激活函数, 下标与 {@link #layer(int)} 相同。
+     */
+    public Activation[] activations() {
+        Activation[] activations = new Activation[layers.length];
+        for (int l = 0; l < layers.length; ++l) {
+            activations[l] = layers[l].activation();
+        }
+        return activations;
+    }
+
+    public int layerCount() {
+        return layers.length;
+    }
+
+    public DenseLayer layer(int index) {
+        return layers[index];
+    }
+
+    public int inputSize() {
+        return layerUnitNums[0];
+    }
+
+    public int outputSize() {
+        return layerUnitNums[layerUnitNums.length - 1];
+    }
+
+    public Workspace newWorkspace() {
+        return new Workspace(layerUnitNums);
+    }
+
+    public Gradient newGradient() {
+        return new Gradient(layers);
+    }
+
+    public BatchWorkspace newBatchWorkspace(MatrixKernel kernel, int capacity) {
+        return new BatchWorkspace(layerUnitNums, kernel, capacity);
+    }
+
+    /**
+     * 用 workspace.input() 中已填好的输入做前向传播, 返回 workspace 中的输出层激活值。
+     */
+    public double[] feedForward(Workspace workspace) {
+        double[][] activations = workspace.activations;
+        for (int l = 0; l < layers.length; ++l) {
+            double[] layerActivation = activations[l + 1];
+            layers[l].multiply(activations[l], 0, layerActivation, 0);
+            layers[l].activation().apply(layerActivation, 0, layerActivation.length);
+        }
+        return workspace.output();
+    }
+
+    public int classify(byte[] sample, Workspace workspace) {
+        workspace.loadInput(sample);
+        return argMax(feedForward(workspace));
+    }
+
+    public int classify(Dataset dataset, int index, Workspace workspace) {
+        workspace.loadInput(dataset, index);
+        return argMax(feedForward(workspace));
+    }
+
+    /**
+     * 载入 batch 中第 index 个样本并做前向传播。
+     */
+    public double[] feedForward(Batch batch, int index, Workspace workspace) {
+        workspace.loadInput(batch.inputs, index * batch.imageSize());
+        return feedForward(workspace);
+    }
+
+    /**
+     * 计算 batch 中第 index 个样本的梯度并累加到 gradient 中, 累加的是 -dE/dw。
+     * E 为损失: 输出层为 {@link Activation#SOFTMAX} 时是交叉熵, 否则是平方误差的一半。
+     *
+     * @return 该样本的 E
+     */
+    public double backPropagate(Batch batch, int index, Workspace workspace, Gradient gradient) {
+        feedForward(batch, index, workspace);
+        return backward(batch.labels[index], workspace, gradient);
+    }
+
+    /**
+     * 用 workspace.input() 中已填好的输入计算梯度并累加到 gradient 中。
+     */
+    public double backPropagate(int label, Workspace workspace, Gradient gradient) {
+        feedForward(workspace);
+        return backward(label, workspace, gradient);
+    }
+
+    /**
+     * 反向传播部分: 使用 workspace 中上一次 {@link #feedForward(Workspace)} 留下的激活值。
+     *
+     * @return 该样本的 E
+     */
+    public double backward(int label, Workspace workspace, Gradient gradient) {
+        double[][] activations = workspace.activations;
+        double[][] errorRates = workspace.errorRates;
+
+        // 计算输出层错误率
+        int outputLayer = layerUnitNums.length - 1;
+        double[] outputActivation = activations[outputLayer];
+        double loss = layers[outputLayer - 1].activation().outputError(outputActivation, errorRates[outputLayer],
+                0, outputActivation.length, label);
+
+        // 计算隐藏层错误率, 误差经由下一层的权重传回
+        for (int layerIndex = outputLayer - 1; layerIndex >= 1; --layerIndex) {
+            double[] layerErrorRate = errorRates[layerIndex];
+            layers[layerIndex].multiplyTransposed(errorRates[layerIndex + 1], 0, layerErrorRate, 0);
+            layers[layerIndex - 1].activation().multiplyDerivative(activations[layerIndex], layerErrorRate,
+                    0, layerErrorRate.length);
+        }
+
+        // 累加变化的权
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l].accumulateOuterProduct(1, errorRates[l + 1], 0, activations[l], 0, gradient.values[l]);
+        }
+        return loss;
+    }
+
+    /**
+     * 对 workspace.inputs() 中的前 count 个样本做批量前向传播: 每层是一次 X * W^T 的矩阵乘法,
+     * 见 {@link DenseLayer#forward}, 返回 workspace 中 count x outputSize 的输出矩阵。
+     */
+    public double[] feedForward(BatchWorkspace workspace, int count) {
+        double[][] activations = workspace.activations;
+        for (int l = 0; l < layers.length; ++l) {
+            layers[l].forward(workspace.kernel, activations[l], activations[l + 1], null, count);
+        }
+        return workspace.outputs();
+    }
+
+    /**
+     * 批量版本的 {@link #backPropagate(int, Workspace, Gradient)}, 样本须已通过
+     * {@link BatchWorkspace#loadBatch} 载入。
+     *
+     * @return count 个样本的 E 之和
+     */
+    public double backPropagate(BatchWorkspace workspace, int count, Gradient gradient) {
+        feedForward(workspace, count);
+        return backward(workspace, count, gradient);
+    }
+
+    /**
+     * 批量版本的 {@link #backward(int, Workspace, Gradient)}。
+     */
+    public double backward(BatchWorkspace workspace, int count, Gradient gradient) {
+        double[][] activations = workspace.activations;
+        double[][] errorRates = workspace.errorRates;
+
+        // 计算输出层错误率
+        int outputLayer = layerUnitNums.length - 1;
+        int outputSize = layerUnitNums[outputLayer];
+        double[] outputActivation = activations[outputLayer];
+        double[] outputErrorRate = errorRates[outputLayer];
+        Activation outputActivationFunction = layers[outputLayer - 1].activation();
+        double loss = 0;
+        for (int s = 0, row = 0; s < count; ++s, row += outputSize) {
+            loss += outputActivationFunction.outputError(outputActivation, outputErrorRate, row, outputSize,
+                    workspace.labels[s]);
+        }
+
+        // 从输出层往回: 累加本层的梯度, 并把误差经由本层权重传回上一层: E_l = (E_(l+1) * W_(l+1)) .* f'(a)
+        for (int l = layers.length - 1; l >= 0; --l) {
+            double[] inputErrorRate = l > 0 ? errorRates[l] : null;
+            layers[l].backward(workspace.kernel, activations[l], activations[l + 1], errorRates[l + 1],
+                    inputErrorRate, gradient.values[l], null, count);
+            if (l > 0) {
+                layers[l - 1].multiplyDerivative(activations[l], inputErrorRate, count);
+            }
+        }
+        return loss;
+    }
+
+    /**
+     * parameters += scale * gradient, 权重和偏置一起更新。
+     */
+    public void applyGradient(Gradient gradient, double scale) {
+        for (int l = 0; l < layers.length; ++l) {
+            OPS.axpy(scale, gradient.values[l], 0, layers[l].parameters(), 0, layers[l].parameterCount());
+        }
+    }
+
+    /**
+     * 用 optimizer 做一步更新, scale * gradient 为平均梯度。
+     */
+    public void applyGradient(Gradient gradient, double scale, Optimizer optimizer) {
+        optimizer.beginStep(parameterCount());
+        int offset = 0;
+        for (int l = 0; l < layers.length; ++l) {
+            optimizer.update(layers[l].parameters(), gradient.values[l], scale, offset);
+            offset += layers[l].parameterCount();
+        }
+    }
+
+    static int argMax(double[] values) {
+        int maxIndex = -1;
+        double maxValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] > maxValue) {
+                maxIndex = i;
+                maxValue = values[i];
+            }
+        }
+        return maxIndex;
+    }
+}
@@ -0,0 +1,209 @@
+package org.example.mnist;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线学习: 带标签的样本通过队列到达, 后台线程把它们攒成小批量更新一份影子网络,
+ * 每 publishInterval 步把影子网络拷贝成新的 {@link ModelSnapshot} 原子地发布出去。
+ * <p>
+ * 推理方通过 {@link #model()} 读取当前发布的快照, 只是一次 volatile 读, 不会被训练阻塞;
+ * 已经拿到旧快照的调用不受发布影响。影子网络只由后台线程修改。
+ * <p>
+ * 一批训练中途抛出异常时, 影子网络和优化器回滚到这一批之前的状态, 这一批被丢弃并计入 {@link #failures()}。
+ */
+public final class OnlineLearner implements Closeable {
+
+    private static final Sample SHUTDOWN = new Sample(null, -1);
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final Network shadow;
+    /**
+     * 每批更新前影子网络参数的副本, 用于回滚。
+     */
+    private final Network backup;
+    private final Optimizer optimizer;
+    private final BatchWorkspace workspace;
+    private final Gradient gradient;
+    private final Batch batch;
+    private final int publishInterval;
+    private final BlockingQueue<Sample> queue;
+    private final AtomicReference<ModelSnapshot> published;
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Thread worker;
+    private volatile long steps;
+    private volatile long version;
+    private volatile boolean closed;
+
+    public OnlineLearner(ModelSnapshot initial, Optimizer optimizer, MatrixKernel kernel, int miniBatchSize,
+                         int publishInterval, int queueCapacity) {
+        if (publishInterval <= 0) {
+            throw new IllegalArgumentException("publishInterval must be positive: " + publishInterval);
+        }
+        this.shadow = initial.toNetwork();
+        this.backup = shadow.copy();
+        this.optimizer = optimizer;
+        this.workspace = shadow.newBatchWorkspace(kernel, miniBatchSize);
+        this.gradient = shadow.newGradient();
+        this.batch = new Batch(miniBatchSize, shadow.inputSize());
+        this.publishInterval = publishInterval;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.published = new AtomicReference<>(initial);
+        this.worker = new Thread(this::learn, "online-learner");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 当前发布的模型。
+     */
+    public ModelSnapshot model() {
+        return published.get();
+    }
+
+    /**
+     * 已发布的次数, 每次发布加 1。
+     */
+    public long version() {
+        return version;
+    }
+
+    public long steps() {
+        return steps;
+    }
+
+    public long samples() {
+        return samples.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 训练时抛出异常而被丢弃的批次数。
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 提交一个样本, image[offset, offset + inputSize) 为像素。队列满或已关闭时丢弃并返回 false。
+     */
+    public boolean offer(byte[] image, int offset, int label) {
+        if (label < 0 || label >= shadow.outputSize()) {
+            throw new IllegalArgumentException("label must be in [0, " + shadow.outputSize() + "): " + label);
+        }
+        byte[] copy = new byte[shadow.inputSize()];
+        System.arraycopy(image, offset, copy, 0, copy.length);
+        if (closed || !queue.offer(new Sample(copy, label))) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void learn() {
+        List<Sample> pending = new ArrayList<>(batch.capacity());
+        boolean running = true;
+        while (running) {
+            try {
+                pending.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            // 已经在排队的样本一起处理, 不等待凑满一批
+            queue.drainTo(pending, batch.capacity() - 1);
+            batch.clear();
+            for (Sample sample : pending) {
+                if (sample == SHUTDOWN) {
+                    running = false;
+                } else {
+                    batch.add(sample.image, 0, sample.label);
+                }
+            }
+            pending.clear();
+            if (batch.size() > 0) {
+                try {
+                    train();
+                } catch (RuntimeException e) {
+                    // train 已经回滚, 丢弃这一批, 后台线程继续处理后面的样本
+                    failures.increment();
+                }
+            }
+        }
+        if (steps % publishInterval != 0) {
+            publish();
+        }
+    }
+
+    private void train() {
+        gradient.clear();
+        workspace.loadBatch(batch, 0, batch.size());
+        shadow.backPropagate(workspace, batch.size(), gradient);
+        // 反向传播不修改参数, 只有更新可能停在一半
+        backup.copyParametersFrom(shadow);
+        double[] optimizerState = optimizer.state();
+        long optimizerStep = optimizer.step();
+        try {
+            shadow.applyGradient(gradient, 1.0 / batch.size(), optimizer);
+        } catch (RuntimeException e) {
+            shadow.copyParametersFrom(backup);
+            optimizer.restore(optimizerState, optimizerStep, shadow.parameterCount());
+            throw e;
+        }
+        samples.add(batch.size());
+        ++steps;
+        if (steps % publishInterval == 0) {
+            publish();
+        }
+    }
+
+    /**
+     * 写时复制: 拷贝影子网络后整体替换引用。
+     */
+    private void publish() {
+        published.set(ModelSnapshot.of(shadow));
+        ++version;
+    }
+
+    /**
+     * 处理完已经入队的样本, 发布最终的模型后停止后台线程。队列在 {@link #CLOSE_TIMEOUT_SECONDS} 秒内
+     * 一直是满的时不再等待剩余样本, 直接中断后台线程。
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (!queue.offer(SHUTDOWN, CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                worker.interrupt();
+            }
+            worker.join();
+        } catch (InterruptedException e) {
+            worker.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Sample {
+        final byte[] image;
+        final int label;
+
+        Sample(byte[] image, int label) {
+            this.image = image;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.mnist;
+
+/**
+ * 参数更新规则。
+ * <p>
+ * 网络的参数看作一个按层首尾相接的扁平向量, 每次更新先调用一次 {@link #beginStep}, 再对每层调用一次
+ * {@link #update}, offset 为该层在扁平向量中的起始位置, 用于定位优化器自己的状态。
+ * 传入的 gradient 与 {@link Gradient} 一致, 是 -dE/dw 在 batch 上的和, 乘以 scale 后为平均值。
+ * 每个实现在一次遍历中同时更新状态和参数。
+ */
+public interface Optimizer {
+
+    /**
+     * 写入检查点的名字, 载入时只有名字相同才恢复状态。
+     */
+    String name();
+
+    /**
+     * 开始新的一步, 第一次调用时按 parameterCount 分配状态。
+     */
+    void beginStep(int parameterCount);
+
+    void update(double[] parameters, double[] gradient, double scale, int offset);
+
+    /**
+     * 用于 {@link FloatNetwork}, 状态仍是 double。
+     */
+    void update(float[] parameters, double[] gradient, double scale, int offset);
+
+    /**
+     * 已经开始的步数。
+     */
+    long step();
+
+    /**
+     * 状态的拷贝, 没有状态的优化器返回空数组。
+     */
+    double[] state();
+
+    /**
+     * 恢复 {@link #state()} 和 {@link #step()} 保存的状态, parameterCount 为网络的参数个数。
+     * state 的长度与优化器的状态大小不符时抛出 IllegalArgumentException; 步数为 0 时允许空数组,
+     * 即还没有开始训练的优化器的状态。
+     */
+    void restore(double[] state, long step, int parameterCount);
+}
@@ -0,0 +1,277 @@
+package org.example.mnist;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 数据并行的 mini-batch 训练。
+ * <p>
+ * 每个 batch 按样本顺序固定切成 min(chunkCount, batch 大小) 段, 每段由一个任务用自己的
+ * {@link Workspace} 和 {@link Gradient} 计算; 各段的梯度再按固定的二叉树顺序两两相加。切分和相加顺序
+ * 只取决于 chunkCount 和 batch 大小, 与线程数和调度无关, 所以相同的初始权重和数据顺序总能得到相同的结果。
+ * <p>
+ * 不指定 chunkCount 时使用 {@link #DEFAULT_CHUNK_COUNT}, 不随线程池的并行度变化。
+ * 要用满更多的核需要相应增大 chunkCount 和 miniBatchSize。
+ * 指定 {@link MatrixKernel} 时每段用批量矩阵乘法计算, 否则逐个样本计算。
+ * 训练 {@link FloatNetwork} 时每段在自己的 float 缓冲区中算出本段的梯度, 再加到该段的 double {@link Gradient}。
+ * 指定 {@link TrainingMetrics} 时每段的前向/反向耗时分别累加, 每次更新记录一步。分配的字节数在执行每段的
+ * 线程和调用线程上分别统计后相加, 调用线程只统计权重更新, 不会把在它上面执行的分段重复计入。
+ */
+public final class ParallelTrainer {
+
+    /**
+     * 默认的分段数。固定不变, 同样的输入在不同核数的机器上得到相同的结果。
+     */
+    public static final int DEFAULT_CHUNK_COUNT = 8;
+
+    /**
+     * network 和 floatNetwork 只有一个不为 null。
+     */
+    private final Network network;
+    private final FloatNetwork floatNetwork;
+    private final ForkJoinPool pool;
+    private final Workspace[] workspaces;
+    private final BatchWorkspace[] batchWorkspaces;
+    private final FloatWorkspace[] floatWorkspaces;
+    private final FloatBatchWorkspace[] floatBatchWorkspaces;
+    private final Gradient[] gradients;
+    private final double[] losses;
+    private final TrainingMetrics metrics;
+
+    public ParallelTrainer(Network network, ForkJoinPool pool, int chunkCount, MatrixKernel kernel) {
+        this(network, pool, chunkCount, kernel, null);
+    }
+
+    public ParallelTrainer(Network network, ForkJoinPool pool, int chunkCount, MatrixKernel kernel,
+                           TrainingMetrics metrics) {
+        this(network, null, pool, chunkCount, kernel, metrics);
+    }
+
+    public ParallelTrainer(FloatNetwork network, ForkJoinPool pool, int chunkCount, MatrixKernel kernel,
+                           TrainingMetrics metrics) {
+        this(null, network, pool, chunkCount, kernel, metrics);
+    }
+
+    private ParallelTrainer(Network network, FloatNetwork floatNetwork, ForkJoinPool pool, int chunkCount,
+                            MatrixKernel kernel, TrainingMetrics metrics) {
+        if (chunkCount <= 0) {
+            throw new IllegalArgumentException("chunkCount must be positive: " + chunkCount);
+        }
+        this.network = network;
+        this.floatNetwork = floatNetwork;
+        this.pool = pool;
+        this.workspaces = network == null || kernel != null ? null : new Workspace[chunkCount];
+        this.batchWorkspaces = network == null || kernel == null ? null : new BatchWorkspace[chunkCount];
+        this.floatWorkspaces = floatNetwork == null || kernel != null ? null : new FloatWorkspace[chunkCount];
+        this.floatBatchWorkspaces = floatNetwork == null || kernel == null ? null : new FloatBatchWorkspace[chunkCount];
+        this.gradients = new Gradient[chunkCount];
+        this.losses = new double[chunkCount];
+        this.metrics = metrics;
+        for (int c = 0; c < chunkCount; ++c) {
+            if (workspaces != null) {
+                workspaces[c] = network.newWorkspace();
+            } else if (batchWorkspaces != null) {
+                batchWorkspaces[c] = network.newBatchWorkspace(kernel, 0);
+            } else if (floatWorkspaces != null) {
+                floatWorkspaces[c] = floatNetwork.newWorkspace();
+            } else {
+                floatBatchWorkspaces[c] = floatNetwork.newBatchWorkspace(kernel, 0);
+            }
+            gradients[c] = network != null ? network.newGradient() : floatNetwork.newGradient();
+        }
+    }
+
+    public ParallelTrainer(Network network, ForkJoinPool pool, MatrixKernel kernel) {
+        this(network, pool, DEFAULT_CHUNK_COUNT, kernel);
+    }
+
+    public ParallelTrainer(Network network, ForkJoinPool pool, MatrixKernel kernel, TrainingMetrics metrics) {
+        this(network, pool, DEFAULT_CHUNK_COUNT, kernel, metrics);
+    }
+
+    public ParallelTrainer(FloatNetwork network, ForkJoinPool pool, MatrixKernel kernel, TrainingMetrics metrics) {
+        this(network, pool, DEFAULT_CHUNK_COUNT, kernel, metrics);
+    }
+
+    public int chunkCount() {
+        return gradients.length;
+    }
+
+    /**
+     * 用 batch 中的样本计算梯度并更新一次权重: weights += learningRate * 平均梯度。
+     */
+    public void trainBatch(Batch batch, double learningRate) {
+        computeGradient(batch);
+        if (network != null) {
+            network.applyGradient(gradients[0], learningRate / batch.size());
+        } else {
+            floatNetwork.applyGradient(gradients[0], learningRate / batch.size());
+        }
+    }
+
+    /**
+     * 同 {@link #trainBatch(Batch, double)}, 用 optimizer 更新权重。
+     *
+     * @return batch 中各样本的损失之和
+     */
+    public double trainBatch(Batch batch, Optimizer optimizer) {
+        int chunkCount = computeGradient(batch);
+        double loss = 0;
+        for (int c = 0; c < chunkCount; ++c) {
+            loss += losses[c];
+        }
+        double scale = 1.0 / batch.size();
+        if (metrics == null) {
+            applyGradient(scale, optimizer);
+            return loss;
+        }
+        double gradientNorm = gradients[0].norm() * scale;
+        long allocated = metrics.currentThreadAllocatedBytes();
+        long time = System.nanoTime();
+        applyGradient(scale, optimizer);
+        metrics.record(TrainingMetrics.Phase.UPDATE, time);
+        recordAllocation(allocated);
+        metrics.recordStep(batch.size(), loss, gradientNorm);
+        return loss;
+    }
+
+    private void applyGradient(double scale, Optimizer optimizer) {
+        if (network != null) {
+            network.applyGradient(gradients[0], scale, optimizer);
+        } else {
+            floatNetwork.applyGradient(gradients[0], scale, optimizer);
+        }
+    }
+
+    /**
+     * 把当前线程从 allocated 起分配的字节数计入 metrics。
+     */
+    private void recordAllocation(long allocated) {
+        if (allocated >= 0) {
+            metrics.recordAllocation(metrics.currentThreadAllocatedBytes() - allocated);
+        }
+    }
+
+    /**
+     * 把 batch 的梯度累加到 gradients[0], 返回实际使用的分段数。
+     */
+    private int computeGradient(Batch batch) {
+        // 段数不超过样本数, 小 batch 不会产生空任务
+        int chunkCount = Math.max(1, Math.min(gradients.length, batch.size()));
+        pool.invoke(new ChunkTask(batch, chunkCount, 0, chunkCount));
+        return chunkCount;
+    }
+
+    private final class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int chunkCount;
+        private final int fromChunk;
+        private final int toChunk;
+
+        ChunkTask(Batch batch, int chunkCount, int fromChunk, int toChunk) {
+            this.batch = batch;
+            this.chunkCount = chunkCount;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk == 1) {
+                if (metrics == null) {
+                    computeChunk(fromChunk);
+                } else {
+                    // 只在叶子任务上统计, 父任务可能在同一线程上执行子任务
+                    long allocated = metrics.currentThreadAllocatedBytes();
+                    computeChunk(fromChunk);
+                    recordAllocation(allocated);
+                }
+                return;
+            }
+            int middle = (fromChunk + toChunk) >>> 1;
+            invokeAll(new ChunkTask(batch, chunkCount, fromChunk, middle),
+                    new ChunkTask(batch, chunkCount, middle, toChunk));
+            // 左子树的结果总是累加到 gradients[fromChunk]
+            gradients[fromChunk].add(gradients[middle]);
+        }
+
+        private void computeChunk(int chunk) {
+            int count = batch.size();
+            int from = (int) ((long) count * chunk / chunkCount);
+            int to = (int) ((long) count * (chunk + 1) / chunkCount);
+            Gradient gradient = gradients[chunk];
+            gradient.clear();
+            if (batchWorkspaces != null) {
+                losses[chunk] = to > from ? computeBatched(batchWorkspaces[chunk], from, to - from, gradient) : 0;
+            } else if (floatBatchWorkspaces != null) {
+                losses[chunk] = to > from ? computeBatched(floatBatchWorkspaces[chunk], from, to - from, gradient) : 0;
+            } else if (workspaces != null) {
+                losses[chunk] = computePerSample(workspaces[chunk], from, to, gradient);
+            } else {
+                losses[chunk] = computePerSample(floatWorkspaces[chunk], from, to, gradient);
+            }
+        }
+
+        private double computeBatched(BatchWorkspace workspace, int from, int count, Gradient gradient) {
+            workspace.loadBatch(batch, from, count);
+            if (metrics == null) {
+                return network.backPropagate(workspace, count, gradient);
+            }
+            long time = System.nanoTime();
+            network.feedForward(workspace, count);
+            time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+            double loss = network.backward(workspace, count, gradient);
+            metrics.record(TrainingMetrics.Phase.BACKWARD, time);
+            return loss;
+        }
+
+        private double computeBatched(FloatBatchWorkspace workspace, int from, int count, Gradient gradient) {
+            workspace.loadBatch(batch, from, count);
+            if (metrics == null) {
+                return floatNetwork.backPropagate(workspace, count, gradient);
+            }
+            long time = System.nanoTime();
+            floatNetwork.feedForward(workspace, count);
+            time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+            double loss = floatNetwork.backward(workspace, count, gradient);
+            metrics.record(TrainingMetrics.Phase.BACKWARD, time);
+            return loss;
+        }
+
+        private double computePerSample(Workspace workspace, int from, int to, Gradient gradient) {
+            double loss = 0;
+            for (int i = from; i < to; ++i) {
+                if (metrics == null) {
+                    loss += network.backPropagate(batch, i, workspace, gradient);
+                } else {
+                    long time = System.nanoTime();
+                    network.feedForward(batch, i, workspace);
+                    time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+                    loss += network.backward(batch.label(i), workspace, gradient);
+                    metrics.record(TrainingMetrics.Phase.BACKWARD, time);
+                }
+            }
+            return loss;
+        }
+
+        private double computePerSample(FloatWorkspace workspace, int from, int to, Gradient gradient) {
+            double loss = 0;
+            for (int i = from; i < to; ++i) {
+                if (metrics == null) {
+                    loss += floatNetwork.backPropagate(batch, i, workspace);
+                } else {
+                    long time = System.nanoTime();
+                    floatNetwork.feedForward(batch, i, workspace);
+                    time = metrics.record(TrainingMetrics.Phase.FORWARD, time);
+                    loss += floatNetwork.backward(batch.label(i), workspace);
+                    metrics.record(TrainingMetrics.Phase.BACKWARD, time);
+                }
+            }
+            floatNetwork.flushGradient(workspace, gradient);
+            return loss;
+        }
+    }
+}
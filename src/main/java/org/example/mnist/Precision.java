@@ -0,0 +1,19 @@
+package org.example.mnist;
+
+/**
+ * 训练时权重和激活值的存储精度。
+ */
+public enum Precision {
+
+    /**
+     * 全部用 double, 见 {@link Network}。
+     */
+    DOUBLE,
+
+    /**
+     * 权重和激活值用 float, 一个 batch 内的梯度在 float 中累加, 跨批次、跨线程的求和与优化器状态用 double,
+     * 见 {@link FloatNetwork}。
+     * 每步搬运的参数字节数减半, 向量宽度加倍。
+     */
+    FLOAT
+}
@@ -0,0 +1,86 @@
+package org.example.mnist;
+
+import java.util.Arrays;
+
+/**
+ * 一个图像的前 k 个候选类别, 按概率从大到小排列。
+ * 概率由输出层的激活值按 {@link Activation#toProbabilities} 换算, 所有类别的概率之和为 1,
+ * 输出层为 softmax 时就是 softmax 的输出。
+ */
+public final class Prediction {
+
+    private final int[] classes;
+    private final double[] probabilities;
+
+    Prediction(int[] classes, double[] probabilities) {
+        this.classes = classes;
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * 概率最大的类别。
+     */
+    public int label() {
+        return classes[0];
+    }
+
+    public int size() {
+        return classes.length;
+    }
+
+    public int classAt(int rank) {
+        return classes[rank];
+    }
+
+    public double probabilityAt(int rank) {
+        return probabilities[rank];
+    }
+
+    /**
+     * 只保留前 k 个候选。
+     */
+    Prediction truncate(int k) {
+        if (k == classes.length) {
+            return this;
+        }
+        return new Prediction(Arrays.copyOf(classes, k), Arrays.copyOf(probabilities, k));
+    }
+
+    @Override
+    public String toString() {
+        return "Prediction" + Arrays.toString(classes) + Arrays.toString(probabilities);
+    }
+
+    /**
+     * 从 outputs[offset, offset + length) 中选出前 k 个, outputs 是以 activation 为激活函数的输出层的值。
+     */
+    static Prediction topK(double[] outputs, int offset, int length, int k, Activation activation) {
+        double[] all = Arrays.copyOfRange(outputs, offset, offset + length);
+        activation.toProbabilities(all, 0, length);
+        int[] classes = new int[k];
+        double[] probabilities = new double[k];
+        for (int rank = 0; rank < k; ++rank) {
+            int best = -1;
+            for (int i = 0; i < length; ++i) {
+                if (contains(classes, rank, i)) {
+                    continue;
+                }
+                if (best < 0 || outputs[offset + i] > outputs[offset + best]) {
+                    best = i;
+                }
+            }
+            classes[rank] = best;
+            probabilities[rank] = all[best];
+        }
+        return new Prediction(classes, probabilities);
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; ++i) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
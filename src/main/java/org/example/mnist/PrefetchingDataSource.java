@@ -0,0 +1,119 @@
+package org.example.mnist;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 在后台线程里提前读取并解码后面的 depth 批数据, 训练当前批时不必等待 I/O。
+ * <p>
+ * 预取的批次在固定的 depth + 1 个 {@link Batch} 之间循环, {@link #next} 通过交换数组把结果交给调用方,
+ * 不复制也不分配内存; 调用方传入的 batch 容量必须等于构造时的 batchSize。
+ * {@link #reset} 只能在本轮数据读完 (next 返回 false) 之后调用。
+ */
+public final class PrefetchingDataSource implements DataSource {
+
+    private static final Batch END = new Batch(1, 1);
+
+    private final DataSource source;
+    private final BlockingQueue<Batch> free;
+    private final BlockingQueue<Batch> filled;
+    private final ExecutorService executor;
+    private Future<?> producer;
+    private volatile Throwable failure;
+    private boolean exhausted;
+
+    public PrefetchingDataSource(DataSource source, int batchSize, int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("prefetch depth must be positive: " + depth);
+        }
+        this.source = source;
+        this.free = new ArrayBlockingQueue<>(depth + 1);
+        this.filled = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth; ++i) {
+            free.add(new Batch(batchSize, source.imageSize()));
+        }
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mnist-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startEpoch();
+    }
+
+    @Override
+    public int imageSize() {
+        return source.imageSize();
+    }
+
+    @Override
+    public boolean next(Batch batch) throws IOException {
+        if (exhausted) {
+            batch.clear();
+            return false;
+        }
+        Batch prefetched;
+        try {
+            prefetched = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for prefetched batch");
+        }
+        if (prefetched == END) {
+            exhausted = true;
+            batch.clear();
+            Throwable error = failure;
+            if (error != null) {
+                throw error instanceof IOException ? (IOException) error : new IOException(error);
+            }
+            return false;
+        }
+        batch.swap(prefetched);
+        free.add(prefetched);
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        if (!exhausted) {
+            throw new IllegalStateException("reset before the current epoch has been consumed");
+        }
+        source.reset();
+        startEpoch();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (producer != null) {
+            producer.cancel(true);
+        }
+        executor.shutdownNow();
+        source.close();
+    }
+
+    private void startEpoch() {
+        exhausted = false;
+        failure = null;
+        producer = executor.submit(() -> {
+            try {
+                while (true) {
+                    Batch batch = free.take();
+                    if (!source.next(batch)) {
+                        free.add(batch);
+                        break;
+                    }
+                    filled.put(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                failure = e;
+            }
+            filled.add(END);
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.mnist;
+
+/**
+ * {@link QuantizedModel#evaluate} 的结果。
+ */
+public final class QuantizationReport {
+
+    private final int samples;
+    private final int doubleCorrect;
+    private final int quantizedCorrect;
+    private final int agreed;
+    private final long doubleBytes;
+    private final long quantizedBytes;
+
+    QuantizationReport(int samples, int doubleCorrect, int quantizedCorrect, int agreed,
+                       long doubleBytes, long quantizedBytes) {
+        this.samples = samples;
+        this.doubleCorrect = doubleCorrect;
+        this.quantizedCorrect = quantizedCorrect;
+        this.agreed = agreed;
+        this.doubleBytes = doubleBytes;
+        this.quantizedBytes = quantizedBytes;
+    }
+
+    public double doubleAccuracy() {
+        return 1.0 * doubleCorrect / samples;
+    }
+
+    public double quantizedAccuracy() {
+        return 1.0 * quantizedCorrect / samples;
+    }
+
+    /**
+     * 两个模型给出相同结果的比例。
+     */
+    public double agreement() {
+        return 1.0 * agreed / samples;
+    }
+
+    public long doubleBytes() {
+        return doubleBytes;
+    }
+
+    public long quantizedBytes() {
+        return quantizedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "double accuracy " + doubleAccuracy() + ", int8 accuracy " + quantizedAccuracy()
+                + ", agreement " + agreement() + ", parameter bytes " + doubleBytes + " -> " + quantizedBytes;
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.mnist;
+
+/**
+ * 训练后量化的 int8 推理模型。
+ * <p>
+ * 每层权重按该层的最小/最大值做非对称量化: w ≈ scale * (q - zeroPoint), q 为 int8;
+ * 偏置保留为 float。层输入是 uint8, 输入层就是原始像素 (scale = 1), 隐藏层的 sigmoid 输出在 (0, 1) 内,
+ * 按 scale = 1/255 量化, 所以隐藏层只支持 sigmoid (推理时用查表的 {@link FastSigmoid})。
+ * 点积全部用整数计算, int32 累加:
+ * <pre>
+ * sum_i w_i * x_i ≈ scale_w * scale_x * (sum_i q_i * x_i - zeroPoint * sum_i x_i)
+ * </pre>
+ * 权重内存约为 double 模型的 1/8。模型不可变, 多个线程可以同时使用。
+ */
+public final class QuantizedModel {
+
+    private static final double ACTIVATION_SCALE = 1.0 / 255;
+
+    private final int[] layerUnitNums;
+    private final byte[][] weights;
+    private final float[][] biases;
+    private final float[] weightScales;
+    private final int[] weightZeroPoints;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(layerUnitNums);
+        }
+    };
+
+    private QuantizedModel(int[] layerUnitNums, byte[][] weights, float[][] biases,
+                           float[] weightScales, int[] weightZeroPoints) {
+        this.layerUnitNums = layerUnitNums;
+        this.weights = weights;
+        this.biases = biases;
+        this.weightScales = weightScales;
+        this.weightZeroPoints = weightZeroPoints;
+    }
+
+    public static QuantizedModel quantize(ModelSnapshot model) {
+        Network network = model.network();
+        int layerCount = network.layerCount();
+        byte[][] weights = new byte[layerCount][];
+        float[][] biases = new float[layerCount][];
+        float[] scales = new float[layerCount];
+        int[] zeroPoints = new int[layerCount];
+        for (int l = 0; l < layerCount; ++l) {
+            DenseLayer layer = network.layer(l);
+            if (l + 1 < layerCount && !isSigmoid(layer.activation())) {
+                throw new IllegalArgumentException("int8 quantization supports only sigmoid hidden layers: "
+                        + layer.activation());
+            }
+            // int32 累加不溢出: inputSize * 255 * 255 < 2^31
+            if ((long) layer.inputSize() * 255 * 255 > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("layer " + l + " is too wide for int32 accumulation: " + layer.inputSize());
+            }
+            double[] parameters = layer.parameters();
+            int weightCount = layer.weightCount();
+            double min = 0;
+            double max = 0;
+            for (int k = 0; k < weightCount; ++k) {
+                min = Math.min(min, parameters[k]);
+                max = Math.max(max, parameters[k]);
+            }
+            double scale = max > min ? (max - min) / 255 : 1;
+            int zeroPoint = (int) Math.max(-128, Math.min(127, Math.round(-128 - min / scale)));
+            byte[] quantized = new byte[weightCount];
+            for (int k = 0; k < weightCount; ++k) {
+                long q = Math.round(parameters[k] / scale) + zeroPoint;
+                quantized[k] = (byte) Math.max(-128, Math.min(127, q));
+            }
+            float[] bias = new float[layer.outputSize()];
+            for (int j = 0; j < bias.length; ++j) {
+                bias[j] = (float) parameters[weightCount + j];
+            }
+            weights[l] = quantized;
+            biases[l] = bias;
+            scales[l] = (float) scale;
+            zeroPoints[l] = zeroPoint;
+        }
+        return new QuantizedModel(network.layerUnitNums(), weights, biases, scales, zeroPoints);
+    }
+
+    /**
+     * model 的隐藏层是否都是 sigmoid, 即能否用 {@link #quantize} 量化。
+     */
+    public static boolean supports(ModelSnapshot model) {
+        Network network = model.network();
+        for (int l = 0; l + 1 < network.layerCount(); ++l) {
+            if (!isSigmoid(network.layer(l).activation())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSigmoid(Activation activation) {
+        return activation == Activation.SIGMOID || activation == Activation.FAST_SIGMOID;
+    }
+
+    public int inputSize() {
+        return layerUnitNums[0];
+    }
+
+    /**
+     * 权重和偏置占用的字节数。
+     */
+    public long parameterBytes() {
+        long bytes = 0;
+        for (int l = 0; l < weights.length; ++l) {
+            bytes += weights[l].length + 4L * biases[l].length;
+        }
+        return bytes;
+    }
+
+    /**
+     * 对 image[offset, offset + inputSize) 中的原始像素分类。
+     */
+    public int classifyImage(byte[] image, int offset) {
+        // 输出层的激活函数都是单调的, 直接比较净输入
+        return Network.argMax(outputNet(image, offset));
+    }
+
+    /**
+     * 输出层的净输入 (激活函数之前), 返回的数组是当前线程的缓冲区, 下次调用时被覆盖。
+     */
+    double[] outputNet(byte[] image, int offset) {
+        Scratch buffers = scratch.get();
+        System.arraycopy(image, offset, buffers.activations[0], 0, layerUnitNums[0]);
+        double inputScale = 1;
+        double[] net = null;
+        for (int l = 0; l < weights.length; ++l) {
+            byte[] input = buffers.activations[l];
+            byte[] layerWeights = weights[l];
+            float[] bias = biases[l];
+            int inputSize = layerUnitNums[l];
+            int outputSize = layerUnitNums[l + 1];
+            int inputSum = 0;
+            for (int i = 0; i < inputSize; ++i) {
+                inputSum += input[i] & 0xff;
+            }
+            double scale = weightScales[l] * inputScale;
+            int zeroPoint = weightZeroPoints[l];
+            net = buffers.net[l];
+            for (int j = 0, row = 0; j < outputSize; ++j, row += inputSize) {
+                int accumulator = 0;
+                for (int i = 0; i < inputSize; ++i) {
+                    accumulator += layerWeights[row + i] * (input[i] & 0xff);
+                }
+                net[j] = scale * (accumulator - zeroPoint * inputSum) + bias[j];
+            }
+            if (l + 1 < weights.length) {
+                byte[] output = buffers.activations[l + 1];
+                for (int j = 0; j < outputSize; ++j) {
+                    double activation = FastSigmoid.value(net[j]);
+                    output[j] = (byte) Math.round(activation / ACTIVATION_SCALE);
+                }
+                inputScale = ACTIVATION_SCALE;
+            }
+        }
+        return net;
+    }
+
+    public int[] classify(byte[] images, int count) {
+        int[] results = new int[count];
+        for (int s = 0; s < count; ++s) {
+            results[s] = classifyImage(images, s * layerUnitNums[0]);
+        }
+        return results;
+    }
+
+    /**
+     * 在 dataset 上比较量化模型与原 double 模型。
+     */
+    public static QuantizationReport evaluate(ModelSnapshot model, Dataset dataset) {
+        QuantizedModel quantized = quantize(model);
+        int[] expected = new InferenceEngine(model).classify(dataset);
+        byte[] image = new byte[dataset.imageSize()];
+        int doubleCorrect = 0;
+        int quantizedCorrect = 0;
+        int agreed = 0;
+        for (int i = 0; i < dataset.size(); ++i) {
+            dataset.copyImage(i, image, 0);
+            int actual = quantized.classifyImage(image, 0);
+            int label = dataset.label(i);
+            if (expected[i] == label) {
+                ++doubleCorrect;
+            }
+            if (actual == label) {
+                ++quantizedCorrect;
+            }
+            if (actual == expected[i]) {
+                ++agreed;
+            }
+        }
+        long doubleBytes = 8L * model.network().parameterCount();
+        return new QuantizationReport(dataset.size(), doubleCorrect, quantizedCorrect, agreed,
+                doubleBytes, quantized.parameterBytes());
+    }
+
+    private static final class Scratch {
+        final byte[][] activations;
+        final double[][] net;
+
+        Scratch(int[] layerUnitNums) {
+            activations = new byte[layerUnitNums.length][];
+            net = new double[layerUnitNums.length - 1][];
+            for (int l = 0; l < layerUnitNums.length; ++l) {
+                activations[l] = new byte[layerUnitNums[l]];
+                if (l > 0) {
+                    net[l - 1] = new double[layerUnitNums[l]];
+                }
+            }
+        }
+    }
+}
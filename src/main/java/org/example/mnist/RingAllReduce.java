@@ -0,0 +1,226 @@
+package org.example.mnist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/**
+ * 环形 all-reduce: worldSize 个进程排成一个环, 每个进程只与下一个进程 (发送) 和上一个进程 (接收) 各保持
+ * 一条 TCP 连接。数据分成 worldSize 段, 先做 worldSize - 1 轮 reduce-scatter, 每个进程得到一段的总和,
+ * 再做 worldSize - 1 轮 all-gather 把各段总和传给所有进程。每个进程发送和接收的字节数都约为
+ * 2 * (worldSize - 1) / worldSize * 数据大小, 与进程数基本无关。
+ * <p>
+ * compress 为 true 时以 float 传输, 字节数减半。all-gather 之前每段总和先舍入到 float,
+ * 所以所有进程最终得到完全相同的结果。
+ * <p>
+ * 各进程必须以相同的顺序调用 {@link #allReduce}, 数据长度也必须相同。不是线程安全的。
+ */
+public final class RingAllReduce implements Closeable {
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 60_000;
+
+    private final int rank;
+    private final int worldSize;
+    private final ServerSocketChannel server;
+    private final SocketChannel next;
+    private final SocketChannel previous;
+    private final Selector selector;
+    private ByteBuffer sendBuffer = ByteBuffer.allocateDirect(0);
+    private ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(0);
+
+    /**
+     * 在 addresses.get(rank) 上监听, 连接 addresses.get((rank + 1) % worldSize), 并等待上一个进程连入。
+     */
+    public RingAllReduce(int rank, List<InetSocketAddress> addresses) throws IOException {
+        this.rank = rank;
+        this.worldSize = addresses.size();
+        if (rank < 0 || rank >= worldSize) {
+            throw new IllegalArgumentException("rank " + rank + " out of range for " + worldSize + " workers");
+        }
+        if (worldSize == 1) {
+            server = null;
+            next = null;
+            previous = null;
+            selector = null;
+            return;
+        }
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(addresses.get(rank));
+            // 先监听再连接: 连接在对方 accept 之前就能在 backlog 中完成, 所有进程可以按任意顺序启动
+            next = connect(addresses.get((rank + 1) % worldSize));
+            ByteBuffer hello = ByteBuffer.allocate(4).putInt(rank);
+            hello.flip();
+            while (hello.hasRemaining()) {
+                next.write(hello);
+            }
+            previous = server.accept();
+            ByteBuffer peer = ByteBuffer.allocate(4);
+            while (peer.hasRemaining()) {
+                if (previous.read(peer) < 0) {
+                    throw new IOException("previous worker closed the connection during handshake");
+                }
+            }
+            int expected = (rank + worldSize - 1) % worldSize;
+            if (peer.getInt(0) != expected) {
+                throw new IOException("expected worker " + expected + " to connect, got " + peer.getInt(0));
+            }
+            for (SocketChannel channel : new SocketChannel[]{next, previous}) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+            }
+            selector = Selector.open();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static SocketChannel connect(InetSocketAddress address) throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return SocketChannel.open(address);
+            } catch (IOException e) {
+                // 下一个进程可能还没有开始监听
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("could not connect to " + address, e);
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while connecting to " + address, interrupted);
+                }
+            }
+        }
+    }
+
+    public int rank() {
+        return rank;
+    }
+
+    public int worldSize() {
+        return worldSize;
+    }
+
+    /**
+     * 把所有进程的 data[0, length) 按元素求和, 结果写回每个进程的 data。
+     */
+    public void allReduce(double[] data, int length, boolean compress) throws IOException {
+        if (worldSize == 1) {
+            return;
+        }
+        int elementBytes = compress ? 4 : 8;
+        int maxChunk = (length + worldSize - 1) / worldSize;
+        if (sendBuffer.capacity() < maxChunk * elementBytes) {
+            sendBuffer = ByteBuffer.allocateDirect(maxChunk * elementBytes).order(ByteOrder.LITTLE_ENDIAN);
+            receiveBuffer = ByteBuffer.allocateDirect(maxChunk * elementBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        // reduce-scatter: 第 step 轮发送第 rank - step 段, 接收第 rank - step - 1 段并累加
+        for (int step = 0; step < worldSize - 1; ++step) {
+            int sendChunk = chunkIndex(rank - step);
+            int receiveChunk = chunkIndex(rank - step - 1);
+            exchange(data, length, sendChunk, receiveChunk, compress);
+            int from = chunkStart(receiveChunk, length);
+            int to = chunkStart(receiveChunk + 1, length);
+            for (int i = from; i < to; ++i) {
+                data[i] += compress ? receiveBuffer.getFloat() : receiveBuffer.getDouble();
+            }
+        }
+        // 现在第 rank + 1 段是总和
+        int owned = chunkIndex(rank + 1);
+        if (compress) {
+            for (int i = chunkStart(owned, length); i < chunkStart(owned + 1, length); ++i) {
+                data[i] = (float) data[i];
+            }
+        }
+        // all-gather: 第 step 轮发送第 rank + 1 - step 段, 接收第 rank - step 段并覆盖
+        for (int step = 0; step < worldSize - 1; ++step) {
+            int sendChunk = chunkIndex(rank + 1 - step);
+            int receiveChunk = chunkIndex(rank - step);
+            exchange(data, length, sendChunk, receiveChunk, compress);
+            int from = chunkStart(receiveChunk, length);
+            int to = chunkStart(receiveChunk + 1, length);
+            for (int i = from; i < to; ++i) {
+                data[i] = compress ? receiveBuffer.getFloat() : receiveBuffer.getDouble();
+            }
+        }
+    }
+
+    private int chunkIndex(int index) {
+        return ((index % worldSize) + worldSize) % worldSize;
+    }
+
+    private int chunkStart(int chunk, int length) {
+        return (int) ((long) length * chunk / worldSize);
+    }
+
+    /**
+     * 把 sendChunk 发给下一个进程, 同时从上一个进程接收 receiveChunk 到 receiveBuffer。
+     * 收发必须同时进行, 否则数据超过套接字缓冲区时环上所有进程都会卡在写上。
+     */
+    private void exchange(double[] data, int length, int sendChunk, int receiveChunk, boolean compress)
+            throws IOException {
+        int elementBytes = compress ? 4 : 8;
+        sendBuffer.clear();
+        for (int i = chunkStart(sendChunk, length); i < chunkStart(sendChunk + 1, length); ++i) {
+            if (compress) {
+                sendBuffer.putFloat((float) data[i]);
+            } else {
+                sendBuffer.putDouble(data[i]);
+            }
+        }
+        sendBuffer.flip();
+        receiveBuffer.clear();
+        receiveBuffer.limit((chunkStart(receiveChunk + 1, length) - chunkStart(receiveChunk, length)) * elementBytes);
+
+        SelectionKey writeKey = next.register(selector, sendBuffer.hasRemaining() ? SelectionKey.OP_WRITE : 0);
+        SelectionKey readKey = previous.register(selector, receiveBuffer.hasRemaining() ? SelectionKey.OP_READ : 0);
+        while (sendBuffer.hasRemaining() || receiveBuffer.hasRemaining()) {
+            selector.select();
+            selector.selectedKeys().clear();
+            if (sendBuffer.hasRemaining()) {
+                next.write(sendBuffer);
+                if (!sendBuffer.hasRemaining()) {
+                    writeKey.interestOps(0);
+                }
+            }
+            if (receiveBuffer.hasRemaining()) {
+                if (previous.read(receiveBuffer) < 0) {
+                    throw new IOException("worker " + chunkIndex(rank - 1) + " closed the connection");
+                }
+                if (!receiveBuffer.hasRemaining()) {
+                    readKey.interestOps(0);
+                }
+            }
+        }
+        receiveBuffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Closeable closeable : new Closeable[]{selector, next, previous, server}) {
+            if (closeable == null) {
+                continue;
+            }
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.mnist;
+
+import java.util.Random;
+
+/**
+ * 从另一个数据集中随机取出的固定子集, 用于每轮训练后的低成本评估。
+ * 子集在构造时确定, 之后每次评估使用相同的样本, 结果可以互相比较。
+ */
+public final class SampledDataset implements Dataset {
+
+    private final Dataset source;
+    private final int[] indices;
+
+    public SampledDataset(Dataset source, int sampleSize, Random random) {
+        int size = Math.min(sampleSize, source.size());
+        int[] all = new int[source.size()];
+        for (int i = 0; i < all.length; ++i) {
+            all[i] = i;
+        }
+        // 只做 Fisher-Yates 洗牌的前 size 步
+        for (int i = 0; i < size; ++i) {
+            int j = i + random.nextInt(all.length - i);
+            int tmp = all[i];
+            all[i] = all[j];
+            all[j] = tmp;
+        }
+        this.source = source;
+        this.indices = new int[size];
+        System.arraycopy(all, 0, indices, 0, size);
+    }
+
+    @Override
+    public int size() {
+        return indices.length;
+    }
+
+    @Override
+    public int imageSize() {
+        return source.imageSize();
+    }
+
+    @Override
+    public int label(int index) {
+        return source.label(indices[index]);
+    }
+
+    @Override
+    public void copyImage(int index, double[] target, int offset) {
+        source.copyImage(indices[index], target, offset);
+    }
+
+    @Override
+    public void copyImage(int index, byte[] target, int offset) {
+        source.copyImage(indices[index], target, offset);
+    }
+}
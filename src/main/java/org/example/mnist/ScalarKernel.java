@@ -0,0 +1,43 @@
+package org.example.mnist;
+
+/**
+ * 最直接的三重循环实现, 作为其它内核的参考结果。
+ */
+public final class ScalarKernel implements MatrixKernel {
+
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+                     double alpha, double[] a, int lda, double[] b, int ldb,
+                     double beta, double[] c, int ldc) {
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0;
+                for (int p = 0; p < k; ++p) {
+                    double aValue = transposeA ? a[p * lda + i] : a[i * lda + p];
+                    double bValue = transposeB ? b[j * ldb + p] : b[p * ldb + j];
+                    sum += aValue * bValue;
+                }
+                double previous = beta == 0 ? 0 : beta * c[i * ldc + j];
+                c[i * ldc + j] = previous + alpha * sum;
+            }
+        }
+    }
+
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+                     float alpha, float[] a, int lda, float[] b, int ldb,
+                     float beta, float[] c, int ldc) {
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < n; ++j) {
+                float sum = 0;
+                for (int p = 0; p < k; ++p) {
+                    float aValue = transposeA ? a[p * lda + i] : a[i * lda + p];
+                    float bValue = transposeB ? b[j * ldb + p] : b[p * ldb + j];
+                    sum += aValue * bValue;
+                }
+                float previous = beta == 0 ? 0 : beta * c[i * ldc + j];
+                c[i * ldc + j] = previous + alpha * sum;
+            }
+        }
+    }
+}
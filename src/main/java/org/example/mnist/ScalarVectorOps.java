@@ -0,0 +1,50 @@
+package org.example.mnist;
+
+public final class ScalarVectorOps implements VectorOps {
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; ++i) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            x[i] = 1.0 / (1 + Math.exp(-x[i]));
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; ++i) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void sigmoid(float[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            x[i] = (float) (1.0 / (1 + Math.exp(-x[i])));
+        }
+    }
+}
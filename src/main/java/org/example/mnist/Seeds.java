@@ -0,0 +1,86 @@
+package org.example.mnist;
+
+import java.util.Random;
+
+/**
+ * 从一个主种子派生出互不相关的随机数流: 权重初始化、每轮洗牌、评估抽样各用一个,
+ * 改变其中一处的用法不会影响其他几处的随机序列。
+ * <p>
+ * 显式指定种子 ({@code -Dmnist.seed}) 时 {@link #reproducible()} 为 true。并行训练的归约顺序与线程数无关
+ * (见 {@link ParallelTrainer}), 相同种子、相同参数的两次运行得到完全相同的结果。
+ */
+public final class Seeds {
+
+    private static final long INITIALIZATION = 1;
+    private static final long SHUFFLING = 2;
+    private static final long SAMPLING = 3;
+
+    private final long seed;
+    private final boolean reproducible;
+
+    private Seeds(long seed, boolean reproducible) {
+        this.seed = seed;
+        this.reproducible = reproducible;
+    }
+
+    public static Seeds of(long seed) {
+        return new Seeds(seed, true);
+    }
+
+    /**
+     * 随机选一个主种子。选中的种子可以从 {@link #seed()} 读出, 用 {@link #of(long)} 重放同样的初始化和洗牌。
+     */
+    public static Seeds random() {
+        return new Seeds(new Random().nextLong(), false);
+    }
+
+    /**
+     * 设置了 -Dmnist.seed 时用它, 否则随机选一个。
+     */
+    public static Seeds fromSystemProperty() {
+        String seed = System.getProperty("mnist.seed");
+        return seed == null ? random() : of(Long.parseLong(seed));
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    public boolean reproducible() {
+        return reproducible;
+    }
+
+    public Random initialization() {
+        return new Random(mix(seed, INITIALIZATION));
+    }
+
+    public Random shuffling() {
+        return new Random(mix(seed, SHUFFLING));
+    }
+
+    public Random sampling() {
+        return new Random(mix(seed, SAMPLING));
+    }
+
+    /**
+     * 第 index 个子种子, 例如分布式训练中每个工作进程一个。
+     */
+    public Seeds derive(long index) {
+        return new Seeds(mix(seed, ~index), reproducible);
+    }
+
+    /**
+     * SplitMix64 的混合函数, 相邻的输入也会得到不相关的输出。
+     */
+    static long mix(long seed, long stream) {
+        long z = seed + stream * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return "seed " + seed;
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.mnist;
+
+/**
+ * 普通的随机梯度下降: w += rate * g。
+ */
+public final class SgdOptimizer extends AbstractOptimizer {
+
+    public SgdOptimizer(LearningRateSchedule schedule) {
+        super("sgd", schedule, 0);
+    }
+
+    public SgdOptimizer(double learningRate) {
+        this(LearningRateSchedule.constant(learningRate));
+    }
+
+    @Override
+    public void update(double[] parameters, double[] gradient, double scale, int offset) {
+        double alpha = rate * scale;
+        for (int k = 0; k < parameters.length; ++k) {
+            parameters[k] += alpha * gradient[k];
+        }
+    }
+
+    @Override
+    public void update(float[] parameters, double[] gradient, double scale, int offset) {
+        double alpha = rate * scale;
+        for (int k = 0; k < parameters.length; ++k) {
+            parameters[k] = (float) (parameters[k] + alpha * gradient[k]);
+        }
+    }
+}
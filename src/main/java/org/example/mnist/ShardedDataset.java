@@ -0,0 +1,56 @@
+package org.example.mnist;
+
+/**
+ * 分布式训练中一个进程看到的数据分片: 第 shard 个分片取下标 shard, shard + shardCount, ... 的样本。
+ * 每个分片都截成 source.size() / shardCount 个样本, 各进程每轮的批次数因此相同,
+ * 不会有进程先结束一轮而让环形 all-reduce 卡住。最多丢弃 shardCount - 1 个样本。
+ */
+public final class ShardedDataset implements Dataset {
+
+    private final Dataset source;
+    private final int shard;
+    private final int shardCount;
+    private final int size;
+
+    public ShardedDataset(Dataset source, int shard, int shardCount) {
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("shard " + shard + " out of range for " + shardCount + " shards");
+        }
+        this.source = source;
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.size = source.size() / shardCount;
+    }
+
+    private int sourceIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of range for shard of size " + size);
+        }
+        return index * shardCount + shard;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int imageSize() {
+        return source.imageSize();
+    }
+
+    @Override
+    public int label(int index) {
+        return source.label(sourceIndex(index));
+    }
+
+    @Override
+    public void copyImage(int index, double[] target, int offset) {
+        source.copyImage(sourceIndex(index), target, offset);
+    }
+
+    @Override
+    public void copyImage(int index, byte[] target, int offset) {
+        source.copyImage(sourceIndex(index), target, offset);
+    }
+}
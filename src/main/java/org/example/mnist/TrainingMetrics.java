@@ -0,0 +1,85 @@
+package org.example.mnist;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 训练过程的累计指标: 各阶段耗时、样本数、损失、梯度范数和分配的字节数。
+ * <p>
+ * 所有计数器都可以被多个线程同时累加。阶段耗时是各线程耗时之和, 并行训练时可能大于墙钟时间。
+ * 用 {@link #snapshot()} 取当前值, 两个快照相减得到一段时间内的值, 见 {@link MetricsReporter}。
+ */
+public final class TrainingMetrics {
+
+    public enum Phase {
+        DATA, FORWARD, BACKWARD, UPDATE, EVALUATION
+    }
+
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final DoubleAdder loss = new DoubleAdder();
+    private final DoubleAdder gradientNorm = new DoubleAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final com.sun.management.ThreadMXBean allocationBean;
+
+    public TrainingMetrics() {
+        for (int p = 0; p < phaseNanos.length; ++p) {
+            phaseNanos[p] = new LongAdder();
+        }
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        // 只有 HotSpot 的实现支持按线程统计分配量
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) bean;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            allocationBean = null;
+        }
+    }
+
+    /**
+     * 把从 startNanos 到现在的时间计入 phase, 返回现在的 System.nanoTime(), 可以作为下一阶段的起点。
+     */
+    public long record(Phase phase, long startNanos) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()].add(now - startNanos);
+        return now;
+    }
+
+    /**
+     * 记录一次参数更新。
+     *
+     * @param loss         batch 中各样本损失之和
+     * @param gradientNorm 平均梯度的 L2 范数
+     */
+    public void recordStep(int sampleCount, double loss, double gradientNorm) {
+        steps.increment();
+        samples.add(sampleCount);
+        this.loss.add(loss);
+        this.gradientNorm.add(gradientNorm);
+    }
+
+    public void recordAllocation(long bytes) {
+        allocatedBytes.add(bytes);
+    }
+
+    /**
+     * 当前线程累计分配的堆内存字节数, JVM 不支持时返回 -1。
+     * 只包括调用线程自己的分配, 在其他线程上完成的工作要在那些线程里分别取差值再 {@link #recordAllocation}。
+     */
+    public long currentThreadAllocatedBytes() {
+        return allocationBean == null ? -1 : allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public MetricsSnapshot snapshot() {
+        long[] nanos = new long[phaseNanos.length];
+        for (int p = 0; p < nanos.length; ++p) {
+            nanos[p] = phaseNanos[p].sum();
+        }
+        return new MetricsSnapshot(System.nanoTime(), nanos, steps.sum(), samples.sum(), loss.sum(),
+                gradientNorm.sum(), allocatedBytes.sum());
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.mnist;
+
+/**
+ * 网络内层循环用到的向量运算。默认实现是 {@link ScalarVectorOps},
+ * 用 -Pvector 构建并在 JDK 17+ 上运行时可以换成基于 jdk.incubator.vector 的实现, 见 {@link Kernels}。
+ */
+public interface VectorOps {
+
+    /**
+     * sum_i a[aOffset + i] * b[bOffset + i]
+     */
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * y[yOffset + i] += alpha * x[xOffset + i]
+     */
+    void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * x[offset + i] = 1 / (1 + exp(-x[offset + i]))
+     */
+    void sigmoid(double[] x, int offset, int length);
+
+    /**
+     * float 版本的 {@link #dot(double[], int, double[], int, int)}, 供 {@link Precision#FLOAT} 使用。
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    void sigmoid(float[] x, int offset, int length);
+}
@@ -0,0 +1,46 @@
+package org.example.mnist;
+
+/**
+ * 单个训练/推理线程复用的缓冲区: 每层的激活值和错误率。
+ * 不是线程安全的, 每个线程持有自己的一份。
+ */
+public final class Workspace {
+
+    /**
+     * activations[0] 为输入层, activations[k] 为第 k 层的输出。
+     */
+    final double[][] activations;
+    final double[][] errorRates;
+
+    Workspace(int[] layerUnitNums) {
+        activations = new double[layerUnitNums.length][];
+        errorRates = new double[layerUnitNums.length][];
+        for (int i = 0; i < layerUnitNums.length; ++i) {
+            activations[i] = new double[layerUnitNums[i]];
+            errorRates[i] = new double[layerUnitNums[i]];
+        }
+    }
+
+    public double[] input() {
+        return activations[0];
+    }
+
+    public double[] output() {
+        return activations[activations.length - 1];
+    }
+
+    void loadInput(double[] source, int offset) {
+        System.arraycopy(source, offset, activations[0], 0, activations[0].length);
+    }
+
+    void loadInput(Dataset dataset, int index) {
+        dataset.copyImage(index, activations[0], 0);
+    }
+
+    void loadInput(byte[] sample) {
+        double[] input = activations[0];
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = sample[i] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.mnist;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 把每个周期的指标提交为一个 JFR 事件, 在 JMC 中与 GC、线程等事件放在同一条时间线上查看。
+ * 在 JDK 11+ 上构建时由 jfr profile 自动编译, 由 {@link MetricsExporter#jfr()} 通过反射加载。
+ */
+public final class JfrMetricsExporter implements MetricsExporter {
+
+    @Name("org.example.mnist.TrainingWindow")
+    @Label("Training Window")
+    @Category("MNIST")
+    @Description("Training metrics aggregated over one reporting interval")
+    static final class TrainingWindowEvent extends Event {
+
+        @Label("Steps")
+        long steps;
+
+        @Label("Samples")
+        long samples;
+
+        @Label("Samples Per Second")
+        double samplesPerSecond;
+
+        @Label("Mean Loss")
+        double meanLoss;
+
+        @Label("Mean Gradient Norm")
+        double meanGradientNorm;
+
+        @Label("Allocated Per Step")
+        @DataAmount
+        long allocatedBytesPerStep;
+
+        @Label("Data")
+        @Timespan
+        long dataNanos;
+
+        @Label("Forward")
+        @Timespan
+        long forwardNanos;
+
+        @Label("Backward")
+        @Timespan
+        long backwardNanos;
+
+        @Label("Update")
+        @Timespan
+        long updateNanos;
+
+        @Label("Evaluation")
+        @Timespan
+        long evaluationNanos;
+    }
+
+    @Override
+    public void export(MetricsSnapshot window) {
+        TrainingWindowEvent event = new TrainingWindowEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.steps = window.steps();
+        event.samples = window.samples();
+        event.samplesPerSecond = window.samplesPerSecond();
+        event.meanLoss = window.meanLoss();
+        event.meanGradientNorm = window.meanGradientNorm();
+        event.allocatedBytesPerStep = window.allocatedBytesPerStep();
+        event.dataNanos = window.phaseNanos(TrainingMetrics.Phase.DATA);
+        event.forwardNanos = window.phaseNanos(TrainingMetrics.Phase.FORWARD);
+        event.backwardNanos = window.phaseNanos(TrainingMetrics.Phase.BACKWARD);
+        event.updateNanos = window.phaseNanos(TrainingMetrics.Phase.UPDATE);
+        event.evaluationNanos = window.phaseNanos(TrainingMetrics.Phase.EVALUATION);
+        event.commit();
+    }
+}
@@ -0,0 +1,222 @@
+package org.example.mnist;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 jdk.incubator.vector 的实现, 向量宽度取当前 CPU 的首选宽度 (AVX2 上 4 个 double, AVX-512 上 8 个)。
+ * 只在 -Pvector 构建时编译, 由 {@link Kernels} 在启动时通过反射加载。
+ */
+public final class SimdKernel implements MatrixKernel, VectorOps {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int KC = 256;
+
+    private final ThreadLocal<double[]> packBuffer = ThreadLocal.withInitial(() -> new double[0]);
+    private final ThreadLocal<float[]> floatPackBuffer = ThreadLocal.withInitial(() -> new float[0]);
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+        double result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            vx.fma(va, vy).intoArray(y, yOffset + i);
+        }
+        for (; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] x, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, x, offset + i);
+            DoubleVector e = v.neg().lanewise(VectorOperators.EXP);
+            DoubleVector.broadcast(SPECIES, 1).div(e.add(1)).intoArray(x, offset + i);
+        }
+        for (; i < length; ++i) {
+            x[offset + i] = 1.0 / (1 + Math.exp(-x[offset + i]));
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(FLOAT_SPECIES);
+        int bound = FLOAT_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        FloatVector va = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+        int bound = FLOAT_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+            FloatVector vy = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+            vx.fma(va, vy).intoArray(y, yOffset + i);
+        }
+        for (; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void sigmoid(float[] x, int offset, int length) {
+        int bound = FLOAT_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector v = FloatVector.fromArray(FLOAT_SPECIES, x, offset + i);
+            FloatVector e = v.neg().lanewise(VectorOperators.EXP);
+            FloatVector.broadcast(FLOAT_SPECIES, 1).div(e.add(1)).intoArray(x, offset + i);
+        }
+        for (; i < length; ++i) {
+            x[offset + i] = (float) (1.0 / (1 + Math.exp(-x[offset + i])));
+        }
+    }
+
+    /**
+     * 按 KC 行一块把 op(B) 打包成行主序, 然后对 C 的每一行做 C[i][:] += alpha * op(A)[i][p] * op(B)[p][:]。
+     */
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+                     double alpha, double[] a, int lda, double[] b, int ldb,
+                     double beta, double[] c, int ldc) {
+        if (beta != 1) {
+            for (int i = 0; i < m; ++i) {
+                int row = i * ldc;
+                for (int j = 0; j < n; ++j) {
+                    c[row + j] = beta == 0 ? 0 : beta * c[row + j];
+                }
+            }
+        }
+        if (alpha == 0 || k == 0) {
+            return;
+        }
+        double[] packed = packBuffer.get();
+        if (packed.length < Math.min(KC, k) * n) {
+            packed = new double[Math.min(KC, k) * n];
+            packBuffer.set(packed);
+        }
+        int bound = SPECIES.loopBound(n);
+        for (int pc = 0; pc < k; pc += KC) {
+            int kc = Math.min(KC, k - pc);
+            for (int p = 0; p < kc; ++p) {
+                int target = p * n;
+                for (int j = 0; j < n; ++j) {
+                    packed[target + j] = transposeB ? b[j * ldb + pc + p] : b[(pc + p) * ldb + j];
+                }
+            }
+            for (int i = 0; i < m; ++i) {
+                int cRow = i * ldc;
+                for (int p = 0; p < kc; ++p) {
+                    double aValue = alpha * (transposeA ? a[(pc + p) * lda + i] : a[i * lda + pc + p]);
+                    if (aValue == 0) {
+                        continue;
+                    }
+                    DoubleVector va = DoubleVector.broadcast(SPECIES, aValue);
+                    int bRow = p * n;
+                    int j = 0;
+                    for (; j < bound; j += SPECIES.length()) {
+                        DoubleVector vb = DoubleVector.fromArray(SPECIES, packed, bRow + j);
+                        DoubleVector vc = DoubleVector.fromArray(SPECIES, c, cRow + j);
+                        vb.fma(va, vc).intoArray(c, cRow + j);
+                    }
+                    for (; j < n; ++j) {
+                        c[cRow + j] += aValue * packed[bRow + j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 同 double 版本, 每次处理 {@link #FLOAT_SPECIES} 个 float。
+     */
+    @Override
+    public void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+                     float alpha, float[] a, int lda, float[] b, int ldb,
+                     float beta, float[] c, int ldc) {
+        if (beta != 1) {
+            for (int i = 0; i < m; ++i) {
+                int row = i * ldc;
+                for (int j = 0; j < n; ++j) {
+                    c[row + j] = beta == 0 ? 0 : beta * c[row + j];
+                }
+            }
+        }
+        if (alpha == 0 || k == 0) {
+            return;
+        }
+        float[] packed = floatPackBuffer.get();
+        if (packed.length < Math.min(KC, k) * n) {
+            packed = new float[Math.min(KC, k) * n];
+            floatPackBuffer.set(packed);
+        }
+        int bound = FLOAT_SPECIES.loopBound(n);
+        for (int pc = 0; pc < k; pc += KC) {
+            int kc = Math.min(KC, k - pc);
+            for (int p = 0; p < kc; ++p) {
+                int target = p * n;
+                for (int j = 0; j < n; ++j) {
+                    packed[target + j] = transposeB ? b[j * ldb + pc + p] : b[(pc + p) * ldb + j];
+                }
+            }
+            for (int i = 0; i < m; ++i) {
+                int cRow = i * ldc;
+                for (int p = 0; p < kc; ++p) {
+                    float aValue = alpha * (transposeA ? a[(pc + p) * lda + i] : a[i * lda + pc + p]);
+                    if (aValue == 0) {
+                        continue;
+                    }
+                    FloatVector va = FloatVector.broadcast(FLOAT_SPECIES, aValue);
+                    int bRow = p * n;
+                    int j = 0;
+                    for (; j < bound; j += FLOAT_SPECIES.length()) {
+                        FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, packed, bRow + j);
+                        FloatVector vc = FloatVector.fromArray(FLOAT_SPECIES, c, cRow + j);
+                        vb.fma(va, vc).intoArray(c, cRow + j);
+                    }
+                    for (; j < n; ++j) {
+                        c[cRow + j] += aValue * packed[bRow + j];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.mnist;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 测试用的内存数据集: 第 i 个样本的每个像素都是 i, 标签为 i % 10, 由像素可以反推出样本下标。
+ */
+final class ArrayDataset implements Dataset {
+
+    private final int size;
+    private final int imageSize;
+
+    ArrayDataset(int size, int imageSize) {
+        if (size > 256) {
+            throw new IllegalArgumentException("sample index must fit in a pixel: " + size);
+        }
+        this.size = size;
+        this.imageSize = imageSize;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int imageSize() {
+        return imageSize;
+    }
+
+    @Override
+    public int label(int index) {
+        return index % 10;
+    }
+
+    @Override
+    public void copyImage(int index, double[] target, int offset) {
+        for (int i = 0; i < imageSize; ++i) {
+            target[offset + i] = index;
+        }
+    }
+
+    @Override
+    public void copyImage(int index, byte[] target, int offset) {
+        for (int i = 0; i < imageSize; ++i) {
+            target[offset + i] = (byte) index;
+        }
+    }
+
+    /**
+     * 读完 source 的一轮数据, 返回各批样本下标拼接成的序列, 同时检查像素与标签是否对应同一个样本。
+     */
+    static int[] drain(DataSource source, int batchSize, int[] batchSizes) throws IOException {
+        Batch batch = new Batch(batchSize, source.imageSize());
+        int[] indices = new int[256];
+        int count = 0;
+        int batches = 0;
+        while (source.next(batch)) {
+            if (batchSizes != null) {
+                batchSizes[batches] = batch.size();
+            }
+            ++batches;
+            for (int i = 0; i < batch.size(); ++i) {
+                int index = (int) batch.inputs()[i * batch.imageSize()];
+                if (batch.label(i) != index % 10) {
+                    throw new AssertionError("label " + batch.label(i) + " does not belong to sample " + index);
+                }
+                indices[count++] = index;
+            }
+        }
+        if (batch.size() != 0) {
+            throw new AssertionError("batch not cleared at end of epoch");
+        }
+        return Arrays.copyOf(indices, count);
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 检查点的读写和校验。网络为 20-8-5, 文件头中层数在偏移 12, 第一个激活函数序号在 28, 步数在 36,
+ * 数据块从偏移 4096 开始。
+ */
+class CheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    private final Network network = new Network(new int[]{20, 8, 5}, new Random(1));
+
+    private Path save() throws IOException {
+        Path path = directory.resolve("model.ckpt");
+        new Checkpoint(ModelSnapshot.of(network), "momentum", new double[]{1, 2, 3}, 42).save(path);
+        return path;
+    }
+
+    private static void patchInt(Path path, int offset, int value) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+        Files.write(path, bytes);
+    }
+
+    private static void assertSameParameters(Network expected, Network actual) {
+        assertArrayEquals(expected.layerUnitNums(), actual.layerUnitNums());
+        for (int l = 0; l < expected.layerCount(); ++l) {
+            assertArrayEquals(expected.layer(l).parameters(), actual.layer(l).parameters());
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Checkpoint checkpoint = Checkpoint.load(save());
+        assertEquals(42, checkpoint.step());
+        assertEquals("momentum", checkpoint.optimizer());
+        assertArrayEquals(new double[]{1, 2, 3}, checkpoint.optimizerState());
+        assertSameParameters(network, checkpoint.model().toNetwork());
+    }
+
+    @Test
+    void detectsCorruptData() throws IOException {
+        Path path = save();
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[4096 + 100] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> Checkpoint.load(path));
+    }
+
+    @Test
+    void detectsCorruptStep() throws IOException {
+        Path path = save();
+        patchInt(path, 36, 7);
+        assertThrows(IOException.class, () -> Checkpoint.load(path));
+    }
+
+    @Test
+    void rejectsInvalidLayerCount() throws IOException {
+        Path path = save();
+        patchInt(path, 12, 1 << 30);
+        assertThrows(IOException.class, () -> Checkpoint.load(path));
+    }
+
+    @Test
+    void rejectsInvalidActivation() throws IOException {
+        Path path = save();
+        patchInt(path, 28, 99);
+        assertThrows(IOException.class, () -> Checkpoint.load(path));
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        Path path = save();
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(IOException.class, () -> Checkpoint.load(path));
+    }
+
+    @Test
+    void rejectsFileLargerThanOneMapping() throws IOException {
+        Path path = save();
+        // 稀疏文件, 不占实际磁盘空间
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(Integer.MAX_VALUE + 1L);
+        }
+        IOException e = assertThrows(IOException.class, () -> Checkpoint.load(path));
+        assertTrue(e.getMessage().contains("exceeds"), e.getMessage());
+    }
+
+    @Test
+    void asyncCheckpointerWritesSubmittedCheckpoint() throws IOException {
+        Path path = directory.resolve("async.ckpt");
+        try (AsyncCheckpointer checkpointer = new AsyncCheckpointer(path)) {
+            assertTrue(checkpointer.submit(new Checkpoint(ModelSnapshot.of(network), 7)));
+        }
+        Checkpoint checkpoint = Checkpoint.load(path);
+        assertEquals(7, checkpoint.step());
+        assertSameParameters(network, checkpoint.model().toNetwork());
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.example.mnist.NumericalAssertions.FINITE_DIFFERENCE_STEP;
+import static org.example.mnist.NumericalAssertions.assertWithin;
+import static org.example.mnist.NumericalAssertions.matrixKernels;
+import static org.example.mnist.NumericalAssertions.randomBatch;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 卷积 → 池化 → 全连接网络的批量梯度与中心差分对比。
+ */
+class ConvNetworkGradientTest {
+
+    @Test
+    void gradientMatchesFiniteDifference() {
+        ConvNetwork network = new ConvNetwork(Seeds.of(1).initialization(),
+                new ConvolutionLayer(6, 6, 2, 3, 3, Activation.TANH),
+                new MaxPoolingLayer(4, 4, 3, 2),
+                new DenseLayer(12, 4, Activation.SOFTMAX));
+        Batch batch = randomBatch(new Random(5), 3, network.inputSize(), network.outputSize());
+        for (MatrixKernel kernel : matrixKernels()) {
+            BatchWorkspace workspace = network.newBatchWorkspace(kernel, batch.size());
+            workspace.loadBatch(batch, 0, batch.size());
+            Gradient expected = network.newGradient();
+            network.backPropagate(workspace, batch.size(), expected);
+            Gradient scratch = network.newGradient();
+            double error = 0;
+            for (int l = 0; l < network.layerCount(); ++l) {
+                double[] parameters = network.layer(l).parameters();
+                for (int k = 0; k < parameters.length; ++k) {
+                    double original = parameters[k];
+                    parameters[k] = original + FINITE_DIFFERENCE_STEP;
+                    double plus = network.backPropagate(workspace, batch.size(), scratch);
+                    parameters[k] = original - FINITE_DIFFERENCE_STEP;
+                    double minus = network.backPropagate(workspace, batch.size(), scratch);
+                    parameters[k] = original;
+                    double numerical = -(plus - minus) / (2 * FINITE_DIFFERENCE_STEP);
+                    error = Math.max(error, Math.abs(numerical - expected.values[l][k]));
+                }
+            }
+            assertWithin(1e-6, error, kernel.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    void rejectsSoftmaxBeforeOutputLayer() {
+        assertThrows(IllegalArgumentException.class, () -> new ConvNetwork(new Random(1),
+                new DenseLayer(8, 6, Activation.SOFTMAX),
+                new DenseLayer(6, 4, Activation.SOFTMAX)));
+    }
+}
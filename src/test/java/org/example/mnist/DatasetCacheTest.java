@@ -0,0 +1,116 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 缓存文件的内容与 IDX 资源一致, 与资源一致的缓存文件直接复用, 否则重新生成。
+ * 文件头偏移 24 到 64 是两个资源的字节数、修改时间和 CRC32, 偏移 64 起保留未用, 用来标记文件是否被重写。
+ */
+class DatasetCacheTest {
+
+    private static final String IMAGE_FILE = "data/t10k-images-idx3-ubyte.gz";
+    private static final String LABEL_FILE = "data/t10k-labels-idx1-ubyte.gz";
+    private static final int MARKER_OFFSET = 64;
+
+    @TempDir
+    Path cacheDir;
+
+    private Path cacheFile() {
+        return cacheDir.resolve(DatasetCache.cacheFileName(IMAGE_FILE, LABEL_FILE));
+    }
+
+    private void putLong(int offset, long value) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8).putLong(0, value);
+            channel.write(buffer, offset);
+        }
+    }
+
+    private long getLong(int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            channel.read(buffer, offset);
+            return buffer.getLong(0);
+        }
+    }
+
+    @Test
+    void matchesDecodedResources() throws IOException {
+        MappedDataset dataset = DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir);
+        try (DataInputStream images = IdxFiles.openResource(IMAGE_FILE);
+             DataInputStream labels = IdxFiles.openResource(LABEL_FILE)) {
+            int[] header = IdxFiles.readImageHeader(images);
+            assertEquals(IdxFiles.readLabelHeader(labels), header[0]);
+            assertEquals(header[0], dataset.size());
+            assertEquals(header[1] * header[2], dataset.imageSize());
+            byte[] expected = new byte[dataset.imageSize()];
+            double[] actual = new double[dataset.imageSize()];
+            for (int i = 0; i < dataset.size(); ++i) {
+                images.readFully(expected);
+                dataset.copyImage(i, actual, 0);
+                for (int j = 0; j < expected.length; ++j) {
+                    assertEquals(expected[j] & 0xff, actual[j], "image " + i + " pixel " + j);
+                }
+                assertEquals(labels.readUnsignedByte(), dataset.label(i), "label " + i);
+            }
+        }
+    }
+
+    @Test
+    void reusesExistingCache() throws IOException {
+        DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir);
+        putLong(MARKER_OFFSET, 1);
+        assertEquals(10000, DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir).size());
+        assertEquals(1, getLong(MARKER_OFFSET));
+    }
+
+    /**
+     * 依次改动文件头中记录的图像/标签资源的字节数、修改时间和 CRC32。
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {24, 32, 40, 48, 56})
+    void rebuildsWhenRecordedSourceDiffers(int offset) throws IOException {
+        DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir);
+        putLong(MARKER_OFFSET, 1);
+        putLong(offset, getLong(offset) ^ 1);
+        DatasetCache.Source image = DatasetCache.Source.of(IMAGE_FILE);
+        DatasetCache.Source label = DatasetCache.Source.of(LABEL_FILE);
+        assertFalse(DatasetCache.isCurrent(cacheFile(), image, label));
+
+        assertEquals(10000, DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir).size());
+        assertEquals(0, getLong(MARKER_OFFSET));
+        assertTrue(DatasetCache.isCurrent(cacheFile(), image, label));
+    }
+
+    @Test
+    void cacheFileNameDependsOnBothResourcePaths() {
+        String name = DatasetCache.cacheFileName(IMAGE_FILE, LABEL_FILE);
+        assertTrue(name.startsWith("t10k-images-idx3-ubyte-"), name);
+        assertNotEquals(name, DatasetCache.cacheFileName("other/t10k-images-idx3-ubyte.gz", LABEL_FILE));
+        assertNotEquals(name, DatasetCache.cacheFileName(IMAGE_FILE, "data/train-labels-idx1-ubyte.gz"));
+    }
+
+    @Test
+    void rebuildsTruncatedCache() throws IOException {
+        DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir);
+        try (FileChannel channel = FileChannel.open(cacheFile(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        assertEquals(10000, DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir).size());
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class DatasetSourceTest {
+
+    private static int[] identity(int size) {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; ++i) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    @Test
+    void endsWithPartialBatch() throws IOException {
+        int[] batchSizes = new int[4];
+        int[] indices = ArrayDataset.drain(new DatasetSource(new ArrayDataset(23, 3), null), 10, batchSizes);
+        assertArrayEquals(identity(23), indices);
+        assertArrayEquals(new int[]{10, 10, 3, 0}, batchSizes);
+    }
+
+    @Test
+    void seededShuffleIsReproduciblePermutation() throws IOException {
+        int[] first = ArrayDataset.drain(new DatasetSource(new ArrayDataset(23, 3), new Random(7)), 10, null);
+        int[] second = ArrayDataset.drain(new DatasetSource(new ArrayDataset(23, 3), new Random(7)), 10, null);
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(identity(23), first));
+        int[] sorted = first.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(identity(23), sorted);
+    }
+
+    @Test
+    void resetReshuffles() throws IOException {
+        DatasetSource source = new DatasetSource(new ArrayDataset(23, 3), new Random(7));
+        int[] first = ArrayDataset.drain(source, 10, null);
+        source.reset();
+        int[] second = ArrayDataset.drain(source, 10, null);
+        assertFalse(Arrays.equals(first, second));
+        Arrays.sort(second);
+        assertArrayEquals(identity(23), second);
+    }
+}
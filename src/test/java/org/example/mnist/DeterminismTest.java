@@ -0,0 +1,136 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.example.mnist.NumericalAssertions.maxDifference;
+import static org.example.mnist.NumericalAssertions.randomBatch;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 同一种子的初始化相同; 并行训练的结果与线程数无关。
+ */
+class DeterminismTest {
+
+    private static final int[] LAYER_UNIT_NUMS = {20, 8, 5};
+
+    @Test
+    void seededInitializationIsRepeatable() {
+        Network first = new Network(LAYER_UNIT_NUMS, Seeds.of(1).initialization());
+        Network second = new Network(LAYER_UNIT_NUMS, Seeds.of(1).initialization());
+        for (int l = 0; l < first.layerCount(); ++l) {
+            assertArrayEquals(first.layer(l).parameters(), second.layer(l).parameters());
+        }
+    }
+
+    @Test
+    void parallelTrainingIsIndependentOfThreadCount() {
+        Network initial = new Network(LAYER_UNIT_NUMS, Seeds.of(1).initialization());
+        Batch batch = randomBatch(new Random(5), 10, 20, 5);
+        for (MatrixKernel kernel : new MatrixKernel[]{null, Kernels.matrixKernel()}) {
+            Network serial = initial.copy();
+            Network parallel = initial.copy();
+            ForkJoinPool single = new ForkJoinPool(1);
+            ForkJoinPool pool = new ForkJoinPool(3);
+            try {
+                ParallelTrainer serialTrainer = new ParallelTrainer(serial, single, 4, kernel);
+                ParallelTrainer parallelTrainer = new ParallelTrainer(parallel, pool, 4, kernel);
+                Optimizer serialOptimizer = new AdamOptimizer(LearningRateSchedule.constant(0.01));
+                Optimizer parallelOptimizer = new AdamOptimizer(LearningRateSchedule.constant(0.01));
+                for (int step = 0; step < 20; ++step) {
+                    serialTrainer.trainBatch(batch, serialOptimizer);
+                    parallelTrainer.trainBatch(batch, parallelOptimizer);
+                }
+            } finally {
+                single.shutdown();
+                pool.shutdown();
+            }
+            for (int l = 0; l < serial.layerCount(); ++l) {
+                assertEquals(0, maxDifference(serial.layer(l).parameters(), parallel.layer(l).parameters()),
+                        kernel == null ? "per-sample" : kernel.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    void floatParallelTrainingMatchesSerialFloatTraining() {
+        Network initial = new Network(LAYER_UNIT_NUMS, Seeds.of(1).initialization());
+        Batch batch = randomBatch(new Random(5), 10, 20, 5);
+        for (MatrixKernel kernel : new MatrixKernel[]{null, Kernels.matrixKernel()}) {
+            FloatNetwork serial = new FloatNetwork(initial);
+            FloatNetwork parallel = new FloatNetwork(initial);
+            ForkJoinPool single = new ForkJoinPool(1);
+            ForkJoinPool pool = new ForkJoinPool(3);
+            try {
+                ParallelTrainer serialTrainer = new ParallelTrainer(serial, single, 4, kernel, null);
+                ParallelTrainer parallelTrainer = new ParallelTrainer(parallel, pool, 4, kernel, null);
+                for (int step = 0; step < 20; ++step) {
+                    serialTrainer.trainBatch(batch, 0.1);
+                    parallelTrainer.trainBatch(batch, 0.1);
+                }
+            } finally {
+                single.shutdown();
+                pool.shutdown();
+            }
+            Network expected = serial.toNetwork();
+            Network actual = parallel.toNetwork();
+            for (int l = 0; l < expected.layerCount(); ++l) {
+                assertEquals(0, maxDifference(expected.layer(l).parameters(), actual.layer(l).parameters()),
+                        kernel == null ? "per-sample" : kernel.getClass().getSimpleName());
+                // 训练确实改变了参数
+                assertNotEquals(0, maxDifference(initial.layer(l).parameters(), actual.layer(l).parameters()));
+            }
+        }
+    }
+
+    @Test
+    void defaultChunkCountIsIndependentOfPool() {
+        Network initial = new Network(LAYER_UNIT_NUMS, Seeds.of(1).initialization());
+        Batch batch = randomBatch(new Random(5), 10, 20, 5);
+        Network small = initial.copy();
+        Network large = initial.copy();
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            ParallelTrainer smallTrainer = new ParallelTrainer(small, single, null);
+            ParallelTrainer largeTrainer = new ParallelTrainer(large, pool, null);
+            assertEquals(ParallelTrainer.DEFAULT_CHUNK_COUNT, smallTrainer.chunkCount());
+            assertEquals(ParallelTrainer.DEFAULT_CHUNK_COUNT, largeTrainer.chunkCount());
+            for (int step = 0; step < 5; ++step) {
+                smallTrainer.trainBatch(batch, 0.5);
+                largeTrainer.trainBatch(batch, 0.5);
+            }
+        } finally {
+            single.shutdown();
+            pool.shutdown();
+        }
+        for (int l = 0; l < small.layerCount(); ++l) {
+            assertEquals(0, maxDifference(small.layer(l).parameters(), large.layer(l).parameters()));
+        }
+    }
+
+    @Test
+    void batchSmallerThanChunkCountUsesOneChunkPerSample() {
+        Network initial = new Network(LAYER_UNIT_NUMS, Seeds.of(1).initialization());
+        Batch batch = randomBatch(new Random(5), 3, 20, 5);
+        Network bounded = initial.copy();
+        Network exact = initial.copy();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Optimizer boundedOptimizer = new SgdOptimizer(0.5);
+            Optimizer exactOptimizer = new SgdOptimizer(0.5);
+            double boundedLoss = new ParallelTrainer(bounded, pool, 8, null).trainBatch(batch, boundedOptimizer);
+            double exactLoss = new ParallelTrainer(exact, pool, 3, null).trainBatch(batch, exactOptimizer);
+            assertEquals(exactLoss, boundedLoss, 0);
+        } finally {
+            pool.shutdown();
+        }
+        for (int l = 0; l < bounded.layerCount(); ++l) {
+            assertEquals(0, maxDifference(bounded.layer(l).parameters(), exact.layer(l).parameters()));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用 23 个 2x2 的样本 (像素为样本下标, 同 {@link ArrayDataset}) 写出未压缩的 IDX 文件。
+ */
+class IdxStreamSourceTest {
+
+    private static final int COUNT = 23;
+    private static final int IMAGE_SIZE = 4;
+
+    @TempDir
+    Path directory;
+
+    private String images;
+    private String labels;
+
+    @BeforeEach
+    void writeIdxFiles() throws IOException {
+        Path imageFile = directory.resolve("images-idx3-ubyte");
+        Path labelFile = directory.resolve("labels-idx1-ubyte");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(imageFile))) {
+            out.writeInt(IdxFiles.IMAGE_MAGIC);
+            out.writeInt(COUNT);
+            out.writeInt(2);
+            out.writeInt(2);
+            for (int i = 0; i < COUNT; ++i) {
+                for (int j = 0; j < IMAGE_SIZE; ++j) {
+                    out.writeByte(i);
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(labelFile))) {
+            out.writeInt(IdxFiles.LABEL_MAGIC);
+            out.writeInt(COUNT);
+            for (int i = 0; i < COUNT; ++i) {
+                out.writeByte(i % 10);
+            }
+        }
+        images = imageFile.toString();
+        labels = labelFile.toString();
+    }
+
+    private static void assertPermutation(int[] indices) {
+        int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < COUNT; ++i) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    @Test
+    void readsInFileOrderWithPartialBatch() throws IOException {
+        try (IdxStreamSource source = new IdxStreamSource(images, labels, 1 << 20, null)) {
+            int[] batchSizes = new int[4];
+            int[] indices = ArrayDataset.drain(source, 10, batchSizes);
+            assertArrayEquals(new int[]{10, 10, 3, 0}, batchSizes);
+            for (int i = 0; i < COUNT; ++i) {
+                assertEquals(i, indices[i]);
+            }
+        }
+    }
+
+    @Test
+    void shuffleBufferEmitsEverySampleOnce() throws IOException {
+        try (IdxStreamSource source = new IdxStreamSource(images, labels, 1 << 20, new Random(3))) {
+            int[] indices = ArrayDataset.drain(source, 10, null);
+            assertPermutation(indices);
+            source.reset();
+            int[] second = ArrayDataset.drain(source, 10, null);
+            assertPermutation(second);
+            assertFalse(Arrays.equals(indices, second));
+        }
+    }
+
+    @Test
+    void seededShuffleIsReproducible() throws IOException {
+        try (IdxStreamSource first = new IdxStreamSource(images, labels, 1 << 20, new Random(3));
+             IdxStreamSource second = new IdxStreamSource(images, labels, 1 << 20, new Random(3))) {
+            assertArrayEquals(ArrayDataset.drain(first, 10, null), ArrayDataset.drain(second, 10, null));
+        }
+    }
+
+    @Test
+    void memoryCapBoundsShuffleWindow() throws IOException {
+        int bufferSamples = 4;
+        try (IdxStreamSource source = new IdxStreamSource(images, labels, bufferSamples * IMAGE_SIZE, new Random(3))) {
+            int[] indices = ArrayDataset.drain(source, 10, null);
+            assertPermutation(indices);
+            // 缓冲区只有 4 个样本, 第 k 个输出只能来自前 k + 4 条记录
+            for (int k = 0; k < indices.length; ++k) {
+                assertTrue(indices[k] < k + bufferSamples, "sample " + indices[k] + " emitted at " + k);
+            }
+        }
+    }
+
+    @Test
+    void rejectsMismatchedLabelCount() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve("labels-idx1-ubyte")))) {
+            out.writeInt(IdxFiles.LABEL_MAGIC);
+            out.writeInt(COUNT - 1);
+        }
+        assertThrows(IOException.class, () -> new IdxStreamSource(images, labels, 1 << 20, new Random(1)));
+    }
+
+    @Test
+    void rejectsTruncatedImageFile() throws IOException {
+        Path imageFile = directory.resolve("images-idx3-ubyte");
+        byte[] bytes = Files.readAllBytes(imageFile);
+        Files.write(imageFile, Arrays.copyOf(bytes, bytes.length - IMAGE_SIZE * 3));
+        // 缓冲区能装下整个数据集, 构造时就读到文件末尾
+        assertThrows(IOException.class, () -> new IdxStreamSource(images, labels, 1 << 20, new Random(1)));
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多线程分块推理与逐个样本的 {@link Network#classify} 结果一致。样本数 37 不是块大小 8 的倍数。
+ */
+class InferenceEngineTest {
+
+    private static final int COUNT = 37;
+    private static final int INPUT_SIZE = 6;
+
+    private final Network network = new Network(new int[]{INPUT_SIZE, 5, 4}, new Random(1));
+    private final ForkJoinPool pool = new ForkJoinPool(3);
+    private final InferenceEngine engine = new InferenceEngine(ModelSnapshot.of(network), pool, Kernels.matrixKernel(), 8);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static byte[] randomImages() {
+        byte[] images = new byte[COUNT * INPUT_SIZE];
+        new Random(2).nextBytes(images);
+        return images;
+    }
+
+    private int[] expectedLabels(byte[] images) {
+        Workspace workspace = network.newWorkspace();
+        int[] labels = new int[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            labels[i] = network.classify(Arrays.copyOfRange(images, i * INPUT_SIZE, (i + 1) * INPUT_SIZE), workspace);
+        }
+        return labels;
+    }
+
+    @Test
+    void classifyMatchesPerSampleNetwork() {
+        byte[] images = randomImages();
+        int[] expected = expectedLabels(images);
+        assertArrayEquals(expected, engine.classify(images, COUNT));
+        assertArrayEquals(expected, engine.classify(ByteBuffer.wrap(images), COUNT));
+    }
+
+    @Test
+    void predictAgreesWithClassify() {
+        byte[] images = randomImages();
+        int[] labels = engine.classify(images, COUNT);
+        Prediction[] predictions = engine.predict(images, COUNT, 3);
+        assertEquals(COUNT, predictions.length);
+        for (int i = 0; i < COUNT; ++i) {
+            assertEquals(labels[i], predictions[i].label());
+            assertEquals(3, predictions[i].size());
+            for (int rank = 1; rank < 3; ++rank) {
+                assertTrue(predictions[i].probabilityAt(rank) <= predictions[i].probabilityAt(rank - 1));
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidK() {
+        byte[] images = randomImages();
+        assertThrows(IllegalArgumentException.class, () -> engine.predict(images, COUNT, 0));
+        assertThrows(IllegalArgumentException.class, () -> engine.predict(images, COUNT, 5));
+    }
+
+    @Test
+    void accuracyCountsMatchingLabels() {
+        Dataset dataset = new ArrayDataset(COUNT, INPUT_SIZE);
+        int[] labels = engine.classify(dataset);
+        int correct = 0;
+        Workspace workspace = network.newWorkspace();
+        for (int i = 0; i < COUNT; ++i) {
+            assertEquals(network.classify(dataset, i, workspace), labels[i]);
+            if (labels[i] == dataset.label(i)) {
+                ++correct;
+            }
+        }
+        assertEquals(1.0 * correct / COUNT, engine.accuracy(dataset), 1e-12);
+    }
+
+    @Test
+    void accuracyOfEmptyDatasetIsZero() {
+        assertEquals(0, engine.accuracy(new ArrayDataset(0, INPUT_SIZE)));
+    }
+
+    @Test
+    void tanhOutputProbabilitiesSumToOne() {
+        Network tanhNetwork = new Network(new int[]{INPUT_SIZE, 5, 4},
+                new Activation[]{Activation.TANH, Activation.TANH}, new Random(3));
+        InferenceEngine tanhEngine = new InferenceEngine(ModelSnapshot.of(tanhNetwork), pool, Kernels.matrixKernel(), 8);
+        for (Prediction prediction : tanhEngine.predict(randomImages(), COUNT, 4)) {
+            double total = 0;
+            for (int rank = 0; rank < 4; ++rank) {
+                assertTrue(prediction.probabilityAt(rank) > 0);
+                total += prediction.probabilityAt(rank);
+            }
+            assertEquals(1, total, 1e-12);
+        }
+    }
+
+    @Test
+    void floatEngineMatchesFloatNetwork() {
+        byte[] images = randomImages();
+        FloatNetwork floatNetwork = new FloatNetwork(network);
+        FloatWorkspace workspace = floatNetwork.newWorkspace();
+        int[] expected = new int[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            expected[i] = floatNetwork.classify(Arrays.copyOfRange(images, i * INPUT_SIZE, (i + 1) * INPUT_SIZE), workspace);
+        }
+        InferenceEngine floatEngine = new InferenceEngine(ModelSnapshot.of(network), pool, Kernels.matrixKernel(), 8,
+                Precision.FLOAT);
+        assertArrayEquals(expected, floatEngine.classify(images, COUNT));
+        assertArrayEquals(expected, floatEngine.classify(ByteBuffer.wrap(images), COUNT));
+        Prediction[] predictions = floatEngine.predict(images, COUNT, 2);
+        for (int i = 0; i < COUNT; ++i) {
+            assertEquals(expected[i], predictions[i].label());
+        }
+        Dataset dataset = new ArrayDataset(COUNT, INPUT_SIZE);
+        assertEquals(engine.accuracy(dataset), floatEngine.accuracy(dataset), 1e-12);
+    }
+}
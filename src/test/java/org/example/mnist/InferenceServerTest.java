@@ -0,0 +1,172 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 请求体大小的限制: queueCapacity * maxBatchSize 个 20 字节的图像加上 16 字节的 IDX 头, 即 176 字节。
+ */
+class InferenceServerTest {
+
+    private ModelSnapshot model;
+    private InferenceServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        model = ModelSnapshot.of(new Network(new int[]{20, 8, 5}, new Random(1)));
+        server = new InferenceServer(model, new InetSocketAddress("127.0.0.1", 0), 1, TimeUnit.MILLISECONDS, 4, 2);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    /**
+     * 返回状态码和响应体。
+     */
+    private String[] request(String method, String path, byte[] body) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.address().getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            if (in != null) {
+                try (InputStream stream = in) {
+                    byte[] buffer = new byte[1024];
+                    int n;
+                    while ((n = stream.read(buffer)) > 0) {
+                        text.write(buffer, 0, n);
+                    }
+                }
+            }
+            return new String[]{String.valueOf(status), new String(text.toByteArray(), StandardCharsets.UTF_8)};
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private int post(int bodyBytes, boolean chunked) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.address().getPort() + "/predict");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        if (chunked) {
+            connection.setChunkedStreamingMode(64);
+        } else {
+            connection.setFixedLengthStreamingMode(bodyBytes);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(new byte[bodyBytes]);
+        } catch (IOException e) {
+            // 服务端可能在读完请求体之前就已经回复并关闭连接
+        }
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] images(int count) {
+        byte[] images = new byte[count * 20];
+        new Random(2).nextBytes(images);
+        return images;
+    }
+
+    private String expectedLabels(byte[] images, int count) {
+        StringBuilder labels = new StringBuilder();
+        for (int label : new InferenceEngine(model).classify(images, count)) {
+            labels.append(label).append(',');
+        }
+        return labels.toString();
+    }
+
+    private static String labelsOf(String json) {
+        StringBuilder labels = new StringBuilder();
+        int at = 0;
+        while ((at = json.indexOf("\"label\":", at)) >= 0) {
+            at += "\"label\":".length();
+            labels.append(json.charAt(at)).append(',');
+        }
+        return labels.toString();
+    }
+
+    @Test
+    void predictsRawImagesAcrossSeveralBatches() throws IOException {
+        // 7 个图像超过 maxBatchSize = 4, 拆成两批提交
+        byte[] body = images(7);
+        String[] response = request("POST", "/predict?k=2", body);
+        assertEquals("200", response[0]);
+        assertEquals(expectedLabels(body, 7), labelsOf(response[1]));
+        assertTrue(response[1].contains("\"classes\":["));
+    }
+
+    @Test
+    void predictsIdxImages() throws IOException {
+        byte[] pixels = images(3);
+        ByteBuffer body = ByteBuffer.allocate(16 + pixels.length);
+        body.putInt(0x00000803).putInt(3).putInt(4).putInt(5).put(pixels);
+        String[] response = request("POST", "/predict", body.array());
+        assertEquals("200", response[0]);
+        assertEquals(expectedLabels(pixels, 3), labelsOf(response[1]));
+    }
+
+    @Test
+    void rejectsMalformedRequests() throws IOException {
+        assertEquals("400", request("POST", "/predict", new byte[21])[0]);
+        assertEquals("400", request("POST", "/predict?k=6", new byte[20])[0]);
+        assertEquals("405", request("GET", "/predict", null)[0]);
+    }
+
+    @Test
+    void metricsCountRequests() throws IOException {
+        request("POST", "/predict", images(2));
+        request("POST", "/predict", images(1));
+        String metrics = request("GET", "/metrics", null)[1];
+        assertTrue(metrics.contains("requests_total 2\n"), metrics);
+        assertTrue(metrics.contains("images_total 3\n"), metrics);
+        assertTrue(metrics.contains("queue_depth 0\n"), metrics);
+    }
+
+    @Test
+    void acceptsBodiesWithinLimit() throws IOException {
+        assertEquals(200, post(20 * 8, false));
+    }
+
+    @Test
+    void rejectsOversizedContentLength() throws IOException {
+        assertEquals(413, post(20 * 9, false));
+    }
+
+    @Test
+    void rejectsOversizedChunkedBody() throws IOException {
+        assertEquals(413, post(20 * 9, true));
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.example.mnist.NumericalAssertions.assertWithin;
+import static org.example.mnist.NumericalAssertions.matrixKernels;
+import static org.example.mnist.NumericalAssertions.maxDifference;
+import static org.example.mnist.NumericalAssertions.randomArray;
+
+/**
+ * 优化过的 {@link MatrixKernel} / {@link VectorOps} 实现与标量参考实现对比, {@link FastSigmoid} 与精确值对比。
+ */
+class KernelConsistencyTest {
+
+    private final Random random = new Random(1);
+
+    /**
+     * 各种形状 (包括不整除分块大小的) 和转置组合下 C = alpha * op(A) * op(B) + beta * C。
+     */
+    @Test
+    void gemmMatchesScalarKernel() {
+        MatrixKernel reference = new ScalarKernel();
+        int[][] shapes = {{1, 1, 1}, {3, 5, 7}, {10, 30, 784}, {64, 10, 30}, {37, 71, 129}, {128, 96, 64}};
+        for (MatrixKernel kernel : matrixKernels()) {
+            double error = 0;
+            for (int[] shape : shapes) {
+                int m = shape[0];
+                int n = shape[1];
+                int k = shape[2];
+                for (int variant = 0; variant < 4; ++variant) {
+                    boolean transposeA = (variant & 1) != 0;
+                    boolean transposeB = (variant & 2) != 0;
+                    double[] a = randomArray(random, m * k);
+                    double[] b = randomArray(random, k * n);
+                    double[] c = randomArray(random, m * n);
+                    double[] expected = c.clone();
+                    double beta = variant == 3 ? 0 : 0.5;
+                    reference.gemm(transposeA, transposeB, m, n, k, 1.5, a, transposeA ? m : k, b, transposeB ? k : n,
+                            beta, expected, n);
+                    kernel.gemm(transposeA, transposeB, m, n, k, 1.5, a, transposeA ? m : k, b, transposeB ? k : n,
+                            beta, c, n);
+                    // 求和顺序不同, 误差随 k 增长
+                    error = Math.max(error, maxDifference(expected, c) / Math.sqrt(k));
+                }
+            }
+            assertWithin(1e-12, error, kernel.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    void floatGemmMatchesDoubleGemm() {
+        MatrixKernel reference = new ScalarKernel();
+        int[][] shapes = {{1, 1, 1}, {3, 5, 7}, {10, 30, 784}, {37, 71, 129}};
+        for (MatrixKernel kernel : matrixKernels()) {
+            double error = 0;
+            for (int[] shape : shapes) {
+                int m = shape[0];
+                int n = shape[1];
+                int k = shape[2];
+                for (int variant = 0; variant < 4; ++variant) {
+                    boolean transposeA = (variant & 1) != 0;
+                    boolean transposeB = (variant & 2) != 0;
+                    float[] a = randomFloats(m * k);
+                    float[] b = randomFloats(k * n);
+                    float[] c = randomFloats(m * n);
+                    double[] expected = widen(c);
+                    float beta = variant == 3 ? 0 : 0.5f;
+                    reference.gemm(transposeA, transposeB, m, n, k, 1.5, widen(a), transposeA ? m : k,
+                            widen(b), transposeB ? k : n, beta, expected, n);
+                    kernel.gemm(transposeA, transposeB, m, n, k, 1.5f, a, transposeA ? m : k, b, transposeB ? k : n,
+                            beta, c, n);
+                    error = Math.max(error, maxDifference(expected, widen(c)) / Math.sqrt(k));
+                }
+            }
+            assertWithin(1e-5, error, kernel.getClass().getSimpleName());
+        }
+    }
+
+    private float[] randomFloats(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; ++i) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    private static double[] widen(float[] values) {
+        double[] widened = new double[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            widened[i] = values[i];
+        }
+        return widened;
+    }
+
+    @Test
+    void vectorOpsMatchScalarVectorOps() {
+        VectorOps reference = new ScalarVectorOps();
+        VectorOps ops = Kernels.vectorOps();
+        double doubleError = 0;
+        double floatError = 0;
+        for (int length : new int[]{1, 3, 8, 17, 31, 784}) {
+            double[] a = randomArray(random, length + 2);
+            double[] b = randomArray(random, length + 2);
+            doubleError = Math.max(doubleError, Math.abs(reference.dot(a, 1, b, 2, length) - ops.dot(a, 1, b, 2, length))
+                    / Math.sqrt(length));
+            double[] expected = b.clone();
+            double[] actual = b.clone();
+            reference.axpy(0.7, a, 1, expected, 2, length);
+            ops.axpy(0.7, a, 1, actual, 2, length);
+            doubleError = Math.max(doubleError, maxDifference(expected, actual));
+            expected = a.clone();
+            actual = a.clone();
+            reference.sigmoid(expected, 1, length);
+            ops.sigmoid(actual, 1, length);
+            doubleError = Math.max(doubleError, maxDifference(expected, actual));
+
+            float[] fa = new float[length];
+            float[] fb = new float[length];
+            for (int i = 0; i < length; ++i) {
+                fa[i] = (float) a[i];
+                fb[i] = (float) b[i];
+            }
+            floatError = Math.max(floatError, Math.abs(reference.dot(fa, 0, fb, 0, length) - ops.dot(fa, 0, fb, 0, length))
+                    / Math.sqrt(length));
+            float[] fExpected = fb.clone();
+            float[] fActual = fb.clone();
+            reference.axpy(0.7f, fa, 0, fExpected, 0, length);
+            ops.axpy(0.7f, fa, 0, fActual, 0, length);
+            for (int i = 0; i < length; ++i) {
+                floatError = Math.max(floatError, Math.abs(fExpected[i] - fActual[i]));
+            }
+            fExpected = fa.clone();
+            fActual = fa.clone();
+            reference.sigmoid(fExpected, 0, length);
+            ops.sigmoid(fActual, 0, length);
+            for (int i = 0; i < length; ++i) {
+                floatError = Math.max(floatError, Math.abs(fExpected[i] - fActual[i]));
+            }
+        }
+        String name = ops.getClass().getSimpleName();
+        assertWithin(1e-12, doubleError, "double " + name);
+        assertWithin(1e-5, floatError, "float " + name);
+    }
+
+    @Test
+    void fastSigmoidMatchesExactSigmoid() {
+        double error = 0;
+        for (double x = -40; x <= 40; x += 1e-3) {
+            error = Math.max(error, Math.abs(FastSigmoid.value(x) - 1 / (1 + Math.exp(-x))));
+        }
+        assertWithin(1e-6, error, "FastSigmoid");
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LearningRateScheduleTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    void constant() {
+        LearningRateSchedule schedule = LearningRateSchedule.constant(0.3);
+        assertEquals(0.3, schedule.rate(0), TOLERANCE);
+        assertEquals(0.3, schedule.rate(1_000_000), TOLERANCE);
+    }
+
+    @Test
+    void stepDecay() {
+        LearningRateSchedule schedule = LearningRateSchedule.step(0.4, 0.5, 100);
+        assertEquals(0.4, schedule.rate(0), TOLERANCE);
+        assertEquals(0.4, schedule.rate(99), TOLERANCE);
+        assertEquals(0.2, schedule.rate(100), TOLERANCE);
+        assertEquals(0.1, schedule.rate(250), TOLERANCE);
+        assertThrows(IllegalArgumentException.class, () -> LearningRateSchedule.step(0.4, 0.5, 0));
+    }
+
+    @Test
+    void cosineAnnealing() {
+        LearningRateSchedule schedule = LearningRateSchedule.cosine(0.5, 0.1, 1000);
+        assertEquals(0.5, schedule.rate(0), TOLERANCE);
+        // 中点是两者的平均值
+        assertEquals(0.3, schedule.rate(500), TOLERANCE);
+        // 四分之一处: 0.1 + 0.2 * (1 + cos(pi / 4))
+        assertEquals(0.1 + 0.2 * (1 + Math.sqrt(0.5)), schedule.rate(250), TOLERANCE);
+        assertEquals(0.1, schedule.rate(1000), TOLERANCE);
+        assertEquals(0.1, schedule.rate(5000), TOLERANCE);
+        assertThrows(IllegalArgumentException.class, () -> LearningRateSchedule.cosine(0.5, 0.1, 0));
+    }
+}
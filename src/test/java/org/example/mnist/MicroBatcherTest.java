@@ -0,0 +1,89 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MicroBatcherTest {
+
+    private static final ModelSnapshot MODEL = ModelSnapshot.of(new Network(new int[]{20, 8, 5}, new Random(1)));
+
+    @Test
+    void resultsMatchInferenceEngine() throws Exception {
+        byte[] images = new byte[30 * 20];
+        new Random(2).nextBytes(images);
+        int[] expected = new InferenceEngine(MODEL).classify(images, 30);
+        try (MicroBatcher batcher = new MicroBatcher(MODEL, Kernels.matrixKernel(), 5, TimeUnit.MILLISECONDS, 8, 64)) {
+            List<CompletableFuture<Prediction[]>> futures = new ArrayList<>();
+            for (int s = 0; s < 30; s += 3) {
+                futures.add(batcher.submit(images, s * 20, 3, 2));
+            }
+            for (int r = 0; r < futures.size(); ++r) {
+                Prediction[] predictions = futures.get(r).get(10, TimeUnit.SECONDS);
+                assertEquals(3, predictions.length);
+                for (int i = 0; i < 3; ++i) {
+                    assertEquals(expected[r * 3 + i], predictions[i].label());
+                    assertEquals(2, predictions[i].size());
+                }
+            }
+            // 请求被合并成批, 每批最多 8 个图像
+            assertEquals(30, batcher.batchedImages());
+        }
+    }
+
+    @Test
+    void rejectsInvalidRequests() {
+        try (MicroBatcher batcher = new MicroBatcher(MODEL, Kernels.matrixKernel(), 1, TimeUnit.MILLISECONDS, 4, 4)) {
+            assertThrows(IllegalArgumentException.class, () -> batcher.submit(new byte[100], 0, 5, 1));
+            assertThrows(IllegalArgumentException.class, () -> batcher.submit(new byte[20], 0, 1, 6));
+        }
+    }
+
+    @Test
+    void rejectsSubmitAfterClose() {
+        MicroBatcher batcher = new MicroBatcher(MODEL, Kernels.matrixKernel(), 1, TimeUnit.MILLISECONDS, 4, 4);
+        batcher.close();
+        assertThrows(RejectedExecutionException.class, () -> batcher.submit(new byte[20], 0, 1, 1));
+    }
+
+    @Test
+    void submitRacingCloseNeverLeavesFutureIncomplete() throws Exception {
+        for (int round = 0; round < 50; ++round) {
+            MicroBatcher batcher = new MicroBatcher(MODEL, Kernels.matrixKernel(), 0, TimeUnit.MILLISECONDS, 4, 1024);
+            List<CompletableFuture<Prediction[]>> futures = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                try {
+                    while (true) {
+                        futures.add(batcher.submit(new byte[20], 0, 1, 1));
+                    }
+                } catch (RejectedExecutionException e) {
+                    // 关闭后被拒绝
+                }
+            });
+            submitter.start();
+            Thread.sleep(1);
+            batcher.close();
+            submitter.join(10_000);
+            assertFalse(submitter.isAlive());
+            for (CompletableFuture<Prediction[]> future : futures) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertInstanceOf(RejectedExecutionException.class, e.getCause());
+                }
+            }
+            assertEquals(0, batcher.queuedImages());
+        }
+    }
+}
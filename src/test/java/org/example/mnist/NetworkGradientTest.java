@@ -0,0 +1,140 @@
+package org.example.mnist;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.example.mnist.NumericalAssertions.FINITE_DIFFERENCE_STEP;
+import static org.example.mnist.NumericalAssertions.assertWithin;
+import static org.example.mnist.NumericalAssertions.matrixKernels;
+import static org.example.mnist.NumericalAssertions.maxAbs;
+import static org.example.mnist.NumericalAssertions.maxDifference;
+import static org.example.mnist.NumericalAssertions.randomBatch;
+
+/**
+ * 全连接网络的逐样本反向传播与中心差分对比, 批量 (各矩阵内核) 和单精度 (逐样本与批量) 的梯度与逐样本的双精度梯度对比。
+ */
+class NetworkGradientTest {
+
+    static Stream<Arguments> configurations() {
+        return Stream.of(
+                Arguments.of(new int[]{20, 7, 5}, new Activation[]{Activation.SIGMOID, Activation.SIGMOID}),
+                Arguments.of(new int[]{20, 7, 5}, new Activation[]{Activation.RELU, Activation.SOFTMAX}),
+                Arguments.of(new int[]{20, 7, 5}, new Activation[]{Activation.TANH, Activation.LEAKY_RELU}),
+                Arguments.of(new int[]{20, 7, 5}, new Activation[]{Activation.FAST_SIGMOID, Activation.SIGMOID}),
+                Arguments.of(new int[]{20, 7, 6, 5},
+                        new Activation[]{Activation.LEAKY_RELU, Activation.TANH, Activation.SOFTMAX}));
+    }
+
+    private static Network network(int[] layerUnitNums, Activation[] activations) {
+        Network network = new Network(layerUnitNums, activations, Seeds.of(1).initialization());
+        // 缩小权重, 避免 sigmoid 饱和后梯度过小, 检查失去意义
+        for (int l = 0; l < network.layerCount(); ++l) {
+            double[] parameters = network.layer(l).parameters();
+            for (int k = 0; k < parameters.length; ++k) {
+                parameters[k] *= 0.3;
+            }
+        }
+        return network;
+    }
+
+    private static Batch batch(Network network) {
+        return randomBatch(new Random(5), 4, network.inputSize(), network.outputSize());
+    }
+
+    private static double perSampleLoss(Network network, Batch batch, Workspace workspace, Gradient gradient) {
+        double loss = 0;
+        for (int s = 0; s < batch.size(); ++s) {
+            loss += network.backPropagate(batch, s, workspace, gradient);
+        }
+        return loss;
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void gradientMatchesFiniteDifference(int[] layerUnitNums, Activation[] activations) {
+        Network network = network(layerUnitNums, activations);
+        Batch batch = batch(network);
+        Workspace workspace = network.newWorkspace();
+        Gradient expected = network.newGradient();
+        perSampleLoss(network, batch, workspace, expected);
+
+        // Gradient 中是负梯度, 即 parameters += scale * gradient 使损失下降
+        Gradient scratch = network.newGradient();
+        double error = 0;
+        for (int l = 0; l < network.layerCount(); ++l) {
+            double[] parameters = network.layer(l).parameters();
+            for (int k = 0; k < parameters.length; ++k) {
+                double original = parameters[k];
+                parameters[k] = original + FINITE_DIFFERENCE_STEP;
+                double plus = perSampleLoss(network, batch, workspace, scratch);
+                parameters[k] = original - FINITE_DIFFERENCE_STEP;
+                double minus = perSampleLoss(network, batch, workspace, scratch);
+                parameters[k] = original;
+                double numerical = -(plus - minus) / (2 * FINITE_DIFFERENCE_STEP);
+                error = Math.max(error, Math.abs(numerical - expected.values[l][k]));
+            }
+        }
+        // FAST_SIGMOID 的差分量到的是查表线性插值的斜率, 与解析导数 y(1-y) 的差距取决于表的间距
+        boolean table = Arrays.asList(activations).contains(Activation.FAST_SIGMOID);
+        assertWithin(table ? 1e-3 : 1e-6, error, "finite difference " + Arrays.toString(activations));
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void batchedGradientMatchesPerSample(int[] layerUnitNums, Activation[] activations) {
+        Network network = network(layerUnitNums, activations);
+        Batch batch = batch(network);
+        Gradient expected = network.newGradient();
+        perSampleLoss(network, batch, network.newWorkspace(), expected);
+        for (MatrixKernel kernel : matrixKernels()) {
+            Gradient batched = network.newGradient();
+            BatchWorkspace workspace = network.newBatchWorkspace(kernel, batch.size());
+            workspace.loadBatch(batch, 0, batch.size());
+            network.backPropagate(workspace, batch.size(), batched);
+            assertWithin(1e-9, maxDifference(expected, batched), kernel.getClass().getSimpleName());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void floatGradientMatchesDouble(int[] layerUnitNums, Activation[] activations) {
+        Network network = network(layerUnitNums, activations);
+        Batch batch = batch(network);
+        Gradient expected = network.newGradient();
+        perSampleLoss(network, batch, network.newWorkspace(), expected);
+        FloatNetwork floatNetwork = new FloatNetwork(network);
+        Gradient single = floatNetwork.newGradient();
+        FloatWorkspace workspace = floatNetwork.newWorkspace();
+        for (int s = 0; s < batch.size(); ++s) {
+            floatNetwork.backPropagate(batch, s, workspace);
+        }
+        floatNetwork.flushGradient(workspace, single);
+        assertWithin(1e-4, maxDifference(expected, single) / (1 + maxAbs(expected)), "relative float error");
+        // flush 之后 workspace 中的累加值清零, 下一批从 0 开始
+        floatNetwork.flushGradient(workspace, single);
+        assertWithin(1e-4, maxDifference(expected, single) / (1 + maxAbs(expected)), "second flush");
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void floatBatchedGradientMatchesDouble(int[] layerUnitNums, Activation[] activations) {
+        Network network = network(layerUnitNums, activations);
+        Batch batch = batch(network);
+        Gradient expected = network.newGradient();
+        perSampleLoss(network, batch, network.newWorkspace(), expected);
+        FloatNetwork floatNetwork = new FloatNetwork(network);
+        for (MatrixKernel kernel : matrixKernels()) {
+            Gradient batched = floatNetwork.newGradient();
+            FloatBatchWorkspace workspace = floatNetwork.newBatchWorkspace(kernel, batch.size());
+            workspace.loadBatch(batch, 0, batch.size());
+            floatNetwork.backPropagate(workspace, batch.size(), batched);
+            assertWithin(1e-4, maxDifference(expected, batched) / (1 + maxAbs(expected)),
+                    kernel.getClass().getSimpleName());
+        }
+    }
+}
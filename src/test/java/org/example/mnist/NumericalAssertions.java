@@ -0,0 +1,81 @@
+package org.example.mnist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 数值对比测试共用的合成数据和误差计算。
+ */
+final class NumericalAssertions {
+
+    static final double FINITE_DIFFERENCE_STEP = 1e-6;
+
+    private NumericalAssertions() {
+    }
+
+    static Batch randomBatch(Random random, int count, int imageSize, int classes) {
+        Batch batch = new Batch(count, imageSize);
+        byte[] pixels = new byte[imageSize];
+        for (int s = 0; s < count; ++s) {
+            for (int i = 0; i < imageSize; ++i) {
+                pixels[i] = (byte) random.nextInt(4);
+            }
+            batch.add(pixels, 0, random.nextInt(classes));
+        }
+        return batch;
+    }
+
+    static double[] randomArray(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; ++i) {
+            values[i] = random.nextGaussian();
+        }
+        return values;
+    }
+
+    static double maxDifference(double[] a, double[] b) {
+        double max = 0;
+        for (int i = 0; i < a.length; ++i) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+
+    static double maxDifference(Gradient a, Gradient b) {
+        double max = 0;
+        for (int l = 0; l < a.values.length; ++l) {
+            max = Math.max(max, maxDifference(a.values[l], b.values[l]));
+        }
+        return max;
+    }
+
+    static double maxAbs(Gradient gradient) {
+        double max = 0;
+        for (double[] values : gradient.values) {
+            for (double value : values) {
+                max = Math.max(max, Math.abs(value));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 参考实现和所有优化过的矩阵内核; 以 --add-modules jdk.incubator.vector 运行时包括 SIMD 内核。
+     */
+    static List<MatrixKernel> matrixKernels() {
+        List<MatrixKernel> kernels = new ArrayList<>();
+        kernels.add(new ScalarKernel());
+        kernels.add(new BlockedKernel());
+        if (!(Kernels.matrixKernel() instanceof BlockedKernel)) {
+            kernels.add(Kernels.matrixKernel());
+        }
+        return kernels;
+    }
+
+    static void assertWithin(double tolerance, double error, String what) {
+        assertTrue(error <= tolerance, () -> what + ": max error " + error + " exceeds " + tolerance);
+    }
+}
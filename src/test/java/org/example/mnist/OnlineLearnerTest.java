@@ -0,0 +1,188 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 后台训练线程的发布和出错处理。
+ */
+class OnlineLearnerTest {
+
+    private static final int[] LAYER_UNIT_NUMS = {20, 8, 5};
+
+    private static ModelSnapshot initialModel() {
+        return ModelSnapshot.of(new Network(LAYER_UNIT_NUMS, new Random(1)));
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void publishesTrainedModelOnClose() {
+        ModelSnapshot initial = initialModel();
+        OnlineLearner learner = new OnlineLearner(initial, new SgdOptimizer(0.1), new ScalarKernel(), 4, 100, 64);
+        byte[] image = new byte[20];
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(learner.offer(image, 0, i % 5));
+        }
+        learner.close();
+        assertEquals(10, learner.samples());
+        assertNotSame(initial, learner.model());
+        // 发布的快照是影子网络的副本, 与初始模型不是同一组参数
+        assertNotSame(initial.network(), learner.model().network());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void rejectsSamplesAfterClose() {
+        OnlineLearner learner = new OnlineLearner(initialModel(), new SgdOptimizer(0.1), new ScalarKernel(), 4, 1, 64);
+        learner.close();
+        assertFalse(learner.offer(new byte[20], 0, 0));
+        assertEquals(1, learner.rejected());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void keepsRunningAfterFailedBatch() {
+        FailingOptimizer optimizer = new FailingOptimizer();
+        OnlineLearner learner = new OnlineLearner(initialModel(), optimizer, new ScalarKernel(), 1, 1, 4);
+        byte[] image = new byte[20];
+        // 每个样本单独一批, 每一批都失败; 后台线程必须继续取样本, 否则队列会被填满
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < 20; ++i) {
+            while (!learner.offer(image, 0, 0)) {
+                assertTrue(System.nanoTime() < deadline, "learner stopped taking samples");
+                Thread.yield();
+            }
+        }
+        learner.close();
+        assertEquals(20, learner.failures());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void rollsBackShadowAfterFailedUpdate() {
+        ModelSnapshot initial = initialModel();
+        // 第一批在更新完第一层之后失败
+        Optimizer optimizer = new FailOnceOptimizer(new SgdOptimizer(0.5));
+        OnlineLearner learner = new OnlineLearner(initial, optimizer, new ScalarKernel(), 1, 100, 4);
+        byte[] first = new byte[20];
+        byte[] second = new byte[20];
+        new Random(2).nextBytes(second);
+        assertTrue(learner.offer(first, 0, 1));
+        while (learner.failures() == 0) {
+            Thread.yield();
+        }
+        assertTrue(learner.offer(second, 0, 3));
+        learner.close();
+        assertEquals(1, learner.steps());
+
+        // 期望结果: 只用第二个样本更新一次初始模型
+        Network expected = initial.toNetwork();
+        Batch batch = new Batch(1, 20);
+        batch.add(second, 0, 3);
+        BatchWorkspace workspace = expected.newBatchWorkspace(new ScalarKernel(), 1);
+        workspace.loadBatch(batch, 0, 1);
+        Gradient gradient = expected.newGradient();
+        expected.backPropagate(workspace, 1, gradient);
+        expected.applyGradient(gradient, 1.0, new SgdOptimizer(0.5));
+        Network actual = learner.model().network();
+        for (int l = 0; l < expected.layerCount(); ++l) {
+            assertArrayEquals(expected.layer(l).parameters(), actual.layer(l).parameters(), 1e-12);
+        }
+    }
+
+    private static final class FailingOptimizer implements Optimizer {
+
+        @Override
+        public String name() {
+            return "failing";
+        }
+
+        @Override
+        public void beginStep(int parameterCount) {
+            throw new IllegalStateException("injected failure");
+        }
+
+        @Override
+        public void update(double[] parameters, double[] gradient, double scale, int offset) {
+        }
+
+        @Override
+        public void update(float[] parameters, double[] gradient, double scale, int offset) {
+        }
+
+        @Override
+        public long step() {
+            return 0;
+        }
+
+        @Override
+        public double[] state() {
+            return new double[0];
+        }
+
+        @Override
+        public void restore(double[] state, long step, int parameterCount) {
+        }
+    }
+
+    /**
+     * 第一次更新第二层时失败, 其余调用交给 delegate。
+     */
+    private static final class FailOnceOptimizer implements Optimizer {
+
+        private final Optimizer delegate;
+        private boolean failed;
+
+        FailOnceOptimizer(Optimizer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String name() {
+            return delegate.name();
+        }
+
+        @Override
+        public void beginStep(int parameterCount) {
+            delegate.beginStep(parameterCount);
+        }
+
+        @Override
+        public void update(double[] parameters, double[] gradient, double scale, int offset) {
+            if (offset > 0 && !failed) {
+                failed = true;
+                throw new IllegalStateException("injected failure");
+            }
+            delegate.update(parameters, gradient, scale, offset);
+        }
+
+        @Override
+        public void update(float[] parameters, double[] gradient, double scale, int offset) {
+            delegate.update(parameters, gradient, scale, offset);
+        }
+
+        @Override
+        public long step() {
+            return delegate.step();
+        }
+
+        @Override
+        public double[] state() {
+            return delegate.state();
+        }
+
+        @Override
+        public void restore(double[] state, long step, int parameterCount) {
+            delegate.restore(state, step, parameterCount);
+        }
+    }
+}
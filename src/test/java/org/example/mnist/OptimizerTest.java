@@ -0,0 +1,138 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 各优化器的单步更新与手算结果比较。gradient 与 {@link Gradient} 一致是 -dE/dw, 参数沿 +gradient 方向移动。
+ */
+class OptimizerTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    private static double[] step(Optimizer optimizer, double[] parameters, double[] gradient, double scale) {
+        optimizer.beginStep(parameters.length);
+        optimizer.update(parameters, gradient, scale, 0);
+        return parameters;
+    }
+
+    @Test
+    void sgdStep() {
+        Optimizer sgd = new SgdOptimizer(0.1);
+        // w += 0.1 * 0.5 * g
+        assertArrayEquals(new double[]{1.025, 1.95}, step(sgd, new double[]{1, 2}, new double[]{0.5, -1}, 0.5), TOLERANCE);
+        assertEquals(1, sgd.step());
+        assertEquals(0, sgd.state().length);
+    }
+
+    @Test
+    void momentumSteps() {
+        Optimizer momentum = new MomentumOptimizer(LearningRateSchedule.constant(0.1), 0.9, false);
+        double[] parameters = {1};
+        // v = 1, w = 1 + 0.1 * 1
+        step(momentum, parameters, new double[]{1}, 1);
+        assertEquals(1.1, parameters[0], TOLERANCE);
+        // v = 0.9 * 1 + 1 = 1.9, w = 1.1 + 0.19
+        step(momentum, parameters, new double[]{1}, 1);
+        assertEquals(1.29, parameters[0], TOLERANCE);
+        assertArrayEquals(new double[]{1.9}, momentum.state(), TOLERANCE);
+    }
+
+    @Test
+    void nesterovSteps() {
+        Optimizer nesterov = new MomentumOptimizer(LearningRateSchedule.constant(0.1), 0.9, true);
+        assertEquals("nesterov", nesterov.name());
+        double[] parameters = {1};
+        // v = 1, w = 1 + 0.1 * (0.9 * 1 + 1)
+        step(nesterov, parameters, new double[]{1}, 1);
+        assertEquals(1.19, parameters[0], TOLERANCE);
+        // v = 1.9, w = 1.19 + 0.1 * (0.9 * 1.9 + 1)
+        step(nesterov, parameters, new double[]{1}, 1);
+        assertEquals(1.461, parameters[0], TOLERANCE);
+    }
+
+    @Test
+    void adamSteps() {
+        Optimizer adam = new AdamOptimizer(LearningRateSchedule.constant(0.01));
+        double[] parameters = {1};
+        // m = 0.2, v = 0.004; 偏差修正后 m^ = 2, v^ = 4, w += 0.01 * 2 / sqrt(4)
+        step(adam, parameters, new double[]{2}, 1);
+        assertEquals(1.01, parameters[0], 1e-8);
+        assertArrayEquals(new double[]{0.2, 0.004}, adam.state(), TOLERANCE);
+        // m = 0.38, v = 0.007996; 修正后仍是 m^ = 2, v^ = 4
+        step(adam, parameters, new double[]{2}, 1);
+        assertEquals(1.02, parameters[0], 1e-8);
+    }
+
+    @Test
+    void floatUpdateMatchesDouble() {
+        Optimizer doubles = new MomentumOptimizer(LearningRateSchedule.constant(0.1), 0.9, false);
+        Optimizer floats = new MomentumOptimizer(LearningRateSchedule.constant(0.1), 0.9, false);
+        double[] doubleParameters = {1, -2};
+        float[] floatParameters = {1, -2};
+        double[] gradient = {0.25, 0.5};
+        for (int s = 0; s < 3; ++s) {
+            step(doubles, doubleParameters, gradient, 1);
+            floats.beginStep(floatParameters.length);
+            floats.update(floatParameters, gradient, 1, 0);
+        }
+        for (int k = 0; k < doubleParameters.length; ++k) {
+            assertEquals(doubleParameters[k], floatParameters[k], 1e-6);
+        }
+    }
+
+    @Test
+    void stateIsLaidOutByOffset() {
+        Optimizer adam = new AdamOptimizer(LearningRateSchedule.constant(0.01));
+        double[] first = {0, 0};
+        double[] second = {0};
+        adam.beginStep(3);
+        adam.update(first, new double[]{1, 2}, 1, 0);
+        adam.update(second, new double[]{3}, 1, 2);
+        // 一阶矩 0.1 * g, 二阶矩 0.001 * g^2, 各占 parameterCount 个元素
+        assertArrayEquals(new double[]{0.1, 0.2, 0.3, 0.001, 0.004, 0.009}, adam.state(), TOLERANCE);
+    }
+
+    @Test
+    void restoreContinuesFromSavedState() {
+        Optimizer original = new MomentumOptimizer(LearningRateSchedule.constant(0.1), 0.9, false);
+        double[] parameters = {1};
+        step(original, parameters, new double[]{1}, 1);
+
+        Optimizer restored = new MomentumOptimizer(LearningRateSchedule.constant(0.1), 0.9, false);
+        restored.restore(original.state(), original.step(), parameters.length);
+        double[] copy = parameters.clone();
+        step(original, parameters, new double[]{1}, 1);
+        step(restored, copy, new double[]{1}, 1);
+        assertArrayEquals(parameters, copy, TOLERANCE);
+        assertEquals(2, restored.step());
+    }
+
+    @Test
+    void rejectsParameterCountChangeAfterFirstStep() {
+        Optimizer momentum = new MomentumOptimizer(LearningRateSchedule.constant(0.1), 0.9, false);
+        step(momentum, new double[]{1, 2}, new double[]{1, 1}, 1);
+        assertThrows(IllegalStateException.class, () -> momentum.beginStep(3));
+    }
+
+    @Test
+    void restoreRejectsStateOfWrongLength() {
+        Optimizer adam = new AdamOptimizer(LearningRateSchedule.constant(0.1));
+        assertThrows(IllegalArgumentException.class, () -> adam.restore(new double[3], 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> adam.restore(new double[4], 1, 3));
+        Optimizer sgd = new SgdOptimizer(0.1);
+        assertThrows(IllegalArgumentException.class, () -> sgd.restore(new double[1], 1, 1));
+        assertEquals(0, adam.step());
+        assertEquals(0, sgd.step());
+        adam.restore(new double[4], 5, 2);
+        assertEquals(5, adam.step());
+        // 没有开始训练的优化器的状态是空数组
+        Optimizer fresh = new AdamOptimizer(LearningRateSchedule.constant(0.1));
+        fresh.restore(new AdamOptimizer(LearningRateSchedule.constant(0.1)).state(), 0, 2);
+        assertArrayEquals(new double[]{1.1, 2.1}, step(fresh, new double[]{1, 2}, new double[]{1, 1}, 1), 1e-6);
+        assertThrows(IllegalArgumentException.class, () -> fresh.restore(new double[0], 1, 2));
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PredictionTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    void ranksClassesByOutput() {
+        double[] outputs = {9, 0.1, 0.4, 0.2, 0.3, 9};
+        Prediction prediction = Prediction.topK(outputs, 1, 4, 3, Activation.SIGMOID);
+        assertEquals(3, prediction.size());
+        assertEquals(1, prediction.label());
+        assertEquals(1, prediction.classAt(0));
+        assertEquals(3, prediction.classAt(1));
+        assertEquals(2, prediction.classAt(2));
+        assertEquals(0.4, prediction.probabilityAt(0), TOLERANCE);
+        assertEquals(0.3, prediction.probabilityAt(1), TOLERANCE);
+        assertEquals(0.2, prediction.probabilityAt(2), TOLERANCE);
+    }
+
+    @Test
+    void breaksTiesByLowerClass() {
+        Prediction prediction = Prediction.topK(new double[]{0.5, 0.5}, 0, 2, 2, Activation.SIGMOID);
+        assertEquals(0, prediction.classAt(0));
+        assertEquals(1, prediction.classAt(1));
+    }
+
+    @Test
+    void usesSoftmaxOutputsAsProbabilities() {
+        double[] outputs = {0.1, 0.7, 0.2};
+        Prediction prediction = Prediction.topK(outputs, 0, 3, 2, Activation.SOFTMAX);
+        assertEquals(1, prediction.label());
+        assertEquals(0.7, prediction.probabilityAt(0), TOLERANCE);
+        assertEquals(0.2, prediction.probabilityAt(1), TOLERANCE);
+    }
+
+    @Test
+    void appliesSoftmaxToNegativeOutputs() {
+        double[] outputs = {-0.5, 0.25, -0.9, 0.1};
+        for (Activation activation : new Activation[]{Activation.TANH, Activation.LEAKY_RELU}) {
+            Prediction prediction = Prediction.topK(outputs, 0, 4, 4, activation);
+            double expectedTotal = 0;
+            for (double output : outputs) {
+                expectedTotal += Math.exp(output);
+            }
+            int[] expectedClasses = {1, 3, 0, 2};
+            double total = 0;
+            for (int rank = 0; rank < 4; ++rank) {
+                assertEquals(expectedClasses[rank], prediction.classAt(rank));
+                double probability = prediction.probabilityAt(rank);
+                assertTrue(probability > 0 && probability < 1);
+                assertEquals(Math.exp(outputs[expectedClasses[rank]]) / expectedTotal, probability, TOLERANCE);
+                total += probability;
+            }
+            assertEquals(1, total, TOLERANCE);
+        }
+        assertEquals(-0.5, outputs[0]);
+    }
+
+    @Test
+    void zeroOutputsAreUniform() {
+        Prediction prediction = Prediction.topK(new double[4], 0, 4, 2, Activation.RELU);
+        assertEquals(0.25, prediction.probabilityAt(0), TOLERANCE);
+        assertEquals(0.25, prediction.probabilityAt(1), TOLERANCE);
+    }
+
+    @Test
+    void truncateKeepsLeadingCandidates() {
+        Prediction prediction = Prediction.topK(new double[]{0.1, 0.4, 0.2, 0.3}, 0, 4, 4, Activation.SIGMOID);
+        assertSame(prediction, prediction.truncate(4));
+        Prediction truncated = prediction.truncate(2);
+        assertEquals(2, truncated.size());
+        assertEquals(1, truncated.classAt(0));
+        assertEquals(3, truncated.classAt(1));
+        assertEquals(0.4, truncated.probabilityAt(0), TOLERANCE);
+        assertEquals(0.3, truncated.probabilityAt(1), TOLERANCE);
+        assertEquals(4, prediction.size());
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PrefetchingDataSourceTest {
+
+    @Test
+    void handsOverSameBatchesAsSource() throws IOException {
+        int[] expected = ArrayDataset.drain(new DatasetSource(new ArrayDataset(23, 3), new Random(5)), 10, null);
+        try (PrefetchingDataSource source = new PrefetchingDataSource(
+                new DatasetSource(new ArrayDataset(23, 3), new Random(5)), 10, 2)) {
+            int[] batchSizes = new int[4];
+            assertArrayEquals(expected, ArrayDataset.drain(source, 10, batchSizes));
+            assertArrayEquals(new int[]{10, 10, 3, 0}, batchSizes);
+            // 读完之后继续返回 false
+            assertFalse(source.next(new Batch(10, 3)));
+        }
+    }
+
+    @Test
+    void resetStartsNextEpoch() throws IOException {
+        DatasetSource reference = new DatasetSource(new ArrayDataset(23, 3), new Random(5));
+        int[] firstEpoch = ArrayDataset.drain(reference, 10, null);
+        reference.reset();
+        int[] secondEpoch = ArrayDataset.drain(reference, 10, null);
+        try (PrefetchingDataSource source = new PrefetchingDataSource(
+                new DatasetSource(new ArrayDataset(23, 3), new Random(5)), 10, 1)) {
+            assertArrayEquals(firstEpoch, ArrayDataset.drain(source, 10, null));
+            source.reset();
+            assertArrayEquals(secondEpoch, ArrayDataset.drain(source, 10, null));
+        }
+    }
+
+    @Test
+    void rejectsResetBeforeEpochEnds() throws IOException {
+        try (PrefetchingDataSource source = new PrefetchingDataSource(
+                new DatasetSource(new ArrayDataset(23, 3), null), 10, 2)) {
+            source.next(new Batch(10, 3));
+            assertThrows(IllegalStateException.class, source::reset);
+        }
+    }
+
+    @Test
+    void propagatesSourceFailure() throws IOException {
+        DataSource failing = new DataSource() {
+            private int calls;
+
+            @Override
+            public int imageSize() {
+                return 3;
+            }
+
+            @Override
+            public boolean next(Batch batch) throws IOException {
+                if (++calls > 1) {
+                    throw new IOException("disk gone");
+                }
+                batch.clear();
+                batch.add(new ArrayDataset(1, 3), 0);
+                return true;
+            }
+
+            @Override
+            public void reset() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try (PrefetchingDataSource source = new PrefetchingDataSource(failing, 10, 2)) {
+            Batch batch = new Batch(10, 3);
+            source.next(batch);
+            assertEquals(1, batch.size());
+            IOException e = assertThrows(IOException.class, () -> source.next(batch));
+            assertEquals("disk gone", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * int8 模型与 double 模型比较。模型是在 t10k 测试集上训练一轮的 784-30-10 sigmoid 网络。
+ */
+class QuantizedModelTest {
+
+    private static final String IMAGE_FILE = "data/t10k-images-idx3-ubyte.gz";
+    private static final String LABEL_FILE = "data/t10k-labels-idx1-ubyte.gz";
+
+    @TempDir
+    static Path cacheDir;
+
+    private static Dataset dataset;
+    private static Network network;
+
+    @BeforeAll
+    static void train() throws IOException {
+        dataset = DatasetCache.open(IMAGE_FILE, LABEL_FILE, cacheDir);
+        network = new Network(new int[]{dataset.imageSize(), 30, 10}, new Random(1));
+        Workspace workspace = network.newWorkspace();
+        Gradient gradient = network.newGradient();
+        DatasetSource source = new DatasetSource(dataset, new Random(2));
+        Batch batch = new Batch(10, dataset.imageSize());
+        while (source.next(batch)) {
+            gradient.clear();
+            for (int i = 0; i < batch.size(); ++i) {
+                network.backPropagate(batch, i, workspace, gradient);
+            }
+            network.applyGradient(gradient, 0.3 / batch.size());
+        }
+    }
+
+    @Test
+    void outputsAndArgmaxAgreeWithDoubleModel() {
+        QuantizedModel quantized = QuantizedModel.quantize(ModelSnapshot.of(network));
+        Workspace workspace = network.newWorkspace();
+        byte[] image = new byte[dataset.imageSize()];
+        double errorSum = 0;
+        int agreed = 0;
+        int doubleCorrect = 0;
+        int quantizedCorrect = 0;
+        for (int s = 0; s < dataset.size(); ++s) {
+            dataset.copyImage(s, image, 0);
+            int expected = network.classify(image, workspace);
+            double[] outputs = workspace.output();
+            double[] net = quantized.outputNet(image, 0);
+            for (int j = 0; j < outputs.length; ++j) {
+                errorSum += Math.abs(1 / (1 + Math.exp(-net[j])) - outputs[j]);
+            }
+            int actual = quantized.classifyImage(image, 0);
+            agreed += actual == expected ? 1 : 0;
+            doubleCorrect += expected == dataset.label(s) ? 1 : 0;
+            quantizedCorrect += actual == dataset.label(s) ? 1 : 0;
+        }
+        // 输出层激活值的平均绝对误差低于 0.01, argmax 至少 95% 一致, 准确率相差不超过 2 个百分点
+        double meanError = errorSum / (dataset.size() * 10);
+        assertTrue(meanError < 0.01, "mean output error " + meanError);
+        assertTrue(agreed >= dataset.size() * 0.95, "argmax agreement " + agreed + "/" + dataset.size());
+        assertTrue(Math.abs(doubleCorrect - quantizedCorrect) <= dataset.size() * 0.02,
+                "accuracy " + doubleCorrect + " vs " + quantizedCorrect);
+    }
+
+    @Test
+    void reportMatchesDirectComparison() {
+        QuantizationReport report = QuantizedModel.evaluate(ModelSnapshot.of(network), dataset);
+        QuantizedModel quantized = QuantizedModel.quantize(ModelSnapshot.of(network));
+        byte[] images = new byte[100 * dataset.imageSize()];
+        for (int s = 0; s < 100; ++s) {
+            dataset.copyImage(s, images, s * dataset.imageSize());
+        }
+        int[] labels = quantized.classify(images, 100);
+        for (int s = 0; s < 100; ++s) {
+            assertEquals(quantized.classifyImage(images, s * dataset.imageSize()), labels[s]);
+        }
+        assertEquals(new InferenceEngine(ModelSnapshot.of(network)).accuracy(dataset), report.doubleAccuracy(), 1e-12);
+        assertTrue(report.agreement() >= 0.95);
+        // 784x30 + 30x10 个 int8 权重, 30 + 10 个 float 偏置
+        assertEquals(784 * 30 + 30 * 10 + 4 * (30 + 10), report.quantizedBytes());
+        assertEquals(8L * network.parameterCount(), report.doubleBytes());
+    }
+
+    @Test
+    void rejectsNonSigmoidHiddenLayers() {
+        ModelSnapshot relu = ModelSnapshot.of(new Network(new int[]{4, 3, 2},
+                new Activation[]{Activation.RELU, Activation.SIGMOID}, new Random(1)));
+        assertFalse(QuantizedModel.supports(relu));
+        assertThrows(IllegalArgumentException.class, () -> QuantizedModel.quantize(relu));
+    }
+
+    @Test
+    void acceptsAnyOutputActivation() {
+        ModelSnapshot softmax = ModelSnapshot.of(new Network(new int[]{4, 3, 2},
+                new Activation[]{Activation.FAST_SIGMOID, Activation.SOFTMAX}, new Random(1)));
+        assertTrue(QuantizedModel.supports(softmax));
+        assertEquals(4, QuantizedModel.quantize(softmax).inputSize());
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 在本机回环地址上用 worldSize 个线程模拟 worldSize 个进程。
+ */
+class RingAllReduceTest {
+
+    private static List<InetSocketAddress> loopbackAddresses(int count) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            // 借操作系统分配一个空闲端口; 关闭之后到 RingAllReduce 重新监听之间端口被占用的可能性很小
+            try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), probe.getLocalPort()));
+            }
+        }
+        return addresses;
+    }
+
+    private static double[][] randomData(int worldSize, int length, long seed) {
+        Random random = new Random(seed);
+        double[][] data = new double[worldSize][length];
+        for (double[] row : data) {
+            for (int i = 0; i < length; ++i) {
+                row[i] = random.nextGaussian();
+            }
+        }
+        return data;
+    }
+
+    private static double[] sum(double[][] data) {
+        double[] sum = new double[data[0].length];
+        for (double[] row : data) {
+            for (int i = 0; i < sum.length; ++i) {
+                sum[i] += row[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 每个 rank 在自己的线程上依次对 rounds 中的每组数据做 all-reduce。
+     */
+    private static void runRing(final double[][][] rounds, final boolean compress) throws Exception {
+        final int worldSize = rounds[0].length;
+        final List<InetSocketAddress> addresses = loopbackAddresses(worldSize);
+        ExecutorService executor = Executors.newFixedThreadPool(worldSize);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int r = 0; r < worldSize; ++r) {
+                final int rank = r;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        try (RingAllReduce ring = new RingAllReduce(rank, addresses)) {
+                            for (double[][] data : rounds) {
+                                ring.allReduce(data[rank], data[rank].length, compress);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertAllReduced(int worldSize, int length, boolean compress, double tolerance)
+            throws Exception {
+        double[][] data = randomData(worldSize, length, 1);
+        double[] expected = sum(data);
+        runRing(new double[][][]{data}, compress);
+        for (int r = 0; r < worldSize; ++r) {
+            assertArrayEquals(expected, data[r], tolerance, "rank " + r);
+            // 压缩时各段总和先舍入到 float 再广播, 所有 rank 的结果仍然逐位相同
+            assertArrayEquals(data[0], data[r], 0, "rank " + r);
+        }
+    }
+
+    @Test
+    void sumsAcrossRanks() throws Exception {
+        assertAllReduced(4, 1000, false, 1e-12);
+    }
+
+    @Test
+    void handlesLengthNotDivisibleByWorldSize() throws Exception {
+        // 10 个元素分成 3 段是 3, 3, 4; 长度小于进程数时部分段为空
+        assertAllReduced(3, 10, false, 1e-12);
+        assertAllReduced(3, 2, false, 1e-12);
+    }
+
+    @Test
+    void compressedSumIsFloatAccurate() throws Exception {
+        assertAllReduced(3, 1001, true, 1e-5);
+    }
+
+    @Test
+    void exchangesMoreThanSocketBuffers() throws Exception {
+        // 每段约 2MB, 远大于套接字缓冲区, 收发必须交替进行才不会死锁
+        assertAllReduced(2, 500_001, false, 1e-12);
+    }
+
+    @Test
+    void reusesConnectionForSuccessiveCalls() throws Exception {
+        double[][] first = randomData(3, 17, 2);
+        double[][] second = randomData(3, 101, 3);
+        double[] firstSum = sum(first);
+        double[] secondSum = sum(second);
+        runRing(new double[][][]{first, second}, false);
+        for (int r = 0; r < 3; ++r) {
+            assertArrayEquals(firstSum, first[r], 1e-12);
+            assertArrayEquals(secondSum, second[r], 1e-12);
+        }
+    }
+
+    @Test
+    void singleWorkerLeavesDataUnchanged() throws Exception {
+        double[] data = {1, 2, 3};
+        try (RingAllReduce ring = new RingAllReduce(0,
+                Collections.singletonList(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)))) {
+            assertEquals(1, ring.worldSize());
+            ring.allReduce(data, data.length, true);
+        }
+        assertArrayEquals(new double[]{1, 2, 3}, data, 0);
+    }
+
+    @Test
+    void rejectsRankOutsideWorld() throws Exception {
+        List<InetSocketAddress> addresses = loopbackAddresses(2);
+        assertThrows(IllegalArgumentException.class, () -> new RingAllReduce(2, addresses));
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampledDatasetTest {
+
+    private static int[] sourceIndices(Dataset dataset) {
+        int[] indices = new int[dataset.size()];
+        double[] image = new double[dataset.imageSize()];
+        for (int i = 0; i < indices.length; ++i) {
+            dataset.copyImage(i, image, 0);
+            indices[i] = (int) image[0];
+            assertEquals(indices[i] % 10, dataset.label(i));
+        }
+        return indices;
+    }
+
+    @Test
+    void picksDistinctSamples() {
+        SampledDataset sample = new SampledDataset(new ArrayDataset(100, 3), 30, new Random(1));
+        assertEquals(30, sample.size());
+        assertEquals(3, sample.imageSize());
+        boolean[] seen = new boolean[100];
+        for (int index : sourceIndices(sample)) {
+            assertTrue(!seen[index], "duplicate sample " + index);
+            seen[index] = true;
+        }
+    }
+
+    @Test
+    void sameSeedPicksSameSubset() {
+        Dataset source = new ArrayDataset(100, 1);
+        assertArrayEquals(sourceIndices(new SampledDataset(source, 20, new Random(7))),
+                sourceIndices(new SampledDataset(source, 20, new Random(7))));
+    }
+
+    @Test
+    void sampleSizeIsCappedBySource() {
+        assertEquals(12, new SampledDataset(new ArrayDataset(12, 1), 50, new Random(1)).size());
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedDatasetTest {
+
+    @Test
+    void shardsHaveEqualSizeAndDoNotOverlap() {
+        Dataset source = new ArrayDataset(23, 2);
+        boolean[] seen = new boolean[source.size()];
+        double[] image = new double[2];
+        for (int shard = 0; shard < 4; ++shard) {
+            ShardedDataset sharded = new ShardedDataset(source, shard, 4);
+            // 23 / 4 = 5, 每个分片都是 5 个样本, 丢弃 3 个
+            assertEquals(5, sharded.size());
+            for (int i = 0; i < sharded.size(); ++i) {
+                sharded.copyImage(i, image, 0);
+                int index = (int) image[0];
+                assertEquals(i * 4 + shard, index);
+                assertEquals(source.label(index), sharded.label(i));
+                assertTrue(!seen[index], "sample " + index + " in two shards");
+                seen[index] = true;
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidShard() {
+        Dataset source = new ArrayDataset(10, 1);
+        assertThrows(IllegalArgumentException.class, () -> new ShardedDataset(source, 3, 3));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedDataset(source, -1, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> new ShardedDataset(source, 0, 3).label(3));
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.mnist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TrainingMetricsTest {
+
+    @Test
+    void snapshotDifferenceCoversOnlyTheWindow() {
+        TrainingMetrics metrics = new TrainingMetrics();
+        metrics.recordStep(10, 5.0, 2.0);
+        MetricsSnapshot before = metrics.snapshot();
+        metrics.recordStep(10, 3.0, 1.0);
+        metrics.recordStep(6, 1.0, 3.0);
+        metrics.recordAllocation(800);
+        MetricsSnapshot window = metrics.snapshot().minus(before);
+
+        assertEquals(2, window.steps());
+        assertEquals(16, window.samples());
+        assertEquals(4.0 / 16, window.meanLoss(), 1e-12);
+        assertEquals(2.0, window.meanGradientNorm(), 1e-12);
+        assertEquals(800, window.allocatedBytes());
+        assertEquals(400, window.allocatedBytesPerStep());
+        assertTrue(window.elapsedNanos() >= 0);
+    }
+
+    @Test
+    void emptyWindowHasZeroMeans() {
+        TrainingMetrics metrics = new TrainingMetrics();
+        MetricsSnapshot window = metrics.snapshot().minus(metrics.snapshot());
+        assertEquals(0, window.meanLoss());
+        assertEquals(0, window.meanGradientNorm());
+        assertEquals(0, window.allocatedBytesPerStep());
+    }
+
+    @Test
+    void recordAddsPhaseTimeAndReturnsNow() throws InterruptedException {
+        TrainingMetrics metrics = new TrainingMetrics();
+        long start = System.nanoTime();
+        Thread.sleep(2);
+        long end = metrics.record(TrainingMetrics.Phase.FORWARD, start);
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(end - start, snapshot.phaseNanos(TrainingMetrics.Phase.FORWARD));
+        assertEquals(0, snapshot.phaseNanos(TrainingMetrics.Phase.BACKWARD));
+    }
+
+    @Test
+    void countsUpdatesFromManyThreads() throws InterruptedException {
+        final TrainingMetrics metrics = new TrainingMetrics();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; ++i) {
+                        metrics.recordStep(1, 1, 1);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, metrics.snapshot().steps());
+    }
+
+    @Test
+    void allocationCountsOnlyTheCallingThread() throws InterruptedException {
+        TrainingMetrics metrics = new TrainingMetrics();
+        long before = metrics.currentThreadAllocatedBytes();
+        assumeTrue(before >= 0, "thread allocation accounting not supported");
+        final long[] sink = new long[1];
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sink[0] = new byte[64 << 20].length;
+            }
+        });
+        other.start();
+        other.join();
+        assertTrue(metrics.currentThreadAllocatedBytes() - before < 64 << 20);
+        assertEquals(64 << 20, sink[0]);
+    }
+
+    @Test
+    void reporterExportsIncrementsSinceLastFlush() {
+        TrainingMetrics metrics = new TrainingMetrics();
+        metrics.recordStep(10, 1, 1);
+        final List<MetricsSnapshot> windows = new ArrayList<>();
+        MetricsExporter collector = new MetricsExporter() {
+            @Override
+            public void export(MetricsSnapshot window) {
+                windows.add(window);
+            }
+        };
+        MetricsReporter reporter = new MetricsReporter(metrics, 1, TimeUnit.HOURS, collector);
+
+        metrics.recordStep(10, 1, 1);
+        reporter.tick();
+        assertEquals(0, windows.size());
+
+        reporter.flush();
+        metrics.recordStep(5, 1, 1);
+        metrics.recordStep(5, 1, 1);
+        reporter.flush();
+        assertEquals(2, windows.size());
+        assertEquals(1, windows.get(0).steps());
+        assertEquals(2, windows.get(1).steps());
+        assertEquals(10, windows.get(1).samples());
+    }
+
+    @Test
+    void reporterTickExportsAfterInterval() {
+        TrainingMetrics metrics = new TrainingMetrics();
+        final List<MetricsSnapshot> windows = new ArrayList<>();
+        MetricsReporter reporter = new MetricsReporter(metrics, 0, TimeUnit.NANOSECONDS, new MetricsExporter() {
+            @Override
+            public void export(MetricsSnapshot window) {
+                windows.add(window);
+            }
+        });
+        metrics.recordStep(3, 1, 1);
+        reporter.tick();
+        reporter.tick();
+        assertEquals(2, windows.size());
+        assertEquals(3, windows.get(0).samples());
+        assertEquals(0, windows.get(1).samples());
+    }
+}